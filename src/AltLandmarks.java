@@ -0,0 +1,416 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Landmark distance tables for ALT search (A*, Landmarks, Triangle inequality); see {@link AltSearch}.
+ *
+ * For a landmark L the triangle inequality gives two lower bounds on the cost from v to t:
+ * d(L, t) - d(L, v) and d(v, L) - d(t, L). With landmarks spread around the edge of the network these
+ * bounds are tight for the time metric too, unlike great-circle distance, which knows nothing about the
+ * 120-second overhead of every leg. Landmarks are chosen farthest-first: each new landmark is the
+ * airport farthest (to and from) from the landmarks chosen so far.
+ *
+ * Tables are flat int arrays with the landmarks of one airport next to each other ([v * k + i]), so a
+ * bound touches one or two cache lines. On a symmetric network "to" and "from" are the same array.
+ * Tables are persisted per metric in the data directory (-Dflight.data.dir) under a fingerprint of the
+ * graph, so a restart with an unchanged network loads them instead of running 2k Dijkstras again.
+ */
+public class AltLandmarks
+{
+    static final int INF = Integer.MAX_VALUE;
+    static final int MAGIC = 0x46524131; // "FRA1"
+    static final int DEFAULT_LANDMARKS = 8;
+
+    final RouteGraph graph;
+    final boolean isTimeCost;
+    final int k;
+    final int[] landmarks;
+    final int[] from;      // from[v * k + i] = cost from landmark i to v (INF if unreachable)
+    final int[] to;        // to[v * k + i] = cost from v to landmark i; == from if symmetric
+    final long fingerprint;
+
+    private static volatile AltLandmarks cachedDistance;
+    private static volatile AltLandmarks cachedTime;
+
+    private AltLandmarks(RouteGraph graph, boolean isTimeCost, int[] landmarks, int[] from, int[] to, long fingerprint) {
+        this.graph = graph;
+        this.isTimeCost = isTimeCost;
+        this.k = landmarks.length;
+        this.landmarks = landmarks;
+        this.from = from;
+        this.to = to;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Returns the tables for the current graph and metric only if they are already built; never builds.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return The tables, or null if none exist for the current Graph_M version.
+     */
+    public static AltLandmarks peek(boolean isTimeCost)
+    {
+        AltLandmarks alt = isTimeCost ? cachedTime : cachedDistance;
+        return alt != null && alt.graph == RouteGraph.current() ? alt : null;
+    }
+
+    /**
+     * Returns the tables for the current graph and metric, loading them from the data directory or
+     * computing (and saving) them if the graph changed.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return Tables consistent with the current Graph_M version.
+     */
+    public static AltLandmarks current(boolean isTimeCost)
+    {
+        RouteGraph g = RouteGraph.current();
+        AltLandmarks alt = isTimeCost ? cachedTime : cachedDistance;
+        if (alt == null || alt.graph != g) {
+            synchronized (AltLandmarks.class) {
+                alt = isTimeCost ? cachedTime : cachedDistance;
+                if (alt == null || alt.graph != g) {
+                    String dir = System.getProperty("flight.data.dir");
+                    alt = loadOrBuild(g, isTimeCost, dir == null ? null : Paths.get(dir));
+                    if (isTimeCost) {
+                        cachedTime = alt;
+                    } else {
+                        cachedDistance = alt;
+                    }
+                }
+            }
+        }
+        return alt;
+    }
+
+    /**
+     * Loads the tables for a graph from a directory if a file with a matching fingerprint exists,
+     * else computes them and writes the file.
+     * @param dir The directory, or null to skip persistence.
+     */
+    static AltLandmarks loadOrBuild(RouteGraph g, boolean isTimeCost, Path dir)
+    {
+        long fp = fingerprint(g);
+        Path file = dir == null ? null : dir.resolve("alt-" + QueryMetrics.metricName(isTimeCost) + ".bin");
+        if (file != null) {
+            try {
+                AltLandmarks loaded = load(file, g, isTimeCost, fp);
+                if (loaded != null) {
+                    return loaded;
+                }
+            } catch (IOException e) {
+                System.err.println("Warning: ignoring unreadable landmark file " + file + ": " + e.getMessage());
+            }
+        }
+        AltLandmarks built = build(g, isTimeCost, DEFAULT_LANDMARKS, fp);
+        if (file != null) {
+            try {
+                Files.createDirectories(dir);
+                built.save(file);
+            } catch (IOException e) {
+                System.err.println("Warning: could not save landmark file " + file + ": " + e.getMessage());
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Chooses landmarks farthest-first and computes their tables.
+     * @param g          The graph.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @param count      Number of landmarks (capped at the number of airports).
+     * @return The tables.
+     */
+    public static AltLandmarks build(RouteGraph g, boolean isTimeCost, int count)
+    {
+        return build(g, isTimeCost, count, fingerprint(g));
+    }
+
+    private static AltLandmarks build(RouteGraph g, boolean isTimeCost, int count, long fingerprint)
+    {
+        int n = g.numVertices();
+        int k = Math.min(count, n);
+        boolean symmetric = g.isSymmetric();
+        int[] landmarks = new int[k];
+        int size = tableSize(n, k);
+        if (size == -1) {
+            throw new IllegalArgumentException("Too many landmarks (" + k + ") for a graph of " + n + " airports");
+        }
+        int[] from = new int[size];
+        int[] to = symmetric ? from : new int[size];
+        long[] nearest = new long[n];   // min over chosen landmarks of the round-trip cost to v
+        Arrays.fill(nearest, Long.MAX_VALUE);
+
+        // Start from the airport farthest from an arbitrary one, then keep taking the farthest
+        int next = n == 0 ? -1 : farthest(roundTrip(g, 0, isTimeCost), landmarks, 0);
+        for (int i = 0; i < k; i++) {
+            landmarks[i] = next;
+            int[] out = CompactDijkstra.allCosts(g, next, isTimeCost);
+            int[] in = symmetric ? out : CompactDijkstra.allCosts(g.reverse(), next, isTimeCost);
+            for (int v = 0; v < n; v++) {
+                from[v * k + i] = out[v];
+                to[v * k + i] = in[v];
+                nearest[v] = Math.min(nearest[v], saturatedSum(out[v], in[v]));
+            }
+            next = farthest(nearest, landmarks, i + 1);
+        }
+        return new AltLandmarks(g, isTimeCost, landmarks, from, to, fingerprint);
+    }
+
+    // Entries of one table (n * k), or -1 if that does not fit in an array.
+    private static int tableSize(int n, int k)
+    {
+        long size = (long) n * k;
+        return size > Integer.MAX_VALUE - 8 ? -1 : (int) size;
+    }
+
+    // d(src, v) + d(v, src) for every v, saturating at Long.MAX_VALUE.
+    private static long[] roundTrip(RouteGraph g, int src, boolean isTimeCost)
+    {
+        int[] out = CompactDijkstra.allCosts(g, src, isTimeCost);
+        int[] in = g.isSymmetric() ? out : CompactDijkstra.allCosts(g.reverse(), src, isTimeCost);
+        long[] sum = new long[out.length];
+        for (int v = 0; v < out.length; v++) {
+            sum[v] = saturatedSum(out[v], in[v]);
+        }
+        return sum;
+    }
+
+    private static long saturatedSum(int a, int b)
+    {
+        return a == INF || b == INF ? Long.MAX_VALUE : (long) a + b;
+    }
+
+    // The vertex with the largest score that is not yet a landmark; unreachable ones (MAX_VALUE) first,
+    // so every component gets a landmark.
+    private static int farthest(long[] score, int[] chosen, int chosenCount)
+    {
+        int best = -1;
+        for (int v = 0; v < score.length; v++) {
+            if ((best == -1 || score[v] > score[best]) && !contains(chosen, chosenCount, v)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private static boolean contains(int[] a, int count, int x)
+    {
+        for (int i = 0; i < count; i++) {
+            if (a[i] == x) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lower bound on the cost from v to t using the given landmarks.
+     * @param active Landmark indexes to use.
+     * @param count  Number of entries of active to use.
+     */
+    int lowerBound(int v, int t, int[] active, int count)
+    {
+        int best = 0;
+        for (int j = 0; j < count; j++) {
+            best = Math.max(best, landmarkBound(v, t, active[j]));
+        }
+        return best;
+    }
+
+    // Lower bound on the cost from v to t given by landmark i alone.
+    private int landmarkBound(int v, int t, int i)
+    {
+        int best = 0;
+        int vb = v * k, tb = t * k;
+        int lv = from[vb + i], lt = from[tb + i];
+        if (lv != INF && lt != INF && lt - lv > best) {
+            best = lt - lv;
+        }
+        int vl = to[vb + i], tl = to[tb + i];
+        if (vl != INF && tl != INF && vl - tl > best) {
+            best = vl - tl;
+        }
+        return best;
+    }
+
+    /**
+     * Picks the landmarks giving the best bounds for one query: a partial selection that keeps the
+     * best so far sorted by insertion, without allocating (the caller owns both arrays).
+     * @param active      Receives the chosen landmark indexes, best first (lower index first on ties).
+     * @param activeBound Scratch of the same length, receives the bound of each chosen landmark.
+     * @return The number chosen (at most active.length).
+     */
+    int selectActive(int s, int t, int[] active, int[] activeBound)
+    {
+        int count = 0;
+        for (int i = 0; i < k; i++) {
+            int b = landmarkBound(s, t, i);
+            if (count == active.length && b <= activeBound[count - 1]) {
+                continue;
+            }
+            int j = count < active.length ? count++ : count - 1;
+            while (j > 0 && activeBound[j - 1] < b) {
+                active[j] = active[j - 1];
+                activeBound[j] = activeBound[j - 1];
+                j--;
+            }
+            active[j] = i;
+            activeBound[j] = b;
+        }
+        return count;
+    }
+
+    /**
+     * @return Bytes held by the tables.
+     */
+    public long bytes()
+    {
+        return 4L * (from.length + (to == from ? 0 : to.length) + landmarks.length);
+    }
+
+    /**
+     * Hash of the graph structure (names, arcs and weights) identifying which graph a table file belongs to.
+     */
+    static long fingerprint(RouteGraph g)
+    {
+        long h = 0xcbf29ce484222325L;
+        h = mix(h, g.numVertices());
+        h = mix(h, g.numArcs());
+        for (int v = 0; v < g.numVertices(); v++) {
+            h = mix(h, g.name(v).hashCode());
+            for (int a = g.arcBegin(v), end = g.arcEnd(v); a < end; a++) {
+                h = mix(h, g.arcHead(a));
+                h = mix(h, g.arcWeight(a));
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long h, int x)
+    {
+        h ^= x;
+        h *= 0x100000001b3L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Writes the tables atomically: magic, fingerprint, metric, n, k, symmetric flag, landmarks,
+     * from table, to table (if asymmetric), CRC32 trailer.
+     */
+    void save(Path file) throws IOException
+    {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream raw = Files.newOutputStream(tmp);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeLong(fingerprint);
+            out.writeBoolean(isTimeCost);
+            out.writeInt(graph.numVertices());
+            out.writeInt(k);
+            out.writeBoolean(to == from);
+            for (int l : landmarks) {
+                out.writeInt(l);
+            }
+            writeInts(out, from);
+            if (to != from) {
+                writeInts(out, to);
+            }
+            out.flush();
+            out.writeLong(crc.getValue()); // Trailer, not itself covered by the checksum
+            out.flush();
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a table file.
+     * @return The tables, or null if the file is missing, corrupt or belongs to another graph or metric.
+     */
+    static AltLandmarks load(Path file, RouteGraph g, boolean isTimeCost, long fingerprint) throws IOException
+    {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (bytes.length < 8 + 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        if (in.readInt() != MAGIC || in.readLong() != fingerprint || in.readBoolean() != isTimeCost
+                || in.readInt() != g.numVertices()) {
+            return null;
+        }
+        int k = in.readInt();
+        int size = tableSize(g.numVertices(), k);
+        if (k < 0 || size == -1) {
+            return null;
+        }
+        boolean symmetric = in.readBoolean();
+        int[] landmarks = new int[k];
+        for (int i = 0; i < k; i++) {
+            landmarks[i] = in.readInt();
+        }
+        ByteBuffer body = ByteBuffer.wrap(bytes, bytes.length - 8 - in.available(), in.available());
+        int[] from = readInts(body, size);
+        int[] to = symmetric ? from : readInts(body, size);
+        return new AltLandmarks(g, isTimeCost, landmarks, from, to, fingerprint);
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < values.length; ) {
+            buf.clear();
+            while (i < values.length && buf.remaining() >= 4) {
+                buf.putInt(values[i++]);
+            }
+            out.write(buf.array(), 0, buf.position());
+        }
+    }
+
+    private static int[] readInts(ByteBuffer in, int count)
+    {
+        int[] values = new int[count];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * count);
+        return values;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(QueryMetrics.metricName(isTimeCost)).append(" landmarks:");
+        for (int l : landmarks) {
+            String name = graph.name(l);
+            int tilde = name.indexOf('~');
+            sb.append(' ').append(tilde > 0 ? name.substring(0, tilde) : name);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Goal-directed point-to-point search (A*) using the landmark lower bounds of {@link AltLandmarks}.
+ * Vertices are popped in order of cost so far plus the lower bound to the target, so the search heads
+ * towards the target instead of growing a ball around the source.
+ *
+ * For each query only the few landmarks with the best bound between source and target are used,
+ * which keeps the bound cheap. A bound with an unreachable landmark is simply left out, so the
+ * heuristic is admissible but not always consistent; vertices are reopened when a cheaper cost turns
+ * up, which keeps results exact.
+ *
+ * An instance keeps its arrays between queries and resets only the entries it touched, so it is
+ * cheap to reuse but not thread-safe; use one per thread.
+ */
+public class AltSearch
+{
+    static final int INF = Integer.MAX_VALUE;
+    static final int ACTIVE_LANDMARKS = 4;
+
+    private final AltLandmarks landmarks;
+    private final RouteGraph graph;
+    private final boolean isTimeCost;
+
+    private final int[] dist;
+    private final int[] parent;
+    private final int[] bound;       // lower bound to the current target, -1 if not computed yet
+    private final IndexedMinHeap pq;
+    private final DeltaStepping.IntList touched = new DeltaStepping.IntList();
+    private final int[] active = new int[ACTIVE_LANDMARKS];
+    private final int[] activeBound = new int[ACTIVE_LANDMARKS]; // Scratch for selectActive
+    private int activeCount;
+
+    // Work counters of the last query
+    long settled, relaxed, heapOps;
+
+    /**
+     * @param landmarks Landmark tables for the graph and metric to search.
+     */
+    public AltSearch(AltLandmarks landmarks)
+    {
+        this.landmarks = landmarks;
+        this.graph = landmarks.graph;
+        this.isTimeCost = landmarks.isTimeCost;
+        int n = graph.numVertices();
+        dist = new int[n];
+        parent = new int[n];
+        bound = new int[n];
+        Arrays.fill(dist, INF);
+        Arrays.fill(bound, -1);
+        pq = new IndexedMinHeap(n);
+    }
+
+    /**
+     * Computes the shortest cost from s to t.
+     * @param s Source vertex id.
+     * @param t Target vertex id.
+     * @return The cost, or INF if t is unreachable from s.
+     */
+    public int cost(int s, int t)
+    {
+        reset();
+        settled = relaxed = heapOps = 0;
+        activeCount = landmarks.selectActive(s, t, active, activeBound);
+        touch(s);
+        dist[s] = 0;
+        parent[s] = -1;
+        pq.pushOrDecrease(s, bound(s, t));
+        heapOps++;
+        while (!pq.isEmpty()) {
+            int u = pq.pop();
+            heapOps++;
+            settled++;
+            if (u == t) {
+                return dist[t];
+            }
+            int du = dist[u];
+            for (int a = graph.arcBegin(u), end = graph.arcEnd(u); a < end; a++) {
+                int v = graph.arcHead(a);
+                int nd = du + graph.arcCost(a, isTimeCost);
+                relaxed++;
+                if (nd < dist[v]) {
+                    if (dist[v] == INF) {
+                        touch(v);
+                    }
+                    dist[v] = nd;
+                    parent[v] = u;
+                    long key = (long) nd + bound(v, t);
+                    pq.pushOrDecrease(v, (int) Math.min(key, INF - 1));
+                    heapOps++;
+                }
+            }
+        }
+        return INF;
+    }
+
+    /**
+     * Computes the shortest path from s to t.
+     * @return The vertex ids from s to t, or null if unreachable.
+     */
+    public int[] path(int s, int t)
+    {
+        if (cost(s, t) == INF) {
+            return null;
+        }
+        int length = 1;
+        for (int v = t; v != s; v = parent[v]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int v = t, i = length - 1; i >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /**
+     * Full path query by airport name, with the same raw format as Graph_M.dijkstra.
+     * @param src Source airport full name.
+     * @param des Destination airport full name.
+     * @return A raw PathResult (stations set) or the usual error indicators.
+     */
+    public Graph_M.PathResult queryPath(String src, String des)
+    {
+        QueryTrace trace = QueryTrace.start();
+        int s = graph.idOf(src);
+        int t = graph.idOf(des);
+        Graph_M.PathResult result;
+        if (s == -1 || t == -1) {
+            result = new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        } else {
+            int[] ids = path(s, t);
+            trace.settled = settled;
+            trace.relaxed = relaxed;
+            trace.heapOps = heapOps;
+            if (ids == null) {
+                result = new Graph_M.PathResult("NO_PATH", -1, 0);
+            } else {
+                String[] stations = new String[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    stations[i] = graph.name(ids[i]);
+                }
+                result = new Graph_M.PathResult(String.join("###", stations), dist[t], 0);
+                result.stations = stations;
+            }
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), "alt", src, des, result.totalCost != -1);
+        return result;
+    }
+
+    private int bound(int v, int t)
+    {
+        if (bound[v] == -1) {
+            bound[v] = landmarks.lowerBound(v, t, active, activeCount);
+        }
+        return bound[v];
+    }
+
+    private void touch(int v)
+    {
+        touched.add(v);
+    }
+
+    // Clears the state of the previous query.
+    private void reset()
+    {
+        for (int i = 0; i < touched.size; i++) {
+            dist[touched.data[i]] = INF;
+            bound[touched.data[i]] = -1;
+        }
+        touched.size = 0;
+        pq.clear();
+    }
+
+    /**
+     * Benchmark: landmark preprocessing, then settled airports and query time of ALT against plain and
+     * bidirectional Dijkstra on a synthetic network.
+     * Usage: java AltSearch [vertices=100000] [avgDegree=6] [landmarks=8]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : AltLandmarks.DEFAULT_LANDMARKS;
+        CompactGraph g = SyntheticNetwork.generate(n, degree, 800, 42);
+        long t0 = System.nanoTime();
+        AltLandmarks tables = AltLandmarks.build(g, true, k);
+        long buildNanos = System.nanoTime() - t0;
+        System.out.printf("Vertices: %d, arcs: %d, %s%nPreprocessing: %.0f ms, tables %.1f MB%n",
+                n, g.numArcs(), tables, buildNanos / 1e6, tables.bytes() / 1e6);
+
+        AltSearch alt = new AltSearch(tables);
+        BidirectionalDijkstra bidi = new BidirectionalDijkstra(g, true);
+        MultiSourceDijkstra plain = new MultiSourceDijkstra(g, true);
+        Random rnd = new Random(7);
+        int queries = 500;
+        int[] src = new int[queries], dst = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            src[q] = rnd.nextInt(n);
+            dst[q] = rnd.nextInt(n);
+        }
+        long[] nanos = new long[3], work = new long[3];
+        boolean identical = true;
+        for (int round = 0; round < 2; round++) {  // The first round warms up all three
+            Arrays.fill(nanos, 0);
+            Arrays.fill(work, 0);
+            for (int q = 0; q < queries; q++) {
+                long a = System.nanoTime();
+                int c0 = plain.search(new int[] {src[q]}, dst[q]);
+                long b = System.nanoTime();
+                int c1 = bidi.cost(src[q], dst[q]);
+                long c = System.nanoTime();
+                int c2 = alt.cost(src[q], dst[q]);
+                long d = System.nanoTime();
+                identical &= c0 == c1 && c1 == c2;
+                nanos[0] += b - a;
+                nanos[1] += c - b;
+                nanos[2] += d - c;
+                work[0] += plain.settled;
+                work[1] += bidi.settled;
+                work[2] += alt.settled;
+            }
+        }
+        String[] names = {"Dijkstra", "Bidirectional", "ALT"};
+        for (int i = 0; i < 3; i++) {
+            System.out.printf("%-14s %8.0f settled %8.3f ms per query%n",
+                    names[i], (double) work[i] / queries, nanos[i] / 1e6 / queries);
+        }
+        System.out.println("Results " + (identical ? "identical" : "MISMATCH"));
+    }
+}
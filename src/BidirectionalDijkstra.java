@@ -0,0 +1,256 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Point-to-point Dijkstra that searches forward from the source over the graph and backward from the
+ * target over its reverse, stopping once the two frontiers can no longer produce a shorter meeting.
+ * Each side only has to cover roughly half the cost radius, so far fewer airports are settled than in
+ * a one-directional search. Direction is honored throughout: the backward side follows incoming arcs
+ * via {@link RouteGraph#reverse()}, so one-way and asymmetric routes are priced correctly.
+ *
+ * An instance keeps its distance arrays between queries and resets only the entries it touched, so it
+ * is cheap to reuse but not thread-safe; use one per thread.
+ */
+public class BidirectionalDijkstra
+{
+    static final int INF = Integer.MAX_VALUE;
+
+    private final RouteGraph forward;
+    private final RouteGraph backward;
+    private final boolean isTimeCost;
+
+    private final int[] distF, distB;
+    private final int[] parentF;     // previous vertex on the way from the source
+    private final int[] parentB;     // next vertex on the way to the target
+    private final IndexedMinHeap pqF, pqB;
+    private final int[] touched;     // vertices with a finite distF or distB
+    private int touchedCount = 0;
+    private int meet = -1;
+
+    // Work counters of the last query
+    long settled, relaxed, heapOps;
+
+    /**
+     * @param g          The graph to search.
+     * @param isTimeCost True for the time metric, false for distance.
+     */
+    public BidirectionalDijkstra(RouteGraph g, boolean isTimeCost)
+    {
+        int n = g.numVertices();
+        this.forward = g;
+        this.backward = g.reverse();
+        this.isTimeCost = isTimeCost;
+        distF = new int[n];
+        distB = new int[n];
+        Arrays.fill(distF, INF);
+        Arrays.fill(distB, INF);
+        parentF = new int[n];
+        parentB = new int[n];
+        pqF = new IndexedMinHeap(n);
+        pqB = new IndexedMinHeap(n);
+        touched = new int[n + 1]; // s and t are both recorded even when equal
+    }
+
+    /**
+     * Computes the shortest cost from s to t.
+     * @param s Source vertex id.
+     * @param t Target vertex id.
+     * @return The cost, or INF if t is unreachable from s.
+     */
+    public int cost(int s, int t)
+    {
+        reset();
+        settled = relaxed = heapOps = 0;
+        touch(s);
+        touch(t);
+        distF[s] = 0;
+        parentF[s] = -1;
+        distB[t] = 0;
+        parentB[t] = -1;
+        pqF.pushOrDecrease(s, 0);
+        pqB.pushOrDecrease(t, 0);
+        heapOps += 2;
+
+        long best = s == t ? 0 : INF;
+        meet = s == t ? s : -1;
+        while (!pqF.isEmpty() && !pqB.isEmpty()) {
+            // No meeting through unsettled vertices can beat best once the two radii add up to it.
+            if ((long) pqF.minKey() + pqB.minKey() >= best) {
+                break;
+            }
+            boolean forwardSide = pqF.size() <= pqB.size();
+            IndexedMinHeap pq = forwardSide ? pqF : pqB;
+            RouteGraph g = forwardSide ? forward : backward;
+            int[] dist = forwardSide ? distF : distB;
+            int[] other = forwardSide ? distB : distF;
+            int[] parent = forwardSide ? parentF : parentB;
+
+            int u = pq.pop();
+            heapOps++;
+            settled++;
+            int du = dist[u];
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                int v = g.arcHead(a);
+                int nd = du + g.arcCost(a, isTimeCost);
+                relaxed++;
+                if (nd < dist[v]) {
+                    if (dist[v] == INF && other[v] == INF) {
+                        touch(v);
+                    }
+                    dist[v] = nd;
+                    parent[v] = u;
+                    pq.pushOrDecrease(v, nd);
+                    heapOps++;
+                }
+                if (other[v] != INF && (long) dist[v] + other[v] < best) {
+                    best = (long) dist[v] + other[v];
+                    meet = v;
+                }
+            }
+        }
+        return (int) best;
+    }
+
+    /**
+     * Computes the shortest path from s to t.
+     * @return The vertex ids from s to t, or null if unreachable.
+     */
+    public int[] path(int s, int t)
+    {
+        if (cost(s, t) == INF) {
+            return null;
+        }
+        int up = 0;
+        for (int v = meet; v != s; v = parentF[v]) {
+            up++;
+        }
+        int down = 0;
+        for (int v = meet; v != t; v = parentB[v]) {
+            down++;
+        }
+        int[] path = new int[up + down + 1];
+        int v = meet;
+        for (int i = up; i > 0; i--) {
+            path[i] = v;
+            v = parentF[v];
+        }
+        path[0] = s;
+        v = meet;
+        for (int i = up + 1; i < path.length; i++) {
+            v = parentB[v];
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /**
+     * Full path query by airport name, with the same raw format as Graph_M.dijkstra.
+     * @param src Source airport full name.
+     * @param des Destination airport full name.
+     * @return A raw PathResult (stations set) or the usual error indicators.
+     */
+    public Graph_M.PathResult queryPath(String src, String des)
+    {
+        QueryTrace trace = QueryTrace.start();
+        int s = forward.idOf(src);
+        int t = forward.idOf(des);
+        Graph_M.PathResult result;
+        if (s == -1 || t == -1) {
+            result = new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        } else {
+            int[] ids = path(s, t);
+            trace.settled = settled;
+            trace.relaxed = relaxed;
+            trace.heapOps = heapOps;
+            if (ids == null) {
+                result = new Graph_M.PathResult("NO_PATH", -1, 0);
+            } else {
+                String[] stations = new String[ids.length];
+                for (int i = 0; i < ids.length; i++) {
+                    stations[i] = forward.name(ids[i]);
+                }
+                result = new Graph_M.PathResult(String.join("###", stations), distF[meet] + distB[meet], 0);
+                result.stations = stations;
+            }
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), "bidirectional", src, des, result.totalCost != -1);
+        return result;
+    }
+
+    private void touch(int v)
+    {
+        touched[touchedCount++] = v;
+    }
+
+    // Clears the state of the previous query.
+    private void reset()
+    {
+        for (int i = 0; i < touchedCount; i++) {
+            distF[touched[i]] = INF;
+            distB[touched[i]] = INF;
+        }
+        touchedCount = 0;
+        pqF.clear();
+        pqB.clear();
+    }
+    /**
+     * Consistency check on a random network mixing two-way, asymmetric and one-way routes, built through
+     * Graph_M (including addEdge over existing one-way routes): Graph_M.dijkstra, this search, hub labels
+     * and the one-to-all CompactDijkstra must agree on every cost.
+     * Usage: java BidirectionalDijkstra [airports=300] [queries=2000]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Random rnd = new Random(11);
+        Graph_M map = new Graph_M();
+        for (int v = 0; v < n; v++) {
+            map.addVertex("A" + v);
+        }
+        int completions = 0, kept = 0, completed = 0;
+        for (int e = 0; e < 3 * n; e++) {
+            String a = "A" + rnd.nextInt(n), b = "A" + rnd.nextInt(n);
+            if (a.equals(b)) {
+                continue;
+            }
+            switch (rnd.nextInt(4)) {
+                case 0: map.addEdge(a, b, 1 + rnd.nextInt(900)); break;
+                case 1: map.addEdge(a, b, 1 + rnd.nextInt(900), 1 + rnd.nextInt(900)); break;
+                case 2: map.addDirectedEdge(a, b, 1 + rnd.nextInt(900)); break;
+                default: {
+                    // Complete a one-way route: the existing direction must keep its weight
+                    completions++;
+                    map.addDirectedEdge(a, b, 1 + rnd.nextInt(900));
+                    int before = Graph_M.vtces.get(a).nbrs.get(b);
+                    boolean missing = !map.containsEdge(b, a);
+                    map.addEdge(a, b, 1 + rnd.nextInt(900));
+                    kept += Graph_M.vtces.get(a).nbrs.get(b) == before ? 1 : 0;
+                    completed += missing && map.containsEdge(b, a) ? 1 : 0;
+                    break;
+                }
+            }
+        }
+        RouteGraph g = RouteGraph.current();
+        BidirectionalDijkstra bidi = new BidirectionalDijkstra(g, false);
+        HubLabels labels = HubLabels.build(g, false);
+        int mismatches = 0;
+        for (int q = 0; q < queries; q++) {
+            int s = rnd.nextInt(n), t = rnd.nextInt(n);
+            int[] all = CompactDijkstra.allCosts(g, s, false);
+            int expected = all[t] == INF ? -1 : all[t];
+            // Graph_M.dijkstra has no defined result for unreachable pairs, so it is compared on reachable ones
+            int reference = expected == -1 ? -1 : map.dijkstra(g.name(s), g.name(t), false).totalCost;
+            int bidiCost = bidi.cost(s, t);
+            int labelCost = labels.cost(s, t);
+            if (reference != expected || (bidiCost == INF ? -1 : bidiCost) != expected
+                    || (labelCost == INF ? -1 : labelCost) != expected) {
+                mismatches++;
+            }
+        }
+        System.out.printf("%d airports, %d arcs; addEdge over %d one-way routes: %d kept their weight, %d completed%n",
+                n, g.numArcs(), completions, kept, completed);
+        System.out.printf("%d queries, %d cost mismatches between Graph_M, bidirectional, hub labels and one-to-all%n",
+                queries, mismatches);
+    }
+}
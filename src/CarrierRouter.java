@@ -0,0 +1,461 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Carrier-aware routing: minimizes route cost plus a penalty for every change of carrier, using the
+ * carriers set on routes with Graph_M.setCarriers.
+ *
+ * The search runs on a state-expanded graph with primitive ids. Every airport v has one ground state
+ * and one state (v, c) for each carrier c flying into or out of it. A route u -> w flown by c becomes
+ * an arc (u, c) -> (w, c); staying on board is free, while leaving the aircraft at an intermediate
+ * airport goes (v, c) -> ground(v) at the transfer penalty and boarding any carrier from the ground
+ * is free. A journey starts on the ground at the source and ends at the first state of the target,
+ * so the penalty is charged exactly once per carrier change and the result is optimal under it.
+ *
+ * States of an airport are numbered consecutively (ground first) and the arcs of its carrier states
+ * are stored consecutively, so "board anything" from the ground is one contiguous arc range. Routes
+ * without carrier data are flown by the pseudo carrier "?" (so consecutive legs without data are not
+ * a change). Results carry the carrier of every leg, and processPathForDisplay and RouteEncoder count
+ * interchanges from those, so the count shown is the one the search minimized.
+ */
+public class CarrierRouter
+{
+    static final int INF = Integer.MAX_VALUE;
+    static final String UNKNOWN_CARRIER = "?";
+
+    final RouteGraph graph;
+    final String[] carrierCodes;      // carrier id -> code
+    final int version;
+    private final int[] stateStart;   // vertex -> its ground state; carrier states follow; size n + 1
+    private final int[] stateVertex;  // state -> vertex
+    private final int[] stateCarrier; // state -> carrier id, -1 for ground states
+    private final int[] arcStart;     // state -> first arc; size states + 1 (ground states have none)
+    private final int[] arcHead;      // arc -> head state
+    private final int[] arcWeight;    // arc -> raw route weight
+    // Idle search states for queryPath; the router is per snapshot, so the pool is too
+    private final SearchPool<Search> searches;
+
+    private static volatile CarrierRouter cached;
+
+    /**
+     * Builds the state-expanded graph.
+     * @param g            The route graph.
+     * @param carrierFirst Per arc of g, the range [carrierFirst[a], carrierFirst[a + 1]) of carrierIds.
+     * @param carrierIds   Carrier ids flying each arc (an arc without any gets none and is skipped).
+     * @param carrierCodes Carrier id -> code.
+     * @param version      The Graph_M version the data comes from (-1 if not backed by Graph_M).
+     */
+    CarrierRouter(RouteGraph g, int[] carrierFirst, int[] carrierIds, String[] carrierCodes, int version) {
+        this.graph = g;
+        this.carrierCodes = carrierCodes;
+        this.version = version;
+        this.searches = new SearchPool<>(g, graph -> new Search(), SearchPool.DEFAULT_CAPACITY);
+        int n = g.numVertices();
+        int k = carrierCodes.length;
+
+        // Carriers present at each airport (outgoing or incoming), with a per-airport stamp to dedupe
+        int[] seenAt = new int[k];
+        Arrays.fill(seenAt, -1);
+        DeltaStepping.IntList[] present = new DeltaStepping.IntList[n];
+        for (int v = 0; v < n; v++) {
+            present[v] = new DeltaStepping.IntList();
+        }
+        for (int u = 0; u < n; u++) {
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                for (int i = carrierFirst[a]; i < carrierFirst[a + 1]; i++) {
+                    present[u].add(carrierIds[i]);
+                    present[g.arcHead(a)].add(carrierIds[i]);
+                }
+            }
+        }
+        stateStart = new int[n + 1];
+        DeltaStepping.IntList carriers = new DeltaStepping.IntList();
+        for (int v = 0; v < n; v++) {
+            carriers.add(-1); // Ground
+            int before = carriers.size;
+            for (int i = 0; i < present[v].size; i++) {
+                int c = present[v].data[i];
+                if (seenAt[c] != v) {
+                    seenAt[c] = v;
+                    carriers.add(c);
+                }
+            }
+            Arrays.sort(carriers.data, before, carriers.size);
+            stateStart[v + 1] = carriers.size;
+            present[v] = null;
+        }
+        int states = carriers.size;
+        stateCarrier = Arrays.copyOf(carriers.data, states);
+        stateVertex = new int[states];
+        for (int v = 0; v < n; v++) {
+            Arrays.fill(stateVertex, stateStart[v], stateStart[v + 1], v);
+        }
+
+        // Arcs grouped by tail state: count, prefix-sum, fill
+        arcStart = new int[states + 1];
+        for (int u = 0; u < n; u++) {
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                for (int i = carrierFirst[a]; i < carrierFirst[a + 1]; i++) {
+                    arcStart[state(u, carrierIds[i]) + 1]++;
+                }
+            }
+        }
+        for (int s = 0; s < states; s++) {
+            arcStart[s + 1] += arcStart[s];
+        }
+        int[] fill = Arrays.copyOf(arcStart, states);
+        arcHead = new int[arcStart[states]];
+        arcWeight = new int[arcStart[states]];
+        for (int u = 0; u < n; u++) {
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                for (int i = carrierFirst[a]; i < carrierFirst[a + 1]; i++) {
+                    int c = carrierIds[i];
+                    int slot = fill[state(u, c)]++;
+                    arcHead[slot] = state(g.arcHead(a), c);
+                    arcWeight[slot] = g.arcWeight(a);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the router for the current Graph_M contents and carriers, rebuilt when the graph changes.
+     */
+    public static CarrierRouter current()
+    {
+        CarrierRouter r = cached;
+        if (r == null || r.version != Graph_M.version) {
+            synchronized (CarrierRouter.class) {
+                r = cached;
+                int version = Graph_M.version; // Read before vtces, as in RouteGraph.current
+                if (r == null || r.version != version) {
+                    r = fromGraph(RouteGraph.current(), Graph_M.vtces, version);
+                    cached = r;
+                }
+            }
+        }
+        return r;
+    }
+
+    // Reads the carriers of every arc of g from the Graph_M vertex map.
+    static CarrierRouter fromGraph(RouteGraph g, Map<String, Graph_M.Vertex> vtces, int version)
+    {
+        HashMap<String, Integer> ids = new HashMap<>();
+        ArrayList<String> codes = new ArrayList<>();
+        int[] carrierFirst = new int[g.numArcs() + 1];
+        DeltaStepping.IntList carrierIds = new DeltaStepping.IntList();
+        for (int u = 0; u < g.numVertices(); u++) {
+            Graph_M.Vertex vtx = vtces.get(g.name(u));
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                String[] onArc = vtx == null ? null : vtx.carriers.get(g.name(g.arcHead(a)));
+                if (onArc == null || onArc.length == 0) {
+                    onArc = new String[] {UNKNOWN_CARRIER};
+                }
+                for (String code : onArc) {
+                    Integer id = ids.get(code);
+                    if (id == null) {
+                        id = codes.size();
+                        ids.put(code, id);
+                        codes.add(code);
+                    }
+                    carrierIds.add(id);
+                }
+                carrierFirst[a + 1] = carrierIds.size;
+            }
+        }
+        return new CarrierRouter(g, carrierFirst, Arrays.copyOf(carrierIds.data, carrierIds.size),
+                codes.toArray(new String[0]), version);
+    }
+
+    /**
+     * @return The number of states of the expanded graph.
+     */
+    public int numStates()
+    {
+        return stateVertex.length;
+    }
+
+    /**
+     * @return The number of arcs of the expanded graph (one per route and carrier).
+     */
+    public int numStateArcs()
+    {
+        return arcHead.length;
+    }
+
+    // State (v, c); c must fly into or out of v.
+    private int state(int v, int c)
+    {
+        int lo = stateStart[v] + 1, hi = stateStart[v + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (stateCarrier[mid] < c) {
+                lo = mid + 1;
+            } else if (stateCarrier[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        throw new IllegalStateException("No state for carrier " + c + " at vertex " + v);
+    }
+
+    /**
+     * A cheapest journey under a transfer penalty.
+     */
+    public static final class Journey
+    {
+        final int[] vertices;     // airports in order
+        final String[] carriers;  // carrier of each leg (vertices.length - 1 entries)
+        final int cost;           // route cost without penalties
+        final int changes;        // number of carrier changes
+        final int objective;      // cost + changes * penalty, the value minimized
+
+        Journey(int[] vertices, String[] carriers, int cost, int changes, int objective) {
+            this.vertices = vertices;
+            this.carriers = carriers;
+            this.cost = cost;
+            this.changes = changes;
+            this.objective = objective;
+        }
+    }
+
+    /**
+     * Search state for one query at a time; keeps its arrays between queries and resets only what it
+     * touched. queryPath takes one from the router's pool.
+     */
+    public final class Search
+    {
+        private final int[] dist;
+        private final int[] parent;
+        private final IndexedMinHeap pq;
+        private final DeltaStepping.IntList touched = new DeltaStepping.IntList();
+        long settled, relaxed, heapOps;
+
+        public Search() {
+            dist = new int[numStates()];
+            parent = new int[numStates()];
+            Arrays.fill(dist, INF);
+            pq = new IndexedMinHeap(numStates());
+        }
+
+        /**
+         * Finds the journey minimizing cost plus penalty per change of carrier.
+         * @param s          Source vertex id.
+         * @param t          Target vertex id.
+         * @param isTimeCost True for the time metric, false for distance.
+         * @param penalty    Cost of one change of carrier, in the units of the metric.
+         * @return The journey, or null if t is unreachable.
+         */
+        public Journey route(int s, int t, boolean isTimeCost, int penalty)
+        {
+            for (int i = 0; i < touched.size; i++) {
+                dist[touched.data[i]] = INF;
+            }
+            touched.size = 0;
+            pq.clear();
+            settled = relaxed = heapOps = 0;
+            if (s == t) {
+                return new Journey(new int[] {s}, new String[0], 0, 0, 0);
+            }
+            int ground = stateStart[s];
+            relax(ground, 0, -1);
+            while (!pq.isEmpty()) {
+                int x = pq.pop();
+                heapOps++;
+                settled++;
+                int v = stateVertex[x];
+                if (v == t) {
+                    return journey(x, isTimeCost, penalty);
+                }
+                int dx = dist[x];
+                int from, to;
+                if (stateCarrier[x] == -1) {
+                    // On the ground: board any carrier leaving v
+                    from = arcStart[x];
+                    to = arcStart[stateStart[v + 1]];
+                } else {
+                    relax(stateStart[v], (long) dx + penalty, x);
+                    from = arcStart[x];
+                    to = arcStart[x + 1];
+                }
+                for (int a = from; a < to; a++) {
+                    relaxed++;
+                    relax(arcHead[a], (long) dx + Graph_M.edgeCost(arcWeight[a], isTimeCost), x);
+                }
+            }
+            return null;
+        }
+
+        private void relax(int y, long cost, int from)
+        {
+            if (cost < dist[y]) {
+                if (dist[y] == INF) {
+                    touched.add(y);
+                }
+                dist[y] = (int) cost;
+                parent[y] = from;
+                pq.pushOrDecrease(y, (int) cost);
+                heapOps++;
+            }
+        }
+
+        // Walks parents back from the settled target state, dropping ground states.
+        private Journey journey(int x, boolean isTimeCost, int penalty)
+        {
+            DeltaStepping.IntList states = new DeltaStepping.IntList();
+            for (int y = x; y != -1; y = parent[y]) {
+                if (stateCarrier[y] != -1 || parent[y] == -1) {
+                    states.add(y);
+                }
+            }
+            int legs = states.size - 1;
+            int[] vertices = new int[legs + 1];
+            String[] carriers = new String[legs];
+            int changes = 0;
+            for (int i = 0; i <= legs; i++) {
+                int y = states.data[legs - i];
+                vertices[i] = stateVertex[y];
+                if (i > 0) {
+                    carriers[i - 1] = carrierCodes[stateCarrier[y]];
+                    if (i > 1 && !carriers[i - 1].equals(carriers[i - 2])) {
+                        changes++;
+                    }
+                }
+            }
+            return new Journey(vertices, carriers, dist[x] - changes * penalty, changes, dist[x]);
+        }
+    }
+
+    /**
+     * Carrier-aware path query by airport name, with the same raw format as Graph_M.dijkstra plus the
+     * carrier of every leg; totalCost excludes the penalties and interchangeCount is the number of
+     * carrier changes.
+     * @param src        Source airport full name.
+     * @param des        Destination airport full name.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @param penalty    Cost of one change of carrier (seconds for time, km for distance).
+     * @return A raw PathResult (stations and carriers set) or the usual error indicators.
+     */
+    public static Graph_M.PathResult queryPath(String src, String des, boolean isTimeCost, int penalty)
+    {
+        QueryTrace trace = QueryTrace.start();
+        CarrierRouter router = current();
+        int s = router.graph.idOf(src);
+        int t = router.graph.idOf(des);
+        Graph_M.PathResult result;
+        if (s == -1 || t == -1) {
+            result = new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        } else {
+            Search search = router.searches.acquire();
+            try {
+                Journey j = search.route(s, t, isTimeCost, penalty);
+                trace.settled = search.settled;
+                trace.relaxed = search.relaxed;
+                trace.heapOps = search.heapOps;
+                result = router.toResult(j);
+            } finally {
+                router.searches.release(search);
+            }
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), "carrier", src, des, result.totalCost != -1);
+        return result;
+    }
+
+    Graph_M.PathResult toResult(Journey j)
+    {
+        if (j == null) {
+            return new Graph_M.PathResult("NO_PATH", -1, 0);
+        }
+        String[] stations = new String[j.vertices.length];
+        for (int i = 0; i < stations.length; i++) {
+            stations[i] = graph.name(j.vertices[i]);
+        }
+        Graph_M.PathResult result = new Graph_M.PathResult(String.join("###", stations), j.cost, j.changes);
+        result.stations = stations;
+        result.carriers = j.carriers;
+        return result;
+    }
+
+    /**
+     * Benchmark: size of the state-expanded graph and query time against plain Dijkstra, and how the
+     * penalty trades route cost against changes, on a synthetic network with a few carriers per route.
+     * Usage: java CarrierRouter [vertices=50000] [carriers=12] [penaltySeconds=3600]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int penalty = args.length > 2 ? Integer.parseInt(args[2]) : 3600;
+        CompactGraph g = SyntheticNetwork.generate(n, 6, 800, 42);
+
+        // Each carrier serves a home region plus random routes; 1-3 carriers per route, the same both ways
+        Random rnd = new Random(5);
+        String[] codes = new String[k];
+        for (int c = 0; c < k; c++) {
+            codes[c] = "C" + c;
+        }
+        int[] carrierFirst = new int[g.numArcs() + 1];
+        DeltaStepping.IntList ids = new DeltaStepping.IntList();
+        for (int u = 0; u < n; u++) {
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                int w = g.arcHead(a);
+                long h = (long) Math.min(u, w) * 1_000_003L + Math.max(u, w);
+                rnd.setSeed(h);
+                int home = (int) ((long) Math.min(u, w) * k / n);
+                ids.add(home);
+                for (int extra = rnd.nextInt(3); extra > 0; extra--) {
+                    int c = rnd.nextInt(k);
+                    if (c != home && (ids.size == carrierFirst[a] + 1 || ids.data[ids.size - 1] != c)) {
+                        ids.add(c);
+                    }
+                }
+                carrierFirst[a + 1] = ids.size;
+            }
+        }
+        long t0 = System.nanoTime();
+        CarrierRouter router = new CarrierRouter(g, carrierFirst, Arrays.copyOf(ids.data, ids.size), codes, -1);
+        long buildNanos = System.nanoTime() - t0;
+        System.out.printf("Vertices: %d, arcs: %d -> states: %d, state arcs: %d (built in %.0f ms)%n",
+                n, g.numArcs(), router.numStates(), router.numStateArcs(), buildNanos / 1e6);
+
+        Search search = router.new Search();
+        MultiSourceDijkstra plain = new MultiSourceDijkstra(g, true);
+        int queries = 200;
+        rnd.setSeed(11);
+        int[] src = new int[queries], dst = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            src[q] = rnd.nextInt(n);
+            dst[q] = rnd.nextInt(n);
+        }
+        int[] penalties = {0, penalty};
+        for (int round = 0; round < 2; round++) { // The first round warms up
+            long plainNanos = 0;
+            for (int q = 0; q < queries; q++) {
+                long a = System.nanoTime();
+                plain.search(new int[] {src[q]}, dst[q]);
+                plainNanos += System.nanoTime() - a;
+            }
+            for (int p : penalties) {
+                long nanos = 0, cost = 0, changes = 0, settledStates = 0;
+                for (int q = 0; q < queries; q++) {
+                    long a = System.nanoTime();
+                    Journey j = search.route(src[q], dst[q], true, p);
+                    nanos += System.nanoTime() - a;
+                    cost += j.cost;
+                    changes += j.changes;
+                    settledStates += search.settled;
+                }
+                if (round == 1) {
+                    System.out.printf("penalty %5d s: %.3f ms per query (Dijkstra %.3f ms), %.0f settled states, "
+                                    + "avg time %.0f s, avg changes %.2f%n",
+                            p, nanos / 1e6 / queries, plainNanos / 1e6 / queries, (double) settledStates / queries,
+                            (double) cost / queries, (double) changes / queries);
+                }
+            }
+        }
+    }
+}
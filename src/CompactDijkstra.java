@@ -0,0 +1,43 @@
+import java.util.Arrays;
+
+/**
+ * Sequential Dijkstra over a RouteGraph using the primitive IndexedMinHeap.
+ * This is the reference one-to-all search that the parallel and index-based engines are checked against.
+ */
+public class CompactDijkstra
+{
+    static final int INF = Integer.MAX_VALUE;
+
+    private CompactDijkstra() {
+    }
+
+    /**
+     * Computes the shortest cost from a source to every vertex.
+     * @param g          The graph (on- or off-heap).
+     * @param src        Source vertex id.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return dist[v] for every vertex (INF if unreachable).
+     */
+    public static int[] allCosts(RouteGraph g, int src, boolean isTimeCost)
+    {
+        int n = g.numVertices();
+        int[] dist = new int[n];
+        Arrays.fill(dist, INF);
+        IndexedMinHeap pq = new IndexedMinHeap(n);
+        dist[src] = 0;
+        pq.pushOrDecrease(src, 0);
+        while (!pq.isEmpty()) {
+            int u = pq.pop();
+            int du = dist[u];
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                int v = g.arcHead(a);
+                int nd = du + g.arcCost(a, isTimeCost);
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    pq.pushOrDecrease(v, nd);
+                }
+            }
+        }
+        return dist;
+    }
+}
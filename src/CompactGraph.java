@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable, array-based snapshot of the Graph_M route graph for the fast search engines.
+ * Airports get dense integer ids (sorted by name, so ids are stable for a given graph) and the
+ * adjacency is stored in compressed sparse row (CSR) form: the arcs leaving vertex v are
+ * [offsets[v], offsets[v + 1]) in the targets / cost arrays, ordered by head id. Arc costs are
+ * precomputed for both metrics with Graph_M.edgeCost, so engines never touch a HashMap or box an
+ * Integer while searching.
+ *
+ * Routes may be one-way or have a different weight in each direction, so backward searches need the
+ * incoming arcs as well: {@link #reverse()} is a second CSR over the same ids with every arc flipped.
+ * When the graph is symmetric (every arc has a twin in the other direction with the same weight) the
+ * reverse CSR would be identical to the forward one, so reverse() returns this graph and the
+ * adjacency is stored only once.
+ */
+public class CompactGraph implements RouteGraph
+{
+    final String[] names;                   // id -> full airport name
+    final HashMap<String, Integer> ids;     // full airport name -> id
+    final int[] offsets;                    // length n + 1
+    final int[] targets;                    // arc -> head vertex id
+    final int[] weights;                    // arc -> raw edge weight (as passed to addEdge)
+    final int[] distCost;                   // arc -> distance cost
+    final int[] timeCost;                   // arc -> time cost
+    final double[] lat, lng;                // id -> location in degrees (NaN if unknown); null if none known
+    final int version;                      // Graph_M.version this snapshot was built from (-1 if synthetic)
+    final CompactGraph reverse;             // Incoming arcs as a graph of its own; this if symmetric
+
+    private static volatile CompactGraph cached;
+
+    /**
+     * Builds a graph from CSR arrays; the arcs of each vertex are reordered by head id in place.
+     */
+    CompactGraph(String[] names, int[] offsets, int[] targets, int[] weights, int version) {
+        this(names, offsets, targets, weights, null, null, version);
+    }
+
+    /**
+     * Same, with airport locations (arrays indexed by id, or null).
+     */
+    CompactGraph(String[] names, int[] offsets, int[] targets, int[] weights, double[] lat, double[] lng, int version) {
+        this(names, indexNames(names), sortArcs(offsets, targets, weights), targets, weights, lat, lng, version, null);
+    }
+
+    // forward is null when building a forward graph, or the graph this one is the reverse of.
+    private CompactGraph(String[] names, HashMap<String, Integer> ids, int[] offsets, int[] targets,
+                         int[] weights, double[] lat, double[] lng, int version, CompactGraph forward) {
+        this.names = names;
+        this.ids = ids;
+        this.lat = lat;
+        this.lng = lng;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.version = version;
+        this.distCost = new int[weights.length];
+        this.timeCost = new int[weights.length];
+        for (int a = 0; a < weights.length; a++) {
+            distCost[a] = Graph_M.edgeCost(weights[a], false);
+            timeCost[a] = Graph_M.edgeCost(weights[a], true);
+        }
+        this.reverse = forward != null ? forward : buildReverse();
+    }
+
+    private static HashMap<String, Integer> indexNames(String[] names)
+    {
+        HashMap<String, Integer> ids = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            ids.put(names[i], i);
+        }
+        return ids;
+    }
+
+    // Orders each vertex's arcs by (head, weight) so that the forward and reverse CSR of a symmetric
+    // graph come out identical. Returns offsets for use in a constructor call.
+    private static int[] sortArcs(int[] offsets, int[] targets, int[] weights)
+    {
+        long[] packed = new long[targets.length];
+        for (int a = 0; a < targets.length; a++) {
+            packed[a] = ((long) targets[a] << 32) | (weights[a] & 0xFFFFFFFFL);
+        }
+        for (int v = 0; v + 1 < offsets.length; v++) {
+            if (offsets[v + 1] - offsets[v] > 1) {
+                Arrays.sort(packed, offsets[v], offsets[v + 1]);
+            }
+        }
+        for (int a = 0; a < targets.length; a++) {
+            targets[a] = (int) (packed[a] >>> 32);
+            weights[a] = (int) packed[a];
+        }
+        return offsets;
+    }
+
+    // Counting-sort transpose. Tails are visited in increasing order, so each reverse list is sorted
+    // by tail id; for a symmetric graph the result equals the forward arrays and is discarded.
+    private CompactGraph buildReverse()
+    {
+        int n = names.length;
+        int[] rOffsets = new int[n + 1];
+        for (int a = 0; a < targets.length; a++) {
+            rOffsets[targets[a] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            rOffsets[v + 1] += rOffsets[v];
+        }
+        int[] fill = Arrays.copyOf(rOffsets, n);
+        int[] rTails = new int[targets.length];
+        int[] rWeights = new int[targets.length];
+        for (int u = 0; u < n; u++) {
+            for (int a = offsets[u]; a < offsets[u + 1]; a++) {
+                int r = fill[targets[a]]++;
+                rTails[r] = u;
+                rWeights[r] = weights[a];
+            }
+        }
+        if (Arrays.equals(rOffsets, offsets) && Arrays.equals(rTails, targets) && Arrays.equals(rWeights, weights)) {
+            return this;
+        }
+        return new CompactGraph(names, ids, rOffsets, rTails, rWeights, lat, lng, version, this);
+    }
+
+    /**
+     * Returns a snapshot of the current Graph_M contents, reusing the cached one while
+     * the graph version is unchanged.
+     * @return The compact graph for the current graph version.
+     */
+    public static CompactGraph current()
+    {
+        CompactGraph g = cached;
+        int v = Graph_M.version;
+        if (g == null || g.version != v) {
+            synchronized (CompactGraph.class) {
+                g = cached;
+                int version = Graph_M.version; // Read before vtces: a batch publishes vtces first
+                if (g == null || g.version != version) {
+                    g = snapshot(Graph_M.vtces, version);
+                    cached = g;
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Installs a snapshot built ahead of publishing a new graph version (see GraphBatch.commit).
+     * @param g The snapshot for the version that was just published.
+     */
+    static synchronized void install(CompactGraph g)
+    {
+        if (g.version == Graph_M.version) {
+            cached = g;
+        }
+    }
+
+    /**
+     * Builds a compact snapshot from a vertex map.
+     * @param vtces   The Graph_M vertex map.
+     * @param version The graph version to tag the snapshot with.
+     * @return A new compact graph.
+     */
+    static CompactGraph snapshot(Map<String, Graph_M.Vertex> vtces, int version)
+    {
+        ArrayList<String> keys = new ArrayList<>(vtces.keySet());
+        Collections.sort(keys);
+        int n = keys.size();
+        HashMap<String, Integer> idOf = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            idOf.put(keys.get(i), i);
+        }
+
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] = offsets[i] + vtces.get(keys.get(i)).nbrs.size();
+        }
+        int[] targets = new int[offsets[n]];
+        int[] weights = new int[offsets[n]];
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        for (int i = 0; i < n; i++) {
+            Graph_M.Vertex vtx = vtces.get(keys.get(i));
+            lat[i] = vtx.lat;
+            lng[i] = vtx.lng;
+            int a = offsets[i];
+            for (Map.Entry<String, Integer> e : vtces.get(keys.get(i)).nbrs.entrySet()) {
+                targets[a] = idOf.get(e.getKey());
+                weights[a] = e.getValue();
+                a++;
+            }
+        }
+        return new CompactGraph(keys.toArray(new String[0]), offsets, targets, weights, lat, lng, version);
+    }
+
+    // --- RouteGraph ---
+
+    @Override
+    public int numVertices()
+    {
+        return names.length;
+    }
+
+    @Override
+    public int numArcs()
+    {
+        return targets.length;
+    }
+
+    @Override
+    public int arcBegin(int v)
+    {
+        return offsets[v];
+    }
+
+    @Override
+    public int arcEnd(int v)
+    {
+        return offsets[v + 1];
+    }
+
+    @Override
+    public int arcHead(int a)
+    {
+        return targets[a];
+    }
+
+    @Override
+    public int arcWeight(int a)
+    {
+        return weights[a];
+    }
+
+    @Override
+    public int arcCost(int a, boolean isTimeCost)
+    {
+        return isTimeCost ? timeCost[a] : distCost[a];
+    }
+
+    @Override
+    public RouteGraph reverse()
+    {
+        return reverse;
+    }
+
+    @Override
+    public int idOf(String name)
+    {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    @Override
+    public String name(int v)
+    {
+        return names[v];
+    }
+
+    @Override
+    public double lat(int v)
+    {
+        return lat == null ? Double.NaN : lat[v];
+    }
+
+    @Override
+    public double lng(int v)
+    {
+        return lng == null ? Double.NaN : lng[v];
+    }
+}
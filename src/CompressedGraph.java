@@ -0,0 +1,530 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Read-only compressed route graph for memory-constrained deployments (airport kiosks).
+ *
+ * Each airport's routes are one record in a single byte array:
+ *   degree (varint) | weights bit-packed at a fixed width | heads, sorted, as varint gaps
+ * The first head is stored zigzag-encoded relative to the airport's own id and every further head as
+ * the gap to the previous one, so routes between nearby ids take a byte or two. Weights are stored as
+ * (weight - smallest weight) in just enough bits for the largest. Record start offsets and the name
+ * offsets are Elias-Fano coded (about 2 + log2(average gap) bits each), so the index costs a few bits
+ * per airport instead of an int. Names are UTF-8 bytes back to back.
+ *
+ * There are no arc ids, so this class does not implement RouteGraph; routes are read sequentially with
+ * a {@link Cursor}, which is all Dijkstra needs. Costs are derived from the weight with
+ * Graph_M.edgeCost, like OffHeapGraph.
+ */
+public class CompressedGraph
+{
+    static final int INF = Integer.MAX_VALUE;
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final int n;
+    private final int m;
+    private final byte[] records;          // padded with 8 zero bytes for unaligned long reads
+    private final EliasFano recordStart;   // vertex -> offset of its record
+    private final int minWeight;
+    private final int weightBits;
+    private final byte[] nameBytes;
+    private final EliasFano nameStart;     // length n + 1
+    private final int[] byName;            // ids sorted by name, or null if ids already are
+    private CompressedGraph reverse;       // this if symmetric
+
+    private CompressedGraph(int n, int m, byte[] records, EliasFano recordStart, int minWeight, int weightBits,
+                            byte[] nameBytes, EliasFano nameStart, int[] byName) {
+        this.n = n;
+        this.m = m;
+        this.records = records;
+        this.recordStart = recordStart;
+        this.minWeight = minWeight;
+        this.weightBits = weightBits;
+        this.nameBytes = nameBytes;
+        this.nameStart = nameStart;
+        this.byName = byName;
+        this.reverse = this;
+    }
+
+    /**
+     * Compresses any RouteGraph. Once the copy exists, the source can be dropped.
+     * @param g The graph to compress.
+     * @return The compressed graph; an asymmetric source also gets a compressed reverse.
+     */
+    public static CompressedGraph copyOf(RouteGraph g)
+    {
+        int n = g.numVertices();
+        ByteSink names = new ByteSink();
+        long[] nameOffsets = new long[n + 1];
+        boolean sorted = true;
+        for (int v = 0; v < n; v++) {
+            String name = g.name(v);
+            names.bytes(name.getBytes(StandardCharsets.UTF_8));
+            nameOffsets[v + 1] = names.size;
+            sorted &= v == 0 || g.name(v - 1).compareTo(name) < 0;
+        }
+        int[] byName = null;
+        if (!sorted) {
+            Integer[] order = new Integer[n];
+            for (int v = 0; v < n; v++) {
+                order[v] = v;
+            }
+            Arrays.sort(order, (a, b) -> g.name(a).compareTo(g.name(b)));
+            byName = new int[n];
+            for (int i = 0; i < n; i++) {
+                byName[i] = order[i];
+            }
+        }
+        byte[] nameBytes = Arrays.copyOf(names.data, names.size);
+        EliasFano nameStart = new EliasFano(nameOffsets);
+
+        CompressedGraph forward = encode(g, nameBytes, nameStart, byName);
+        if (!g.isSymmetric()) {
+            forward.reverse = encode(g.reverse(), nameBytes, nameStart, byName);
+            forward.reverse.reverse = forward;
+        }
+        return forward;
+    }
+
+    // Encodes the adjacency of one direction; names are shared with the other direction.
+    private static CompressedGraph encode(RouteGraph g, byte[] nameBytes, EliasFano nameStart, int[] byName)
+    {
+        int n = g.numVertices();
+        int m = g.numArcs();
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int a = 0; a < m; a++) {
+            min = Math.min(min, g.arcWeight(a));
+            max = Math.max(max, g.arcWeight(a));
+        }
+        if (m == 0) {
+            min = max = 0;
+        }
+        int bits = 64 - Long.numberOfLeadingZeros((long) max - min);
+        if (bits > 32) {
+            throw new IllegalArgumentException("Weight range too wide to pack");
+        }
+        ByteSink sink = new ByteSink();
+        long[] starts = new long[n];
+        long[] arcs = new long[16];
+        for (int v = 0; v < n; v++) {
+            starts[v] = sink.size;
+            int d = g.arcEnd(v) - g.arcBegin(v);
+            if (arcs.length < d) {
+                arcs = new long[Math.max(d, arcs.length * 2)];
+            }
+            // Sort by head, then weight; both non-negative, so packed longs sort correctly
+            for (int i = 0, a = g.arcBegin(v); i < d; i++, a++) {
+                arcs[i] = ((long) g.arcHead(a) << 32) | (g.arcWeight(a) - min);
+            }
+            Arrays.sort(arcs, 0, d);
+            sink.varint(d);
+            long bit = (long) sink.size * 8;
+            sink.grow((int) (((long) d * bits + 7) >>> 3));
+            for (int i = 0; i < d; i++, bit += bits) {
+                sink.bits(bit, (int) arcs[i], bits);
+            }
+            int prev = v;
+            for (int i = 0; i < d; i++) {
+                int head = (int) (arcs[i] >>> 32);
+                int gap = head - prev;
+                sink.varint(i == 0 ? (gap << 1) ^ (gap >> 31) : gap); // zigzag for the first, plain gaps after
+                prev = head;
+            }
+        }
+        byte[] records = Arrays.copyOf(sink.data, sink.size + 8);
+        return new CompressedGraph(n, m, records, new EliasFano(starts), min, bits, nameBytes, nameStart, byName);
+    }
+
+    public int numVertices()
+    {
+        return n;
+    }
+
+    public int numArcs()
+    {
+        return m;
+    }
+
+    /**
+     * @return The graph with every route flipped; this graph if it is symmetric.
+     */
+    public CompressedGraph reverse()
+    {
+        return reverse;
+    }
+
+    /**
+     * @return The full airport name of a vertex.
+     */
+    public String name(int v)
+    {
+        int from = (int) nameStart.get(v);
+        int to = (int) nameStart.get(v + 1);
+        return new String(nameBytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The id of an airport, or -1 if it is not in the graph.
+     */
+    public int idOf(String name)
+    {
+        int lo = 0, hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = byName == null ? mid : byName[mid];
+            int c = name(v).compareTo(name);
+            if (c == 0) {
+                return v;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return Bytes held by this graph (and its reverse, if separate).
+     */
+    public long bytes()
+    {
+        long total = records.length + recordStart.bytes() + nameBytes.length + nameStart.bytes()
+                + (byName == null ? 0 : 4L * byName.length);
+        if (reverse != this) {
+            total += reverse.records.length + reverse.recordStart.bytes();
+        }
+        return total;
+    }
+
+    /**
+     * @return A new cursor over this graph's routes; cursors are cheap and not thread-safe.
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+
+    /**
+     * Sequential reader of one airport's routes, in ascending head order:
+     * {@code for (c.reset(u); c.next(); ) { c.head(); c.cost(isTimeCost); }}
+     */
+    public final class Cursor
+    {
+        private int pos;          // next head varint
+        private long weightBit;   // next packed weight
+        private int remaining;
+        private int head;
+        private int weight;
+        private boolean first;
+
+        private Cursor() {
+        }
+
+        /**
+         * Positions the cursor before the first route of vertex v.
+         */
+        public Cursor reset(int v) {
+            pos = (int) recordStart.get(v);
+            remaining = readVarint();
+            weightBit = (long) pos * 8;
+            pos += (int) (((long) remaining * weightBits + 7) >>> 3);
+            head = v;
+            first = true;
+            return this;
+        }
+
+        /**
+         * Advances to the next route.
+         * @return False when the airport has no more routes.
+         */
+        public boolean next() {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            int x = readVarint();
+            head += first ? (x >>> 1) ^ -(x & 1) : x;
+            first = false;
+            long word = (long) LONG_LE.get(records, (int) (weightBit >>> 3));
+            weight = minWeight + (int) ((word >>> (weightBit & 7)) & ((1L << weightBits) - 1));
+            weightBit += weightBits;
+            return true;
+        }
+
+        public int head() {
+            return head;
+        }
+
+        public int weight() {
+            return weight;
+        }
+
+        public int cost(boolean isTimeCost) {
+            return Graph_M.edgeCost(weight, isTimeCost);
+        }
+
+        private int readVarint() {
+            int b = records[pos++];
+            int x = b & 0x7f;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = records[pos++];
+                x |= (b & 0x7f) << shift;
+            }
+            return x;
+        }
+    }
+
+    /**
+     * Computes the shortest cost from a source to every vertex.
+     * @return dist[v] for every vertex (INF if unreachable).
+     */
+    public int[] allCosts(int src, boolean isTimeCost)
+    {
+        int[] dist = new int[n];
+        Arrays.fill(dist, INF);
+        search(src, -1, isTimeCost, dist);
+        return dist;
+    }
+
+    /**
+     * Computes the shortest cost from s to t, stopping once t is settled.
+     * @return The cost, or INF if t is unreachable.
+     */
+    public int cost(int s, int t, boolean isTimeCost)
+    {
+        int[] dist = new int[n];
+        Arrays.fill(dist, INF);
+        return search(s, t, isTimeCost, dist);
+    }
+
+    // Dijkstra reading routes through a cursor; stops at target if it is not -1.
+    private int search(int src, int target, boolean isTimeCost, int[] dist)
+    {
+        IndexedMinHeap pq = new IndexedMinHeap(n);
+        Cursor c = new Cursor();
+        dist[src] = 0;
+        pq.pushOrDecrease(src, 0);
+        while (!pq.isEmpty()) {
+            int u = pq.pop();
+            int du = dist[u];
+            if (u == target) {
+                return du;
+            }
+            for (c.reset(u); c.next(); ) {
+                int v = c.head();
+                int nd = du + c.cost(isTimeCost);
+                if (nd < dist[v]) {
+                    dist[v] = nd;
+                    pq.pushOrDecrease(v, nd);
+                }
+            }
+        }
+        return target == -1 ? 0 : INF;
+    }
+
+    /**
+     * Elias-Fano coding of a non-decreasing sequence of non-negative longs: the low bits of each value
+     * are packed at a fixed width, the high parts as unary gaps in a bit vector. get(i) selects the
+     * i-th set bit, starting from a sampled position every SAMPLE values.
+     */
+    static final class EliasFano
+    {
+        private static final int SAMPLE_SHIFT = 8;
+
+        private final int lowWidth;
+        private final long[] low;
+        private final long[] high;
+        private final int[] samples;   // position in high of the set bit for value i << SAMPLE_SHIFT
+
+        EliasFano(long[] values) {
+            int count = values.length;
+            long universe = count == 0 ? 0 : values[count - 1];
+            lowWidth = universe > count ? 63 - Long.numberOfLeadingZeros(universe / count) : 0;
+            low = new long[(int) (((long) count * lowWidth + 63) >>> 6)];
+            long highBits = count + (universe >>> lowWidth) + 1;
+            if (highBits > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Sequence too large");
+            }
+            high = new long[(int) ((highBits + 63) >>> 6)];
+            samples = new int[(count >>> SAMPLE_SHIFT) + 1];
+            long mask = (1L << lowWidth) - 1;
+            for (int i = 0; i < count; i++) {
+                long v = values[i];
+                if (lowWidth > 0) {
+                    long bit = (long) i * lowWidth;
+                    int w = (int) (bit >>> 6);
+                    int off = (int) (bit & 63);
+                    low[w] |= (v & mask) << off;
+                    if (off + lowWidth > 64) {
+                        low[w + 1] |= (v & mask) >>> (64 - off);
+                    }
+                }
+                int pos = (int) ((v >>> lowWidth) + i);
+                high[pos >>> 6] |= 1L << pos;
+                if ((i & ((1 << SAMPLE_SHIFT) - 1)) == 0) {
+                    samples[i >>> SAMPLE_SHIFT] = pos;
+                }
+            }
+        }
+
+        long get(int i) {
+            int pos = samples[i >>> SAMPLE_SHIFT];
+            int skip = i & ((1 << SAMPLE_SHIFT) - 1);
+            int word = pos >>> 6;
+            long bits = high[word] & (-1L << (pos & 63));
+            int ones = Long.bitCount(bits);
+            while (skip >= ones) {
+                skip -= ones;
+                bits = high[++word];
+                ones = Long.bitCount(bits);
+            }
+            for (; skip > 0; skip--) {
+                bits &= bits - 1;
+            }
+            long hi = ((long) word << 6) + Long.numberOfTrailingZeros(bits) - i;
+            if (lowWidth == 0) {
+                return hi;
+            }
+            long bit = (long) i * lowWidth;
+            int w = (int) (bit >>> 6);
+            int off = (int) (bit & 63);
+            long lo = low[w] >>> off;
+            if (off + lowWidth > 64) {
+                lo |= low[w + 1] << (64 - off);
+            }
+            return (hi << lowWidth) | (lo & ((1L << lowWidth) - 1));
+        }
+
+        long bytes() {
+            return 8L * (low.length + high.length) + 4L * samples.length;
+        }
+    }
+
+    /**
+     * Growable byte array with varint and bit-field writers.
+     */
+    private static final class ByteSink
+    {
+        byte[] data = new byte[1024];
+        int size = 0;
+
+        void grow(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+            size += extra;
+        }
+
+        void bytes(byte[] b) {
+            int at = size;
+            grow(b.length);
+            System.arraycopy(b, 0, data, at, b.length);
+        }
+
+        void varint(int x) {
+            while ((x & ~0x7f) != 0) {
+                grow(1);
+                data[size - 1] = (byte) ((x & 0x7f) | 0x80);
+                x >>>= 7;
+            }
+            grow(1);
+            data[size - 1] = (byte) x;
+        }
+
+        // Writes the low width bits of value at a bit position inside the already grown area.
+        void bits(long bit, int value, int width) {
+            while (width > 0) {
+                int idx = (int) (bit >>> 3);
+                int off = (int) (bit & 7);
+                int take = Math.min(8 - off, width);
+                data[idx] |= (byte) ((value & ((1 << take) - 1)) << off);
+                value >>>= take;
+                bit += take;
+                width -= take;
+            }
+        }
+    }
+
+    /**
+     * Benchmark: memory of the Graph_M HashMap layout vs the compressed graph, and query speed of the
+     * compressed graph vs CompactGraph.
+     * Usage: java CompressedGraph [vertices=100000] [avgDegree=6]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        CompactGraph compact = SyntheticNetwork.generate(n, degree, 800, 42);
+        CompressedGraph compressed = copyOf(compact);
+
+        // The same network in the Graph_M layout, with names of its own
+        long before = usedHeap();
+        Graph_M map = new Graph_M();
+        String[] names = new String[n];
+        for (int v = 0; v < n; v++) {
+            names[v] = compressed.name(v);
+            map.addVertex(names[v]);
+        }
+        for (int u = 0; u < n; u++) {
+            for (int a = compact.arcBegin(u), end = compact.arcEnd(u); a < end; a++) {
+                if (compact.arcHead(a) > u) {
+                    map.addEdge(names[u], names[compact.arcHead(a)], compact.arcWeight(a));
+                }
+            }
+        }
+        names = null;
+        long mapBytes = usedHeap() - before;
+
+        Random rnd = new Random(3);
+        int queries = 200;
+        int[] src = new int[queries], dst = new int[queries];
+        for (int q = 0; q < queries; q++) {
+            src[q] = rnd.nextInt(n);
+            dst[q] = rnd.nextInt(n);
+        }
+        boolean identical = true;
+        long compactNanos = 0, compressedNanos = 0;
+        for (int round = 0; round < 2; round++) {  // The first round warms up both
+            compactNanos = compressedNanos = 0;
+            for (int q = 0; q < queries; q++) {
+                long t0 = System.nanoTime();
+                int[] a = CompactDijkstra.allCosts(compact, src[q], true);
+                long t1 = System.nanoTime();
+                int b = compressed.cost(src[q], dst[q], true);
+                long t2 = System.nanoTime();
+                int[] c = q % 20 == 0 ? compressed.allCosts(src[q], true) : null;
+                identical &= a[dst[q]] == b && (c == null || Arrays.equals(a, c));
+                compactNanos += t1 - t0;
+                compressedNanos += t2 - t1;
+            }
+        }
+        long t0 = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            compressed.allCosts(src[q], true);
+        }
+        long allNanos = System.nanoTime() - t0;
+
+        System.out.println("Vertices: " + n + ", arcs: " + compressed.numArcs() + ", weight bits: " + compressed.weightBits);
+        System.out.printf("Graph_M HashMap layout: %.1f MB, compressed: %.1f MB (%.1fx smaller, %.1f bytes per arc)%n",
+                mapBytes / 1e6, compressed.bytes() / 1e6, (double) mapBytes / compressed.bytes(),
+                (double) compressed.records.length / Math.max(1, compressed.numArcs()));
+        System.out.printf("One-to-all Dijkstra: CompactGraph %.2f ms, compressed %.2f ms (%.2fx); "
+                        + "point-to-point on compressed %.2f ms; results %s%n",
+                compactNanos / 1e6 / queries, allNanos / 1e6 / queries, (double) allNanos / compactNanos,
+                compressedNanos / 1e6 / queries, identical ? "identical" : "MISMATCH");
+    }
+
+    private static long usedHeap()
+    {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Parallel single-source shortest paths with delta-stepping (Meyer and Sanders).
+ *
+ * Tentative costs are grouped into buckets of width delta. The current bucket is settled in phases:
+ * "light" arcs (cost <= delta) are relaxed in parallel until the bucket stops refilling, then the
+ * "heavy" arcs of every vertex settled in that bucket are relaxed once. Each phase splits the frontier
+ * into ForkJoin tasks, so idle workers steal ranges from busy ones. Costs live in an AtomicIntegerArray
+ * and improve through a compare-and-set minimum, so concurrent relaxations never lose an update.
+ *
+ * A small delta behaves like Dijkstra (little parallelism, little wasted work); a large delta
+ * behaves like Bellman-Ford. {@link #suggestDelta} picks the mean arc cost as a starting point.
+ */
+public class DeltaStepping
+{
+    static final int INF = Integer.MAX_VALUE;
+    // Frontier slices smaller than this are relaxed by a single task.
+    private static final int SPLIT_THRESHOLD = 512;
+
+    private final RouteGraph g;
+    private final boolean isTimeCost;
+    private final int delta;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param g          The graph to search.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @param delta      Bucket width (must be positive).
+     * @param pool       The pool to run relaxation tasks on.
+     */
+    public DeltaStepping(RouteGraph g, boolean isTimeCost, int delta, ForkJoinPool pool)
+    {
+        if (delta <= 0) {
+            throw new IllegalArgumentException("delta must be positive");
+        }
+        this.g = g;
+        this.isTimeCost = isTimeCost;
+        this.delta = delta;
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a reasonable default bucket width: the mean arc cost for the metric.
+     */
+    public static int suggestDelta(RouteGraph g, boolean isTimeCost)
+    {
+        int m = g.numArcs();
+        if (m == 0) {
+            return 1;
+        }
+        long sum = 0;
+        for (int a = 0; a < m; a++) {
+            sum += g.arcCost(a, isTimeCost);
+        }
+        return (int) Math.max(1, sum / m);
+    }
+
+    /**
+     * Computes shortest costs from a source to every vertex.
+     * @param src Source vertex id.
+     * @return dist[v] for every vertex (INF if unreachable).
+     */
+    public int[] run(int src)
+    {
+        int n = g.numVertices();
+        AtomicIntegerArray dist = new AtomicIntegerArray(n);
+        for (int v = 0; v < n; v++) {
+            dist.set(v, INF);
+        }
+        dist.set(src, 0);
+
+        ArrayList<IntList> buckets = new ArrayList<>();
+        addToBucket(buckets, 0, src);
+        int[] frontierStamp = new int[n];   // Dedupes a vertex within one light phase
+        int[] settledStamp = new int[n];    // Dedupes a vertex within one bucket's settled set
+        int phase = 0;
+
+        for (int i = 0; i < buckets.size(); i++) {
+            int bucketNo = i + 1;
+            IntList settled = new IntList();
+            while (buckets.get(i) != null && buckets.get(i).size > 0) {
+                IntList pending = buckets.get(i);
+                buckets.set(i, null);
+                phase++;
+
+                // Keep only vertices that still belong to this bucket (others were improved into an earlier
+                // position of this bucket already, or are stale duplicates).
+                IntList frontier = new IntList();
+                for (int k = 0; k < pending.size; k++) {
+                    int v = pending.data[k];
+                    if (frontierStamp[v] != phase && dist.get(v) / delta == i) {
+                        frontierStamp[v] = phase;
+                        frontier.add(v);
+                        if (settledStamp[v] != bucketNo) {
+                            settledStamp[v] = bucketNo;
+                            settled.add(v);
+                        }
+                    }
+                }
+                if (frontier.size == 0) {
+                    break;
+                }
+                IntList improved = pool.invoke(new RelaxTask(dist, frontier.data, 0, frontier.size, true));
+                distribute(buckets, dist, improved);
+            }
+            if (settled.size > 0) {
+                IntList improved = pool.invoke(new RelaxTask(dist, settled.data, 0, settled.size, false));
+                distribute(buckets, dist, improved);
+            }
+        }
+
+        int[] out = new int[n];
+        for (int v = 0; v < n; v++) {
+            out[v] = dist.get(v);
+        }
+        return out;
+    }
+
+    // Files every improved vertex under the bucket of its current cost.
+    private void distribute(ArrayList<IntList> buckets, AtomicIntegerArray dist, IntList improved)
+    {
+        for (int k = 0; k < improved.size; k++) {
+            int v = improved.data[k];
+            addToBucket(buckets, dist.get(v) / delta, v);
+        }
+    }
+
+    private static void addToBucket(ArrayList<IntList> buckets, int b, int v)
+    {
+        while (buckets.size() <= b) {
+            buckets.add(null);
+        }
+        IntList list = buckets.get(b);
+        if (list == null) {
+            list = new IntList();
+            buckets.set(b, list);
+        }
+        list.add(v);
+    }
+
+    /**
+     * Relaxes the light or heavy arcs of frontier[lo, hi), splitting the range across workers.
+     * Returns the vertices whose cost improved.
+     */
+    private final class RelaxTask extends RecursiveTask<IntList>
+    {
+        private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable; tasks are never serialized
+
+        private final AtomicIntegerArray dist;
+        private final int[] frontier;
+        private final int lo, hi;
+        private final boolean light;
+
+        RelaxTask(AtomicIntegerArray dist, int[] frontier, int lo, int hi, boolean light) {
+            this.dist = dist;
+            this.frontier = frontier;
+            this.lo = lo;
+            this.hi = hi;
+            this.light = light;
+        }
+
+        @Override
+        protected IntList compute() {
+            if (hi - lo > SPLIT_THRESHOLD) {
+                int mid = (lo + hi) >>> 1;
+                RelaxTask left = new RelaxTask(dist, frontier, lo, mid, light);
+                left.fork();
+                IntList right = new RelaxTask(dist, frontier, mid, hi, light).compute();
+                IntList result = left.join();
+                result.addAll(right);
+                return result;
+            }
+            IntList improved = new IntList();
+            for (int k = lo; k < hi; k++) {
+                int u = frontier[k];
+                int du = dist.get(u);
+                for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                    int c = g.arcCost(a, isTimeCost);
+                    if ((c <= delta) != light) {
+                        continue;
+                    }
+                    int v = g.arcHead(a);
+                    int nd = du + c;
+                    // Compare-and-set minimum: retry only while our candidate is still better.
+                    int cur = dist.get(v);
+                    while (nd < cur) {
+                        if (dist.compareAndSet(v, cur, nd)) {
+                            improved.add(v);
+                            break;
+                        }
+                        cur = dist.get(v);
+                    }
+                }
+            }
+            return improved;
+        }
+    }
+
+    /**
+     * Minimal growable int array used for frontiers and buckets.
+     */
+    static final class IntList
+    {
+        int[] data = new int[16];
+        int size = 0;
+
+        void add(int v) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = v;
+        }
+
+        void addAll(IntList other) {
+            if (size + other.size > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + other.size));
+            }
+            System.arraycopy(other.data, 0, data, size, other.size);
+            size += other.size;
+        }
+    }
+
+    /**
+     * Checks a delta-stepping result against sequential Dijkstra.
+     * @return True if both produce identical costs for every vertex.
+     */
+    public static boolean verify(RouteGraph g, boolean isTimeCost, int src, int[] parallel)
+    {
+        return Arrays.equals(CompactDijkstra.allCosts(g, src, isTimeCost), parallel);
+    }
+
+    /**
+     * Benchmark: compares sequential Dijkstra with delta-stepping on a synthetic network.
+     * Usage: java DeltaStepping [vertices=200000] [avgDegree=6] [delta=auto] [threads=all cores]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        CompactGraph g = SyntheticNetwork.generate(n, degree, 800, 42);
+        int delta = args.length > 2 ? Integer.parseInt(args[2]) : suggestDelta(g, false);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        DeltaStepping ds = new DeltaStepping(g, false, delta, pool);
+
+        System.out.println("Vertices: " + n + ", arcs: " + g.numArcs() + ", delta: " + delta + ", threads: " + threads);
+        for (int round = 0; round < 5; round++) {
+            int src = round * (n / 5);
+            long t0 = System.nanoTime();
+            int[] seq = CompactDijkstra.allCosts(g, src, false);
+            long t1 = System.nanoTime();
+            int[] par = ds.run(src);
+            long t2 = System.nanoTime();
+            System.out.printf("source %d: dijkstra %.1f ms, delta-stepping %.1f ms, speedup %.2fx, results %s%n",
+                    src, (t1 - t0) / 1e6, (t2 - t1) / 1e6, (double) (t1 - t0) / (t2 - t1),
+                    Arrays.equals(seq, par) ? "identical" : "MISMATCH");
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,412 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Spatial index over airport locations for nearest-k and within-radius queries.
+ *
+ * Each airport is stored as a point on the unit sphere (x, y, z) rather than as raw lat/lng, so there are
+ * no special cases at the date line or the poles: the straight-line (chord) distance between two unit
+ * vectors grows monotonically with the great-circle distance, and it can be pruned per axis. The points
+ * are arranged as an implicit 3-d tree: the median of each range, split on axis depth % 3, sits in the
+ * middle slot, so the tree needs no node objects or pointers, just four parallel arrays in tree order.
+ * Queries descend towards the query point first and only visit a far subtree if the splitting plane is
+ * closer than the current k-th best (or the radius), which is O(log n) for typical queries instead of the
+ * brute-force scan over every airport.
+ *
+ * Airports without a known location (NaN) are left out. {@link #current()} indexes the current
+ * RouteGraph snapshot and is rebuilt when the graph version changes; ids are that snapshot's ids.
+ */
+public class GeoIndex
+{
+    static final double EARTH_RADIUS_KM = 6371.0;
+
+    final RouteGraph graph;        // The snapshot whose ids this index returns (null if built from raw arrays)
+    private final int size;
+    private final int[] ids;       // tree slot -> vertex id
+    private final double[] x, y, z; // tree slot -> unit vector
+    private final int[] slotOf;    // vertex id -> tree slot (-1 if the vertex has no location)
+
+    private static volatile GeoIndex cached;
+
+    /**
+     * Builds an index over points given by id.
+     * @param lat   Latitude in degrees per id (NaN to leave the id out).
+     * @param lng   Longitude in degrees per id.
+     * @param graph The graph the ids belong to, or null.
+     */
+    GeoIndex(double[] lat, double[] lng, RouteGraph graph)
+    {
+        this.graph = graph;
+        int n = lat == null ? 0 : lat.length;
+        slotOf = new int[n];
+        Arrays.fill(slotOf, -1);
+        int count = 0;
+        for (int v = 0; v < n; v++) {
+            if (!Double.isNaN(lat[v]) && !Double.isNaN(lng[v])) {
+                count++;
+            }
+        }
+        size = count;
+        ids = new int[count];
+        x = new double[count];
+        y = new double[count];
+        z = new double[count];
+        int slot = 0;
+        for (int v = 0; v < n; v++) {
+            if (!Double.isNaN(lat[v]) && !Double.isNaN(lng[v])) {
+                double phi = Math.toRadians(lat[v]);
+                double lambda = Math.toRadians(lng[v]);
+                ids[slot] = v;
+                x[slot] = Math.cos(phi) * Math.cos(lambda);
+                y[slot] = Math.cos(phi) * Math.sin(lambda);
+                z[slot] = Math.sin(phi);
+                slot++;
+            }
+        }
+        build(0, size, 0);
+        for (int s = 0; s < size; s++) {
+            slotOf[ids[s]] = s;
+        }
+    }
+
+    /**
+     * Returns the index for the current graph snapshot, rebuilding it when the graph changed.
+     */
+    public static GeoIndex current()
+    {
+        RouteGraph g = RouteGraph.current();
+        GeoIndex idx = cached;
+        if (idx == null || idx.graph != g) {
+            synchronized (GeoIndex.class) {
+                idx = cached;
+                if (idx == null || idx.graph != g) {
+                    idx = forGraph(g);
+                    cached = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    // Indexes the locations a graph stores per vertex.
+    private static GeoIndex forGraph(RouteGraph g)
+    {
+        double[] lat = new double[g.numVertices()];
+        double[] lng = new double[lat.length];
+        for (int v = 0; v < lat.length; v++) {
+            lat[v] = g.lat(v);
+            lng[v] = g.lng(v);
+        }
+        return new GeoIndex(lat, lng, g);
+    }
+
+    // --- Construction ---
+
+    // Places the median of [lo, hi) on the axis for this depth in the middle slot, then recurses.
+    private void build(int lo, int hi, int depth)
+    {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, axis(depth));
+            build(lo, mid, depth + 1);
+            lo = mid + 1; // Tail call on the right half
+            depth++;
+        }
+    }
+
+    // Quickselect: rearranges [lo, hi] so that slot k holds the k-th smallest coordinate on the axis.
+    private void select(int lo, int hi, int k, double[] axis)
+    {
+        while (lo < hi) {
+            double pivot = median3(axis[lo], axis[(lo + hi) >>> 1], axis[hi]);
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (axis[i] < pivot) {
+                    i++;
+                }
+                while (axis[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static double median3(double a, double b, double c)
+    {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    private void swap(int i, int j)
+    {
+        int id = ids[i]; ids[i] = ids[j]; ids[j] = id;
+        double t = x[i]; x[i] = x[j]; x[j] = t;
+        t = y[i]; y[i] = y[j]; y[j] = t;
+        t = z[i]; z[i] = z[j]; z[j] = t;
+    }
+
+    private double[] axis(int depth)
+    {
+        switch (depth % 3) {
+            case 0:
+                return x;
+            case 1:
+                return y;
+            default:
+                return z;
+        }
+    }
+
+    // --- Queries ---
+
+    /**
+     * Returns the k airports closest to a point, nearest first.
+     * @param lat Latitude in degrees.
+     * @param lng Longitude in degrees.
+     * @param k   Number of airports wanted.
+     * @return Vertex ids (fewer than k if the index is smaller).
+     * @throws IllegalArgumentException If the point is not a valid latitude and longitude.
+     */
+    public int[] nearest(double lat, double lng, int k)
+    {
+        checkPoint(lat, lng);
+        k = Math.min(k, size);
+        if (k <= 0) {
+            return new int[0];
+        }
+        double[] q = unit(lat, lng);
+        // The k best so far, sorted by chord^2 ascending; insertion is cheap for the small k used in practice.
+        int[] bestSlot = new int[k];
+        double[] bestD2 = new double[k];
+        Arrays.fill(bestD2, Double.POSITIVE_INFINITY);
+        nearest(0, size, 0, q, bestSlot, bestD2);
+        int[] result = new int[k];
+        for (int i = 0; i < k; i++) {
+            result[i] = ids[bestSlot[i]];
+        }
+        return result;
+    }
+
+    // A NaN query compares false against every plane and distance, so it would return arbitrary airports.
+    private static void checkPoint(double lat, double lng)
+    {
+        if (!(Math.abs(lat) <= 90) || !(Math.abs(lng) <= 180)) {
+            throw new IllegalArgumentException("Invalid coordinates: " + lat + ", " + lng);
+        }
+    }
+
+    private void nearest(int lo, int hi, int depth, double[] q, int[] bestSlot, double[] bestD2)
+    {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double d2 = dist2(mid, q);
+            int k = bestD2.length;
+            if (d2 < bestD2[k - 1]) {
+                int i = k - 1;
+                while (i > 0 && bestD2[i - 1] > d2) {
+                    bestD2[i] = bestD2[i - 1];
+                    bestSlot[i] = bestSlot[i - 1];
+                    i--;
+                }
+                bestD2[i] = d2;
+                bestSlot[i] = mid;
+            }
+            double diff = q[depth % 3] - axis(depth)[mid];
+            // Search the side containing the query first; the other side only if the plane is close enough.
+            if (diff < 0) {
+                nearest(lo, mid, depth + 1, q, bestSlot, bestD2);
+                if (diff * diff >= bestD2[k - 1]) {
+                    return;
+                }
+                lo = mid + 1;
+            } else {
+                nearest(mid + 1, hi, depth + 1, q, bestSlot, bestD2);
+                if (diff * diff >= bestD2[k - 1]) {
+                    return;
+                }
+                hi = mid;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Returns every airport within a great-circle radius of a point, nearest first.
+     * @param lat      Latitude in degrees.
+     * @param lng      Longitude in degrees.
+     * @param radiusKm The radius in kilometres.
+     * @return Vertex ids; none if the radius is negative or NaN.
+     * @throws IllegalArgumentException If the point is not a valid latitude and longitude.
+     */
+    public int[] withinRadius(double lat, double lng, double radiusKm)
+    {
+        checkPoint(lat, lng);
+        if (!(radiusKm >= 0)) {
+            return new int[0]; // sin() would turn a negative radius into a positive chord
+        }
+        double[] q = unit(lat, lng);
+        // Chord length of the radius arc; compare squared chords.
+        double chord = 2 * Math.sin(Math.min(radiusKm / EARTH_RADIUS_KM, Math.PI) / 2);
+        Hits hits = new Hits();
+        within(0, size, 0, q, chord * chord, hits);
+        // Hits pack (float bits of chord^2, slot); non-negative float bits sort like the floats.
+        Arrays.sort(hits.data, 0, hits.size);
+        int[] result = new int[hits.size];
+        for (int i = 0; i < hits.size; i++) {
+            result[i] = ids[(int) hits.data[i]];
+        }
+        return result;
+    }
+
+    private void within(int lo, int hi, int depth, double[] q, double r2, Hits hits)
+    {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            double d2 = dist2(mid, q);
+            if (d2 <= r2) {
+                hits.add(((long) Float.floatToIntBits((float) d2) << 32) | mid);
+            }
+            double diff = q[depth % 3] - axis(depth)[mid];
+            if (diff < 0) {
+                within(lo, mid, depth + 1, q, r2, hits);
+                if (diff * diff > r2) {
+                    return;
+                }
+                lo = mid + 1;
+            } else {
+                within(mid + 1, hi, depth + 1, q, r2, hits);
+                if (diff * diff > r2) {
+                    return;
+                }
+                hi = mid;
+            }
+            depth++;
+        }
+    }
+
+    /**
+     * Growable long array for radius hits.
+     */
+    private static final class Hits
+    {
+        long[] data = new long[16];
+        int size = 0;
+
+        void add(long v) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = v;
+        }
+    }
+
+    /**
+     * Great-circle distance from an indexed airport to a point.
+     * @return Kilometres, or NaN if the airport has no location.
+     */
+    public double distanceKm(int v, double lat, double lng)
+    {
+        int slot = v < slotOf.length ? slotOf[v] : -1;
+        if (slot == -1) {
+            return Double.NaN;
+        }
+        double chord = Math.sqrt(dist2(slot, unit(lat, lng)));
+        return 2 * Math.asin(Math.min(1, chord / 2)) * EARTH_RADIUS_KM;
+    }
+
+    /**
+     * Haversine great-circle distance, the same formula the front end uses.
+     * @return Kilometres between the two points.
+     */
+    public static double haversineKm(double lat1, double lng1, double lat2, double lng2)
+    {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * @return The number of airports with a location.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Benchmark: k-d tree vs brute-force scan for nearest-airport and radius lookups on random points.
+     * Usage: java GeoIndex [airports=100000] [queries=100000]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        Random rnd = new Random(42);
+        double[] lat = new double[n];
+        double[] lng = new double[n];
+        for (int v = 0; v < n; v++) {
+            lat[v] = Math.toDegrees(Math.asin(2 * rnd.nextDouble() - 1)); // Uniform over the sphere
+            lng[v] = rnd.nextDouble() * 360 - 180;
+        }
+        long t0 = System.nanoTime();
+        GeoIndex idx = new GeoIndex(lat, lng, null);
+        long buildNanos = System.nanoTime() - t0;
+
+        double[] qLat = new double[queries];
+        double[] qLng = new double[queries];
+        for (int i = 0; i < queries; i++) {
+            qLat[i] = Math.toDegrees(Math.asin(2 * rnd.nextDouble() - 1));
+            qLng[i] = rnd.nextDouble() * 360 - 180;
+        }
+        // Time the tree on every query; the brute-force scan only on a sample, to check answers and compare speed.
+        int checked = Math.min(queries, 1000);
+        long treeNanos = 0, scanNanos = 0, radiusHits = 0;
+        int[] treeAnswer = new int[queries];
+        for (int i = 0; i < queries; i++) {
+            long a = System.nanoTime();
+            treeAnswer[i] = idx.nearest(qLat[i], qLng[i], 1)[0];
+            treeNanos += System.nanoTime() - a;
+            radiusHits += idx.withinRadius(qLat[i], qLng[i], 150).length;
+        }
+        int mismatches = 0;
+        for (int i = 0; i < checked; i++) {
+            long a = System.nanoTime();
+            double best = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < n; v++) {
+                best = Math.min(best, haversineKm(qLat[i], qLng[i], lat[v], lng[v]));
+            }
+            scanNanos += System.nanoTime() - a;
+            if (Math.abs(idx.distanceKm(treeAnswer[i], qLat[i], qLng[i]) - best) > 1e-6) {
+                mismatches++;
+            }
+        }
+        System.out.printf("Airports: %d, build %.1f ms%n", n, buildNanos / 1e6);
+        System.out.printf("Nearest airport: k-d tree %.2f us, brute force %.2f us per query, %d mismatches in %d checked%n",
+                treeNanos / 1e3 / queries, scanNanos / 1e3 / checked, mismatches, checked);
+        System.out.printf("Within 150 km: %.2f airports per query on average%n", (double) radiusHits / queries);
+    }
+
+    private double dist2(int slot, double[] q)
+    {
+        double dx = x[slot] - q[0], dy = y[slot] - q[1], dz = z[slot] - q[2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static double[] unit(double lat, double lng)
+    {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lng);
+        return new double[] {Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+}
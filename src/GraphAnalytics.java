@@ -0,0 +1,377 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Network analytics for capacity planning: betweenness centrality (which airports carry the most
+ * cheapest routes), articulation airports and bridge routes (whose loss disconnects part of the
+ * network), and the degree distribution.
+ *
+ * Betweenness uses Brandes' algorithm with one Dijkstra per source. Sources are split into ForkJoin
+ * tasks, each with its own primitive workspace and partial score array, and the partial arrays are
+ * summed on join. For large networks a random sample of sources gives an unbiased estimate, scaled by
+ * n / samples. Cuts are computed on the undirected view of the network (an arc in either direction
+ * connects two airports) with an iterative Tarjan lowlink search, so deep networks cannot overflow the
+ * call stack.
+ */
+public class GraphAnalytics
+{
+    static final int INF = Integer.MAX_VALUE;
+
+    /**
+     * Articulation airports and bridge routes of a network.
+     */
+    public static final class Cuts {
+        public final int[] articulation;  // vertex ids, ascending
+        public final int[] bridges;       // bridge i joins bridges[2i] and bridges[2i + 1]
+        public final int components;      // connected components of the undirected view
+
+        Cuts(int[] articulation, int[] bridges, int components) {
+            this.articulation = articulation;
+            this.bridges = bridges;
+            this.components = components;
+        }
+
+        public int bridgeCount() {
+            return bridges.length / 2;
+        }
+    }
+
+    /**
+     * Computes betweenness centrality: for every airport, the number of cheapest routes between other
+     * airports that pass through it (ties split evenly). On a symmetric network each unordered pair is
+     * counted once.
+     * @param g          The graph (arc costs must be positive).
+     * @param isTimeCost True for the time metric, false for distance.
+     * @param samples    Number of random sources to use, or 0 (or >= n) for the exact result.
+     * @param seed       Random seed for source sampling.
+     * @param pool       The pool to run the per-source searches on.
+     * @return The score of every vertex.
+     */
+    public static double[] betweenness(RouteGraph g, boolean isTimeCost, int samples, long seed, ForkJoinPool pool)
+    {
+        int n = g.numVertices();
+        int[] sources;
+        double scale;
+        if (samples <= 0 || samples >= n) {
+            sources = new int[n];
+            for (int i = 0; i < n; i++) {
+                sources[i] = i;
+            }
+            scale = 1;
+        } else {
+            // Partial Fisher-Yates shuffle: the first samples entries are a uniform sample without repeats
+            int[] perm = new int[n];
+            for (int i = 0; i < n; i++) {
+                perm[i] = i;
+            }
+            Random rnd = new Random(seed);
+            for (int i = 0; i < samples; i++) {
+                int j = i + rnd.nextInt(n - i);
+                int tmp = perm[i];
+                perm[i] = perm[j];
+                perm[j] = tmp;
+            }
+            sources = Arrays.copyOf(perm, samples);
+            scale = (double) n / samples;
+        }
+        if (g.isSymmetric()) {
+            scale /= 2; // Each unordered pair was counted from both ends
+        }
+        int leaf = Math.max(1, sources.length / (pool.getParallelism() * 8));
+        double[] score = n == 0 ? new double[0] : pool.invoke(new BrandesTask(g, isTimeCost, sources, 0, sources.length, leaf));
+        for (int v = 0; v < n; v++) {
+            score[v] *= scale;
+        }
+        return score;
+    }
+
+    /**
+     * Finds articulation airports and bridge routes in the undirected view of the network.
+     * @param g The graph.
+     * @return The cuts and the number of connected components.
+     */
+    public static Cuts cuts(RouteGraph g)
+    {
+        int n = g.numVertices();
+        int[] start = new int[n + 1];
+        int[] adj = undirectedAdjacency(g, start);
+
+        int[] disc = new int[n];       // discovery time, 0 = unvisited
+        int[] low = new int[n];
+        int[] parent = new int[n];
+        int[] next = new int[n];       // next adjacency slot to scan
+        int[] stack = new int[n];
+        boolean[] isCut = new boolean[n];
+        DeltaStepping.IntList bridges = new DeltaStepping.IntList();
+        int timer = 1;
+        int components = 0;
+        for (int root = 0; root < n; root++) {
+            if (disc[root] != 0) {
+                continue;
+            }
+            components++;
+            int top = 0;
+            stack[top++] = root;
+            parent[root] = -1;
+            disc[root] = low[root] = timer++;
+            next[root] = start[root];
+            int rootChildren = 0;
+            while (top > 0) {
+                int u = stack[top - 1];
+                if (next[u] < start[u + 1]) {
+                    int v = adj[next[u]++];
+                    if (disc[v] == 0) {
+                        parent[v] = u;
+                        disc[v] = low[v] = timer++;
+                        next[v] = start[v];
+                        stack[top++] = v;
+                        if (u == root) {
+                            rootChildren++;
+                        }
+                    } else if (v != parent[u]) {
+                        low[u] = Math.min(low[u], disc[v]);
+                    }
+                    continue;
+                }
+                top--;
+                int p = parent[u];
+                if (p == -1) {
+                    continue;
+                }
+                low[p] = Math.min(low[p], low[u]);
+                if (low[u] > disc[p]) {
+                    bridges.add(Math.min(p, u));
+                    bridges.add(Math.max(p, u));
+                }
+                if (p != root && low[u] >= disc[p]) {
+                    isCut[p] = true;
+                }
+            }
+            if (rootChildren > 1) {
+                isCut[root] = true;
+            }
+        }
+        int count = 0;
+        for (boolean c : isCut) {
+            if (c) {
+                count++;
+            }
+        }
+        int[] articulation = new int[count];
+        for (int v = 0, i = 0; v < n; v++) {
+            if (isCut[v]) {
+                articulation[i++] = v;
+            }
+        }
+        return new Cuts(articulation, Arrays.copyOf(bridges.data, bridges.size), components);
+    }
+
+    /**
+     * Counts airports by degree.
+     * @param g        The graph.
+     * @param incoming True to count arriving routes, false for departing routes.
+     * @return hist[d] = number of airports with degree d (length max degree + 1).
+     */
+    public static int[] degreeHistogram(RouteGraph g, boolean incoming)
+    {
+        RouteGraph view = incoming ? g.reverse() : g;
+        int n = view.numVertices();
+        int max = 0;
+        for (int v = 0; v < n; v++) {
+            max = Math.max(max, view.arcEnd(v) - view.arcBegin(v));
+        }
+        int[] hist = new int[max + 1];
+        for (int v = 0; v < n; v++) {
+            hist[view.arcEnd(v) - view.arcBegin(v)]++;
+        }
+        return hist;
+    }
+
+    /**
+     * @return The ids of the k highest-scoring vertices, best first.
+     */
+    public static int[] top(double[] score, int k)
+    {
+        Integer[] ids = new Integer[score.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, (a, b) -> Double.compare(score[b], score[a]));
+        int[] best = new int[Math.min(k, ids.length)];
+        for (int i = 0; i < best.length; i++) {
+            best[i] = ids[i];
+        }
+        return best;
+    }
+
+    // Simple undirected adjacency in CSR form: neighbours of u are adj[start[u] .. start[u + 1]),
+    // sorted, without duplicates or self-loops. Also used by GraphPartitioner.
+    static int[] undirectedAdjacency(RouteGraph g, int[] start)
+    {
+        int n = g.numVertices();
+        RouteGraph rev = g.reverse();
+        boolean symmetric = rev == g;
+        int[] adj = new int[symmetric ? g.numArcs() : 2 * g.numArcs()];
+        int size = 0;
+        for (int u = 0; u < n; u++) {
+            int from = size;
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                adj[size++] = g.arcHead(a);
+            }
+            if (!symmetric) {
+                for (int a = rev.arcBegin(u), end = rev.arcEnd(u); a < end; a++) {
+                    adj[size++] = rev.arcHead(a);
+                }
+            }
+            Arrays.sort(adj, from, size);
+            int kept = from;
+            for (int i = from; i < size; i++) {
+                int v = adj[i];
+                if (v != u && (kept == from || adj[kept - 1] != v)) {
+                    adj[kept++] = v;
+                }
+            }
+            size = kept;
+            start[u + 1] = size;
+        }
+        return adj;
+    }
+
+    /**
+     * Brandes accumulation for a range of sources; returns the partial scores of the range.
+     */
+    private static final class BrandesTask extends RecursiveTask<double[]>
+    {
+        private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable; tasks are never serialized
+
+        private final transient RouteGraph g;
+        private final boolean isTimeCost;
+        private final int[] sources;
+        private final int lo, hi, leaf;
+
+        BrandesTask(RouteGraph g, boolean isTimeCost, int[] sources, int lo, int hi, int leaf) {
+            this.g = g;
+            this.isTimeCost = isTimeCost;
+            this.sources = sources;
+            this.lo = lo;
+            this.hi = hi;
+            this.leaf = leaf;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (hi - lo > leaf) {
+                int mid = (lo + hi) >>> 1;
+                BrandesTask left = new BrandesTask(g, isTimeCost, sources, lo, mid, leaf);
+                left.fork();
+                double[] right = new BrandesTask(g, isTimeCost, sources, mid, hi, leaf).compute();
+                double[] result = left.join();
+                for (int v = 0; v < result.length; v++) {
+                    result[v] += right[v];
+                }
+                return result;
+            }
+            int n = g.numVertices();
+            double[] score = new double[n];
+            int[] dist = new int[n];
+            Arrays.fill(dist, INF);
+            double[] sigma = new double[n];  // number of cheapest routes from the source
+            double[] delta = new double[n];  // dependency of the source on each vertex
+            int[] order = new int[n];        // vertices in settle order
+            IndexedMinHeap pq = new IndexedMinHeap(n);
+            for (int k = lo; k < hi; k++) {
+                int s = sources[k];
+                int settled = 0;
+                dist[s] = 0;
+                sigma[s] = 1;
+                pq.pushOrDecrease(s, 0);
+                while (!pq.isEmpty()) {
+                    int u = pq.pop();
+                    order[settled++] = u;
+                    delta[u] = 0;
+                    int du = dist[u];
+                    for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                        int v = g.arcHead(a);
+                        int nd = du + g.arcCost(a, isTimeCost);
+                        if (nd < dist[v]) {
+                            dist[v] = nd;
+                            sigma[v] = sigma[u];
+                            pq.pushOrDecrease(v, nd);
+                        } else if (nd == dist[v]) {
+                            sigma[v] += sigma[u];
+                        }
+                    }
+                }
+                // Reverse settle order: every successor on a cheapest route is finished before its predecessor
+                for (int i = settled - 1; i >= 0; i--) {
+                    int w = order[i];
+                    int dw = dist[w];
+                    double acc = 0;
+                    for (int a = g.arcBegin(w), end = g.arcEnd(w); a < end; a++) {
+                        int x = g.arcHead(a);
+                        if (dw + g.arcCost(a, isTimeCost) == dist[x]) {
+                            acc += (1 + delta[x]) / sigma[x];
+                        }
+                    }
+                    delta[w] = sigma[w] * acc;
+                    if (w != s) {
+                        score[w] += delta[w];
+                    }
+                }
+                for (int i = 0; i < settled; i++) {
+                    dist[order[i]] = INF;
+                }
+            }
+            return score;
+        }
+    }
+
+    /**
+     * Without arguments prints a report for the built-in airport map; otherwise benchmarks a synthetic
+     * network. Usage: java GraphAnalytics [vertices] [samples=0 (exact)] [threads=all cores]
+     */
+    public static void main(String[] args)
+    {
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        if (args.length == 0) {
+            Graph_M.Create_Metro_Map(new Graph_M());
+            RouteGraph g = RouteGraph.current();
+            double[] score = betweenness(g, false, 0, 0, pool);
+            System.out.println("Busiest transfer airports (betweenness, distance metric):");
+            for (int v : top(score, 5)) {
+                System.out.printf("  %-60s %8.1f%n", g.name(v), score[v]);
+            }
+            Cuts cuts = cuts(g);
+            System.out.println("Articulation airports: " + cuts.articulation.length);
+            for (int v : cuts.articulation) {
+                System.out.println("  " + g.name(v));
+            }
+            System.out.println("Bridge routes: " + cuts.bridgeCount());
+            for (int i = 0; i < cuts.bridgeCount(); i++) {
+                System.out.println("  " + g.name(cuts.bridges[2 * i]) + " <-> " + g.name(cuts.bridges[2 * i + 1]));
+            }
+            System.out.println("Departing-route degree histogram: " + Arrays.toString(degreeHistogram(g, false)));
+        } else {
+            int n = Integer.parseInt(args[0]);
+            int samples = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+            CompactGraph g = SyntheticNetwork.generate(n, 6, 800, 42);
+            System.out.println("Vertices: " + n + ", arcs: " + g.numArcs() + ", threads: " + threads
+                    + ", sources: " + (samples <= 0 ? "all" : String.valueOf(samples)));
+            long t0 = System.nanoTime();
+            double[] score = betweenness(g, true, samples, 1, pool);
+            long t1 = System.nanoTime();
+            Cuts cuts = cuts(g);
+            long t2 = System.nanoTime();
+            int[] hist = degreeHistogram(g, false);
+            long t3 = System.nanoTime();
+            System.out.printf("betweenness %.1f ms (top airport %d, score %.0f)%n", (t1 - t0) / 1e6, top(score, 1)[0], score[top(score, 1)[0]]);
+            System.out.printf("cuts %.1f ms (%d articulation airports, %d bridges, %d components)%n",
+                    (t2 - t1) / 1e6, cuts.articulation.length, cuts.bridgeCount(), cuts.components);
+            System.out.printf("degree histogram %.1f ms (max degree %d)%n", (t3 - t2) / 1e6, hist.length - 1);
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,318 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Transactional builder for bulk changes to the Graph_M route graph.
+ *
+ * Changes are staged in memory and applied by {@link #commit()} in one step: the vertex map is copied
+ * (sharing every Vertex the batch does not touch), the staged changes are applied to the copy, and the
+ * copy is published by swapping Graph_M.vtces with a single version bump. Derived indexes therefore
+ * see one new version per batch instead of one per edge, and the CompactGraph snapshot for that
+ * version is built once during the commit. When a MutationLog is attached, the changes that took
+ * effect are journaled as one batch, durably and before they are published, so recovery replays all
+ * of them or none. The commit holds the Graph_M.class lock that every Graph_M mutator takes, so direct
+ * changes and batches are applied one at a time.
+ *
+ * Each staged change behaves exactly like the matching Graph_M method, applied in staging order.
+ * A builder is single-use and not thread-safe.
+ */
+public class GraphBatch
+{
+    /**
+     * One staged change, also the unit handed to MutationLog.appendBatch.
+     */
+    static final class Op
+    {
+        final byte op;      // A MutationLog op code
+        final String a;
+        final String b;
+        final int weight;
+        final String carriers; // Comma-separated codes, SET_CARRIERS only
+
+        Op(byte op, String a, String b, int weight) {
+            this(op, a, b, weight, null);
+        }
+
+        Op(byte op, String a, String b, int weight, String carriers) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+            this.weight = weight;
+            this.carriers = carriers;
+        }
+    }
+
+    // Internal ops for setWeight and setDirectedWeight; journaled as REMOVE_ARC + ADD_ARC (+ SET_CARRIERS)
+    // per direction.
+    private static final byte SET_WEIGHT = -1;
+    private static final byte SET_ARC_WEIGHT = -2;
+
+    private final ArrayList<Op> ops = new ArrayList<>();
+    private boolean committed = false;
+
+    // Working state during commit
+    private HashMap<String, Graph_M.Vertex> next;
+    private HashSet<String> copied;
+
+    /**
+     * Stages a new airport. Like Graph_M.addVertex, an existing airport of the same name is replaced.
+     */
+    public GraphBatch addVertex(String vname)
+    {
+        return stage(MutationLog.ADD_VERTEX, vname, null, 0);
+    }
+
+    /**
+     * Stages the removal of an airport and all its routes.
+     */
+    public GraphBatch removeVertex(String vname)
+    {
+        return stage(MutationLog.REMOVE_VERTEX, vname, null, 0);
+    }
+
+    /**
+     * Stages a new route; ignored at commit time if an endpoint is missing or the route exists.
+     */
+    public GraphBatch addEdge(String vname1, String vname2, int value)
+    {
+        return stage(MutationLog.ADD_EDGE, vname1, vname2, value);
+    }
+
+    /**
+     * Stages a one-way route from vname1 to vname2; ignored at commit time if that direction exists.
+     */
+    public GraphBatch addDirectedEdge(String vname1, String vname2, int value)
+    {
+        return stage(MutationLog.ADD_ARC, vname1, vname2, value);
+    }
+
+    /**
+     * Stages the removal of the route in both directions.
+     */
+    public GraphBatch removeEdge(String vname1, String vname2)
+    {
+        return stage(MutationLog.REMOVE_EDGE, vname1, vname2, 0);
+    }
+
+    /**
+     * Stages the removal of the direction from vname1 to vname2 only.
+     */
+    public GraphBatch removeDirectedEdge(String vname1, String vname2)
+    {
+        return stage(MutationLog.REMOVE_ARC, vname1, vname2, 0);
+    }
+
+    /**
+     * Stages a weight change for the direction vname1 to vname2 and, if the route is two-way, for the
+     * way back as well; ignored at commit time if there is no route from vname1 to vname2.
+     */
+    public GraphBatch setWeight(String vname1, String vname2, int value)
+    {
+        return stage(SET_WEIGHT, vname1, vname2, value);
+    }
+
+    /**
+     * Stages a weight change for the direction vname1 to vname2 only; the way back, if any, keeps its
+     * weight. Ignored at commit time if there is no route from vname1 to vname2.
+     */
+    public GraphBatch setDirectedWeight(String vname1, String vname2, int value)
+    {
+        return stage(SET_ARC_WEIGHT, vname1, vname2, value);
+    }
+
+    /**
+     * @return The number of staged changes.
+     */
+    public int size()
+    {
+        return ops.size();
+    }
+
+    private GraphBatch stage(byte op, String a, String b, int weight)
+    {
+        if (committed) {
+            throw new IllegalStateException("Batch already committed");
+        }
+        ops.add(new Op(op, a, b, weight));
+        return this;
+    }
+
+    /**
+     * Applies every staged change and publishes the result atomically.
+     * @return The graph version the batch produced (unchanged if nothing took effect).
+     */
+    public int commit()
+    {
+        if (committed) {
+            throw new IllegalStateException("Batch already committed");
+        }
+        committed = true;
+        synchronized (Graph_M.class) {
+            HashMap<String, Graph_M.Vertex> published = new HashMap<>(Graph_M.vtces);
+            next = published;
+            copied = new HashSet<>();
+            ArrayList<Op> applied = new ArrayList<>(ops.size());
+            for (Op op : ops) {
+                apply(op, applied);
+            }
+            next = null;
+            copied = null;
+            if (applied.isEmpty()) {
+                return Graph_M.version;
+            }
+
+            // Write-ahead: the batch is on disk before anyone can see it. If the log has failed, this
+            // throws and the working copy is dropped unpublished.
+            if (Graph_M.journal != null) {
+                MutationLog.await(Graph_M.journal.appendBatch(applied));
+            }
+
+            // Build the snapshot before publishing, so the new version never runs without one.
+            int version = Graph_M.version + 1;
+            CompactGraph compact = CompactGraph.snapshot(published, version);
+            OffHeapGraph offHeap = OffHeapGraph.SELECTED ? OffHeapGraph.copyOf(compact, version) : null;
+            Graph_M.vtces = published;
+            Graph_M.version = version;
+            if (offHeap != null) {
+                OffHeapGraph.install(offHeap);
+            } else {
+                CompactGraph.install(compact);
+            }
+            if (Graph_M.journal != null) {
+                Graph_M.journal.snapshotIfDue();
+            }
+            return version;
+        }
+    }
+
+    // Applies one change to the working copy; records it in applied if it took effect.
+    private void apply(Op op, ArrayList<Op> applied)
+    {
+        switch (op.op) {
+            case MutationLog.ADD_VERTEX:
+                next.put(op.a, new Graph_M.Vertex());
+                copied.add(op.a); // A fresh vertex is private to this batch already
+                applied.add(op);
+                break;
+            case MutationLog.REMOVE_VERTEX: {
+                Graph_M.Vertex vtx = next.get(op.a);
+                if (vtx == null) {
+                    return;
+                }
+                // Incoming one-way routes are not in vtx.nbrs, so every vertex is checked (as in Graph_M).
+                for (String other : new ArrayList<>(next.keySet())) {
+                    if (next.get(other).nbrs.containsKey(op.a)) {
+                        writable(other).nbrs.remove(op.a);
+                        writable(other).carriers.remove(op.a);
+                    }
+                }
+                next.remove(op.a);
+                copied.remove(op.a);
+                applied.add(op);
+                break;
+            }
+            case MutationLog.ADD_EDGE: {
+                Graph_M.Vertex vtx1 = next.get(op.a);
+                Graph_M.Vertex vtx2 = next.get(op.b);
+                boolean forward = vtx1 != null && vtx1.nbrs.containsKey(op.b);
+                boolean backward = vtx2 != null && vtx2.nbrs.containsKey(op.a);
+                if (vtx1 == null || vtx2 == null || (forward && backward)) {
+                    return;
+                }
+                if (forward || backward) {
+                    // Complete a one-way route with the missing direction only, as Graph_M.addEdge does.
+                    String from = forward ? op.b : op.a;
+                    String to = forward ? op.a : op.b;
+                    writable(from).nbrs.put(to, op.weight);
+                    applied.add(new Op(MutationLog.ADD_ARC, from, to, op.weight));
+                    break;
+                }
+                writable(op.a).nbrs.put(op.b, op.weight);
+                writable(op.b).nbrs.put(op.a, op.weight);
+                applied.add(op);
+                break;
+            }
+            case MutationLog.REMOVE_EDGE: {
+                Graph_M.Vertex vtx1 = next.get(op.a);
+                Graph_M.Vertex vtx2 = next.get(op.b);
+                if (vtx1 == null || vtx2 == null || (!vtx1.nbrs.containsKey(op.b) && !vtx2.nbrs.containsKey(op.a))) {
+                    return;
+                }
+                writable(op.a).nbrs.remove(op.b);
+                writable(op.b).nbrs.remove(op.a);
+                writable(op.a).carriers.remove(op.b);
+                writable(op.b).carriers.remove(op.a);
+                applied.add(op);
+                break;
+            }
+            case MutationLog.ADD_ARC: {
+                Graph_M.Vertex vtx1 = next.get(op.a);
+                if (vtx1 == null || !next.containsKey(op.b) || vtx1.nbrs.containsKey(op.b)) {
+                    return;
+                }
+                writable(op.a).nbrs.put(op.b, op.weight);
+                applied.add(op);
+                break;
+            }
+            case MutationLog.REMOVE_ARC: {
+                Graph_M.Vertex vtx1 = next.get(op.a);
+                if (vtx1 == null || !vtx1.nbrs.containsKey(op.b)) {
+                    return;
+                }
+                writable(op.a).nbrs.remove(op.b);
+                writable(op.a).carriers.remove(op.b);
+                applied.add(op);
+                break;
+            }
+            case SET_WEIGHT:
+            case SET_ARC_WEIGHT: {
+                Graph_M.Vertex vtx1 = next.get(op.a);
+                Graph_M.Vertex vtx2 = next.get(op.b);
+                if (vtx1 == null || vtx2 == null || !vtx1.nbrs.containsKey(op.b)) {
+                    return;
+                }
+                boolean twoWay = op.op == SET_WEIGHT && vtx2.nbrs.containsKey(op.a);
+                writable(op.a).nbrs.put(op.b, op.weight);
+                applied.add(new Op(MutationLog.REMOVE_ARC, op.a, op.b, 0));
+                applied.add(new Op(MutationLog.ADD_ARC, op.a, op.b, op.weight));
+                keepCarriers(op.a, op.b, applied);
+                if (twoWay) {
+                    writable(op.b).nbrs.put(op.a, op.weight);
+                    applied.add(new Op(MutationLog.REMOVE_ARC, op.b, op.a, 0));
+                    applied.add(new Op(MutationLog.ADD_ARC, op.b, op.a, op.weight));
+                    keepCarriers(op.b, op.a, applied);
+                }
+                break;
+            }
+            default:
+                throw new IllegalStateException("Unknown batch op " + op.op);
+        }
+    }
+
+    // Replay turns REMOVE_ARC + ADD_ARC into a fresh route without carriers; journal them again.
+    private void keepCarriers(String a, String b, ArrayList<Op> applied)
+    {
+        String[] codes = next.get(a).carriers.get(b);
+        if (codes != null) {
+            applied.add(new Op(MutationLog.SET_CARRIERS, a, b, 0, String.join(",", codes)));
+        }
+    }
+
+    // Returns the working copy's vertex, cloning the published one the first time it is modified.
+    private Graph_M.Vertex writable(String vname)
+    {
+        Graph_M.Vertex vtx = next.get(vname);
+        if (vtx == null || copied.contains(vname)) {
+            return vtx;
+        }
+        Graph_M.Vertex copy = new Graph_M.Vertex();
+        copy.nbrs = new HashMap<>(vtx.nbrs);
+        copy.carriers = new HashMap<>(vtx.carriers);
+        copy.lat = vtx.lat;
+        copy.lng = vtx.lng;
+        next.put(vname, copy);
+        copied.add(vname);
+        return copy;
+    }
+}
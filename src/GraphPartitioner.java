@@ -0,0 +1,375 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Splits a route graph into k shards for {@link ShardCoordinator}.
+ *
+ * Greedy region growing: k seeds are picked far apart (each new seed is the airport with the most hops
+ * to the seeds chosen so far) and grown in turns, each region claiming the unclaimed neighbour with the
+ * most routes into it, so regions fill their own dense clusters before crossing the sparse routes
+ * between clusters. Every shard becomes a connected region of about n / k airports. A few greedy
+ * refinement passes then move airports on the border to the neighbouring shard most of their routes
+ * lead to, when that lowers the number of cut routes and keeps the shards balanced.
+ *
+ * Airports with a route to or from another shard are boundary airports. A shard only has to expose
+ * boundary-to-boundary costs, so the fewer cut routes, the smaller the overlay the coordinator searches.
+ */
+public class GraphPartitioner
+{
+    static final int MAGIC = 0x46534831; // "FSH1"
+    private static final double IMBALANCE = 1.05;
+    private static final int REFINE_PASSES = 4;
+
+    /**
+     * How vertices are distributed over shards. Shard-local ids follow ascending global ids, so the
+     * coordinator and the shard processes agree on them without exchanging a mapping.
+     */
+    static final class Layout {
+        final int shards;
+        final int[] part;          // global id -> shard
+        final int[] localId;       // global id -> id within its shard
+        final int[][] members;     // shard -> global ids, ascending
+        final int[][] boundary;    // shard -> local ids of its boundary vertices, ascending
+        final int cutArcs;
+
+        Layout(RouteGraph g, int[] part, int shards) {
+            int n = g.numVertices();
+            this.shards = shards;
+            this.part = part;
+            this.localId = new int[n];
+            int[] sizes = new int[shards];
+            for (int v = 0; v < n; v++) {
+                localId[v] = sizes[part[v]]++;
+            }
+            members = new int[shards][];
+            for (int s = 0; s < shards; s++) {
+                members[s] = new int[sizes[s]];
+            }
+            boolean[] isBoundary = new boolean[n];
+            int cut = 0;
+            for (int v = 0; v < n; v++) {
+                members[part[v]][localId[v]] = v;
+                for (int a = g.arcBegin(v), end = g.arcEnd(v); a < end; a++) {
+                    int w = g.arcHead(a);
+                    if (part[w] != part[v]) {
+                        isBoundary[v] = true;
+                        isBoundary[w] = true;
+                        cut++;
+                    }
+                }
+            }
+            cutArcs = cut;
+            boundary = new int[shards][];
+            for (int s = 0; s < shards; s++) {
+                DeltaStepping.IntList list = new DeltaStepping.IntList();
+                for (int v : members[s]) {
+                    if (isBoundary[v]) {
+                        list.add(localId[v]);
+                    }
+                }
+                boundary[s] = Arrays.copyOf(list.data, list.size);
+            }
+        }
+    }
+
+    private GraphPartitioner() {
+    }
+
+    /**
+     * Assigns every vertex to one of k shards.
+     * @param g    The graph.
+     * @param k    Number of shards (at least 1).
+     * @param seed Random seed for the first region seed.
+     * @return part[v] in [0, k) for every vertex.
+     */
+    public static int[] partition(RouteGraph g, int k, long seed)
+    {
+        int n = g.numVertices();
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        int[] part = new int[n];
+        if (k == 1 || n == 0) {
+            return part;
+        }
+        int[] start = new int[n + 1];
+        int[] adj = GraphAnalytics.undirectedAdjacency(g, start);
+        int cap = (int) Math.ceil((double) n / k * IMBALANCE);
+        int[] seeds = pickSeeds(n, start, adj, Math.min(k, n), new Random(seed));
+
+        // Grow all regions in turns; each claims the unclaimed neighbour with the most routes into it
+        Arrays.fill(part, -1);
+        int[] sizes = new int[k];
+        int[][] links = new int[k][n];          // links[p][v] = routes between v and region p
+        LongMaxHeap[] frontier = new LongMaxHeap[k];
+        for (int p = 0; p < seeds.length; p++) {
+            frontier[p] = new LongMaxHeap();
+        }
+        for (int p = 0; p < seeds.length; p++) {
+            claim(seeds[p], p, part, sizes, links, frontier, start, adj);
+        }
+        boolean grew = true;
+        while (grew) {
+            grew = false;
+            for (int p = 0; p < seeds.length; p++) {
+                if (sizes[p] >= cap) {
+                    continue;
+                }
+                while (!frontier[p].isEmpty()) {
+                    long top = frontier[p].pop();
+                    int v = frontier[p].vertex(top);
+                    // Skip stale entries: claimed meanwhile, or pushed before more links were found
+                    if (part[v] == -1 && (int) (top >>> 32) == links[p][v]) {
+                        claim(v, p, part, sizes, links, frontier, start, adj);
+                        grew = true;
+                        break;
+                    }
+                }
+            }
+        }
+        // Leftovers (other components, or cut off by full regions) join the smallest region
+        for (int v = 0; v < n; v++) {
+            if (part[v] == -1) {
+                int best = 0;
+                for (int p = 1; p < k; p++) {
+                    if (sizes[p] < sizes[best]) {
+                        best = p;
+                    }
+                }
+                part[v] = best;
+                sizes[best]++;
+            }
+        }
+        refine(n, start, adj, part, sizes, cap);
+        return part;
+    }
+
+    /**
+     * @return The number of undirected routes whose endpoints are in different shards.
+     */
+    public static int cutSize(RouteGraph g, int[] part)
+    {
+        int n = g.numVertices();
+        int[] start = new int[n + 1];
+        int[] adj = GraphAnalytics.undirectedAdjacency(g, start);
+        int cut = 0;
+        for (int u = 0; u < n; u++) {
+            for (int i = start[u]; i < start[u + 1]; i++) {
+                if (adj[i] > u && part[adj[i]] != part[u]) {
+                    cut++;
+                }
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * Writes one file per shard: its airports, their routes inside the shard and its boundary list.
+     * Layout: magic, shard, vertex count, names (UTF), boundary count, boundary local ids, arc count,
+     * CSR offsets, heads and raw weights (all local ids).
+     * @return The shard files, indexed by shard.
+     */
+    static Path[] writeShards(RouteGraph g, Layout layout, Path dir) throws IOException
+    {
+        Files.createDirectories(dir);
+        Path[] files = new Path[layout.shards];
+        for (int s = 0; s < layout.shards; s++) {
+            int[] members = layout.members[s];
+            int[] offsets = new int[members.length + 1];
+            DeltaStepping.IntList heads = new DeltaStepping.IntList();
+            DeltaStepping.IntList weights = new DeltaStepping.IntList();
+            for (int i = 0; i < members.length; i++) {
+                int v = members[i];
+                for (int a = g.arcBegin(v), end = g.arcEnd(v); a < end; a++) {
+                    int w = g.arcHead(a);
+                    if (layout.part[w] == s) {
+                        heads.add(layout.localId[w]);
+                        weights.add(g.arcWeight(a));
+                    }
+                }
+                offsets[i + 1] = heads.size;
+            }
+            files[s] = dir.resolve("shard-" + s + ".bin");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[s])))) {
+                out.writeInt(MAGIC);
+                out.writeInt(s);
+                out.writeInt(members.length);
+                for (int v : members) {
+                    out.writeUTF(g.name(v));
+                }
+                out.writeInt(layout.boundary[s].length);
+                for (int b : layout.boundary[s]) {
+                    out.writeInt(b);
+                }
+                out.writeInt(heads.size);
+                for (int o : offsets) {
+                    out.writeInt(o);
+                }
+                for (int i = 0; i < heads.size; i++) {
+                    out.writeInt(heads.data[i]);
+                    out.writeInt(weights.data[i]);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static void claim(int v, int p, int[] part, int[] sizes, int[][] links, LongMaxHeap[] frontier,
+                              int[] start, int[] adj)
+    {
+        part[v] = p;
+        sizes[p]++;
+        for (int i = start[v]; i < start[v + 1]; i++) {
+            int w = adj[i];
+            if (part[w] == -1) {
+                frontier[p].push(++links[p][w], w);
+            }
+        }
+    }
+
+    // Farthest-point seeds: each next seed maximises the hop distance to the seeds chosen so far.
+    private static int[] pickSeeds(int n, int[] start, int[] adj, int k, Random rnd)
+    {
+        int[] seeds = new int[k];
+        int[] hops = new int[n];
+        Arrays.fill(hops, Integer.MAX_VALUE);
+        int[] queue = new int[n];
+        seeds[0] = rnd.nextInt(n);
+        for (int i = 1; i <= k; i++) {
+            // Multi-source BFS extension from the newest seed only: hops keeps the minimum over all seeds
+            int head = 0, tail = 0;
+            hops[seeds[i - 1]] = 0;
+            queue[tail++] = seeds[i - 1];
+            while (head < tail) {
+                int u = queue[head++];
+                for (int j = start[u]; j < start[u + 1]; j++) {
+                    int v = adj[j];
+                    if (hops[u] + 1 < hops[v]) {
+                        hops[v] = hops[u] + 1;
+                        queue[tail++] = v;
+                    }
+                }
+            }
+            if (i == k) {
+                break;
+            }
+            int far = -1;
+            for (int v = 0; v < n; v++) {
+                if (far == -1 || hops[v] > hops[far]) {
+                    far = v; // Unreached vertices (other components) have MAX_VALUE and win first
+                }
+            }
+            seeds[i] = far;
+        }
+        return seeds;
+    }
+
+    /**
+     * Growth frontier of one region: a binary max-heap of (links, push order) packed into longs, so
+     * that among equally linked vertices the one found first (closest to the seed) wins.
+     */
+    private static final class LongMaxHeap
+    {
+        private long[] heap = new long[64];
+        private int size = 0;
+        private final DeltaStepping.IntList pushed = new DeltaStepping.IntList(); // push order -> vertex
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(int links, int v) {
+            pushed.add(v);
+            push(((long) links << 32) | (Integer.MAX_VALUE - (pushed.size - 1)));
+        }
+
+        int vertex(long entry) {
+            return pushed.data[Integer.MAX_VALUE - (int) entry];
+        }
+
+        private void push(long x) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && heap[(i - 1) >>> 1] < x) {
+                heap[i] = heap[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            heap[i] = x;
+        }
+
+        long pop() {
+            long top = heap[0];
+            long last = heap[--size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (heap[child] <= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (size > 0) {
+                heap[i] = last;
+            }
+            return top;
+        }
+    }
+
+    // Greedy boundary refinement: move a vertex to the shard holding most of its neighbours if that
+    // strictly reduces the cut and the target stays under the cap.
+    private static void refine(int n, int[] start, int[] adj, int[] part, int[] sizes, int cap)
+    {
+        int k = sizes.length;
+        int[] count = new int[k];
+        int[] seen = new int[k];
+        int floor = Math.max(1, n / k / 2);
+        for (int pass = 0; pass < REFINE_PASSES; pass++) {
+            int moved = 0;
+            for (int v = 0; v < n; v++) {
+                int own = part[v];
+                int distinct = 0;
+                boolean border = false;
+                for (int i = start[v]; i < start[v + 1]; i++) {
+                    int p = part[adj[i]];
+                    if (count[p]++ == 0) {
+                        seen[distinct++] = p;
+                    }
+                    border |= p != own;
+                }
+                if (border && sizes[own] > floor) {
+                    int best = own;
+                    for (int i = 0; i < distinct; i++) {
+                        int p = seen[i];
+                        if (p != own && count[p] > count[best] && sizes[p] < cap) {
+                            best = p;
+                        }
+                    }
+                    if (best != own) {
+                        part[v] = best;
+                        sizes[own]--;
+                        sizes[best]++;
+                        moved++;
+                    }
+                }
+                for (int i = 0; i < distinct; i++) {
+                    count[seen[i]] = 0;
+                }
+            }
+            if (moved == 0) {
+                break;
+            }
+        }
+    }
+}
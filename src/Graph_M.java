@@ -191,12 +191,29 @@ public class Graph_M
         // Key: Name of the neighboring airport (String)
         // Value: Weight of the edge (Integer)
         HashMap<String, Integer> nbrs = new HashMap<>();
+        // Carriers flying each outgoing route (see setCarriers); routes without an entry have no carrier data.
+        HashMap<String, String[]> carriers = new HashMap<>();
+        // Airport location in degrees (see setLocation); NaN if unknown.
+        double lat = Double.NaN;
+        double lng = Double.NaN;
     }
 
     // Static map storing all vertices (airports) in the graph.
     // Key: Name of the airport (String)
     // Value: The Vertex object for that airport
-    static HashMap<String, Vertex> vtces;
+    // Volatile so that a GraphBatch commit, which swaps in a whole new map, is published safely.
+    static volatile HashMap<String, Vertex> vtces;
+
+    // Incremented on every structural change; derived indexes (CompactGraph, HubLabels, ...)
+    // remember the version they were built from and are rebuilt when it no longer matches.
+    static volatile int version;
+
+    // Write-ahead log for mutations, or null when running without persistence (see MutationLog.open).
+    // A mutator journals its change and waits until the record is on disk before applying it; if the
+    // log is closed or has failed it throws IllegalStateException and the graph is left unchanged.
+    // Every mutator holds the Graph_M.class lock, the same one GraphBatch.commit takes, so a direct
+    // change cannot interleave with a batch copying and republishing the vertex map.
+    static MutationLog journal;
 
     /**
      * Constructor for the Graph_M class.
@@ -204,7 +221,10 @@ public class Graph_M
      */
     public Graph_M()
     {
-        vtces = new HashMap<>();
+        synchronized (Graph_M.class) {
+            vtces = new HashMap<>();
+            version++;
+        }
     }
 
     // --- Basic Graph Operations ---
@@ -234,8 +254,36 @@ public class Graph_M
      */
     public void addVertex(String vname)
     {
-        Vertex vtx = new Vertex();
-        vtces.put(vname, vtx);
+        synchronized (Graph_M.class) {
+            if (journal != null) {
+                MutationLog.await(journal.append(MutationLog.ADD_VERTEX, vname, null, 0));
+            }
+            Vertex vtx = new Vertex();
+            vtces.put(vname, vtx);
+            changed();
+        }
+    }
+
+    /**
+     * Sets the geographic location of an airport, used by GeoIndex for nearest and radius queries.
+     * @param vname The name of the vertex.
+     * @param lat   Latitude in degrees.
+     * @param lng   Longitude in degrees.
+     */
+    public void setLocation(String vname, double lat, double lng)
+    {
+        synchronized (Graph_M.class) {
+            Vertex vtx = vtces.get(vname);
+            if (vtx == null) {
+                return;
+            }
+            if (journal != null) {
+                MutationLog.await(journal.appendLocation(vname, lat, lng));
+            }
+            vtx.lat = lat;
+            vtx.lng = lng;
+            changed();
+        }
     }
 
     /**
@@ -244,47 +292,56 @@ public class Graph_M
      */
     public void removeVertex(String vname)
     {
-        Vertex vtx = vtces.get(vname);
-        if (vtx == null) {
-            return; // Vertex not found
-        }
-
-        // Create a copy of keys to avoid ConcurrentModificationException
-        ArrayList<String> keysToRemove = new ArrayList<>(vtx.nbrs.keySet());
+        synchronized (Graph_M.class) {
+            Vertex vtx = vtces.get(vname);
+            if (vtx == null) {
+                return; // Vertex not found
+            }
+            if (journal != null) {
+                MutationLog.await(journal.append(MutationLog.REMOVE_VERTEX, vname, null, 0));
+            }
 
-        // For each neighbor of the vertex being removed, remove the edge pointing back to it.
-        for (String key : keysToRemove) {
-            Vertex nbrVtx = vtces.get(key);
-            if (nbrVtx != null) {
-                nbrVtx.nbrs.remove(vname);
+            // Remove every edge pointing to it. A one-way route into this airport is not listed in its own
+            // nbrs, so every vertex has to be checked rather than just its neighbours.
+            for (Vertex other : vtces.values()) {
+                other.nbrs.remove(vname);
+                other.carriers.remove(vname);
             }
-        }
 
-        // Finally, remove the vertex itself from the main map.
-        vtces.remove(vname);
+            // Finally, remove the vertex itself from the main map.
+            vtces.remove(vname);
+            changed();
+        }
     }
 
     /**
-     * Returns the total number of edges (connections) in the graph.
-     * Assumes an undirected graph, so each edge is counted once.
+     * Returns the total number of routes in the graph.
+     * A route flown in both directions (even with different weights) counts once; a one-way route counts once.
      * @return The number of edges.
      */
     public int numEdges()
     {
-        int count = 0;
+        int arcs = 0;
+        int paired = 0;
         for (String key : vtces.keySet()) {
             Vertex vtx = vtces.get(key);
-            count = count + vtx.nbrs.size();
+            for (String nbr : vtx.nbrs.keySet()) {
+                arcs++;
+                Vertex back = vtces.get(nbr);
+                if (back != null && back.nbrs.containsKey(key)) {
+                    paired++;
+                }
+            }
         }
-        // Each edge is stored twice (once for each endpoint), so divide by 2.
-        return count / 2;
+        // A two-way route is stored once at each endpoint, and each copy saw the other.
+        return arcs - paired / 2;
     }
 
     /**
-     * Checks if an edge exists between two specified vertices.
-     * @param vname1 Name of the first vertex.
-     * @param vname2 Name of the second vertex.
-     * @return True if an edge exists, false otherwise.
+     * Checks if there is a route from the first vertex to the second.
+     * @param vname1 Name of the origin vertex.
+     * @param vname2 Name of the destination vertex.
+     * @return True if an edge exists in that direction, false otherwise.
      */
     public boolean containsEdge(String vname1, String vname2)
     {
@@ -296,46 +353,181 @@ public class Graph_M
     }
 
     /**
-     * Adds an edge between two vertices with a specified weight.
-     * Assumes an undirected graph, so edge is added in both directions.
+     * Adds a two-way route between two vertices with the same weight in both directions.
+     * Use addDirectedEdge, or addEdge with two weights, for one-way or asymmetric routes.
+     * If one direction already exists, only the missing one is added; the existing one keeps its
+     * weight and carriers.
      * @param vname1 Name of the first vertex.
      * @param vname2 Name of the second vertex.
      * @param value The weight of the edge (e.g., distance or base time unit).
      */
     public void addEdge(String vname1, String vname2, int value)
     {
-        Vertex vtx1 = vtces.get(vname1);
-        Vertex vtx2 = vtces.get(vname2);
+        synchronized (Graph_M.class) {
+            Vertex vtx1 = vtces.get(vname1);
+            Vertex vtx2 = vtces.get(vname2);
 
-        // Do not add edge if either vertex does not exist or if the edge already exists.
-        if (vtx1 == null || vtx2 == null || vtx1.nbrs.containsKey(vname2)) {
-            return;
+            // Do not add edge if either vertex does not exist or if the edge already exists.
+            if (vtx1 == null || vtx2 == null || (vtx1.nbrs.containsKey(vname2) && vtx2.nbrs.containsKey(vname1))) {
+                return;
+            }
+            if (vtx1.nbrs.containsKey(vname2) || vtx2.nbrs.containsKey(vname1)) {
+                // A one-way route exists already: complete it without touching the existing direction.
+                addDirectedEdge(vname1, vname2, value);
+                addDirectedEdge(vname2, vname1, value);
+                return;
+            }
+
+            if (journal != null) {
+                MutationLog.await(journal.append(MutationLog.ADD_EDGE, vname1, vname2, value));
+            }
+
+            // Add edge in both directions for an undirected graph.
+            vtx1.nbrs.put(vname2, value);
+            vtx2.nbrs.put(vname1, value);
+            changed();
         }
+    }
 
-        // Add edge in both directions for an undirected graph.
-        vtx1.nbrs.put(vname2, value);
-        vtx2.nbrs.put(vname1, value);
+    /**
+     * Adds a route flown in both directions with a different weight each way
+     * (e.g. block times with and against the prevailing winds).
+     * Each direction is added only if it does not exist yet.
+     * @param vname1  Name of the first vertex.
+     * @param vname2  Name of the second vertex.
+     * @param forward Weight from vname1 to vname2.
+     * @param reverse Weight from vname2 to vname1.
+     */
+    public void addEdge(String vname1, String vname2, int forward, int reverse)
+    {
+        synchronized (Graph_M.class) {
+            addDirectedEdge(vname1, vname2, forward);
+            addDirectedEdge(vname2, vname1, reverse);
+        }
+    }
+
+    /**
+     * Adds a one-way route from the first vertex to the second.
+     * @param vname1 Name of the origin vertex.
+     * @param vname2 Name of the destination vertex.
+     * @param value The weight of the edge.
+     */
+    public void addDirectedEdge(String vname1, String vname2, int value)
+    {
+        synchronized (Graph_M.class) {
+            Vertex vtx1 = vtces.get(vname1);
+
+            // Do not add edge if either vertex does not exist or if the edge already exists.
+            if (vtx1 == null || !vtces.containsKey(vname2) || vtx1.nbrs.containsKey(vname2)) {
+                return;
+            }
+            if (journal != null) {
+                MutationLog.await(journal.append(MutationLog.ADD_ARC, vname1, vname2, value));
+            }
+            vtx1.nbrs.put(vname2, value);
+            changed();
+        }
     }
 
     /**
-     * Removes an edge between two specified vertices.
-     * Assumes an undirected graph, so edge is removed in both directions.
+     * Removes the route between two vertices in both directions (whichever directions exist).
      * @param vname1 Name of the first vertex.
      * @param vname2 Name of the second vertex.
      */
     public void removeEdge(String vname1, String vname2)
     {
-        Vertex vtx1 = vtces.get(vname1);
-        Vertex vtx2 = vtces.get(vname2);
+        synchronized (Graph_M.class) {
+            Vertex vtx1 = vtces.get(vname1);
+            Vertex vtx2 = vtces.get(vname2);
 
-        // Check if both vertices and the edge exist before attempting removal.
-        if (vtx1 == null || vtx2 == null || !vtx1.nbrs.containsKey(vname2)) {
-            return;
+            // Check if both vertices and the edge exist before attempting removal.
+            if (vtx1 == null || vtx2 == null || (!vtx1.nbrs.containsKey(vname2) && !vtx2.nbrs.containsKey(vname1))) {
+                return;
+            }
+            if (journal != null) {
+                MutationLog.await(journal.append(MutationLog.REMOVE_EDGE, vname1, vname2, 0));
+            }
+
+            // Remove edge from both directions.
+            vtx1.nbrs.remove(vname2);
+            vtx2.nbrs.remove(vname1);
+            vtx1.carriers.remove(vname2);
+            vtx2.carriers.remove(vname1);
+            changed();
+        }
+    }
+
+    /**
+     * Removes only the direction from the first vertex to the second, turning a two-way route one-way.
+     * @param vname1 Name of the origin vertex.
+     * @param vname2 Name of the destination vertex.
+     */
+    public void removeDirectedEdge(String vname1, String vname2)
+    {
+        synchronized (Graph_M.class) {
+            Vertex vtx1 = vtces.get(vname1);
+            if (vtx1 == null || !vtx1.nbrs.containsKey(vname2)) {
+                return;
+            }
+            if (journal != null) {
+                MutationLog.await(journal.append(MutationLog.REMOVE_ARC, vname1, vname2, 0));
+            }
+            vtx1.nbrs.remove(vname2);
+            vtx1.carriers.remove(vname2);
+            changed();
         }
+    }
+
+    /**
+     * Sets the carriers (airline codes, e.g. "AI", "6E") flying the route from the first vertex to the
+     * second, replacing any earlier list. Used by CarrierRouter to price changes of carrier.
+     * Only that direction is changed; call it twice for a two-way route.
+     * @param vname1 Name of the origin vertex.
+     * @param vname2 Name of the destination vertex.
+     * @param codes  Carrier codes; none clears the carrier data of the route.
+     */
+    public void setCarriers(String vname1, String vname2, String... codes)
+    {
+        synchronized (Graph_M.class) {
+            Vertex vtx1 = vtces.get(vname1);
+            if (vtx1 == null || !vtx1.nbrs.containsKey(vname2)) {
+                return;
+            }
+            for (String code : codes) {
+                if (code.isEmpty() || code.indexOf(',') >= 0) {
+                    throw new IllegalArgumentException("Invalid carrier code: '" + code + "'");
+                }
+            }
+            if (journal != null) {
+                MutationLog.await(journal.appendCarriers(vname1, vname2, String.join(",", codes)));
+            }
+            if (codes.length == 0) {
+                vtx1.carriers.remove(vname2);
+            } else {
+                vtx1.carriers.put(vname2, codes.clone());
+            }
+            changed();
+        }
+    }
+
+    // Called once a change is applied: publishes it to derived indexes and lets the log take a due snapshot.
+    private static void changed()
+    {
+        version++;
+        if (journal != null) {
+            journal.snapshotIfDue();
+        }
+    }
 
-        // Remove edge from both directions.
-        vtx1.nbrs.remove(vname2);
-        vtx2.nbrs.remove(vname1);
+    /**
+     * Returns the carriers flying the route from the first vertex to the second.
+     * @return The carrier codes, empty if the route has no carrier data or does not exist.
+     */
+    public String[] carriers(String vname1, String vname2)
+    {
+        Vertex vtx1 = vtces.get(vname1);
+        String[] codes = vtx1 == null ? null : vtx1.carriers.get(vname2);
+        return codes == null ? new String[0] : codes.clone();
     }
 
     /**
@@ -426,7 +618,7 @@ public class Graph_M
     private static class DijkstraPair implements Comparable<DijkstraPair>
     {
         String vname; // Vertex name
-        String psf;   // Path so far (string representation of stations visited)
+        DijkstraPair prev; // Predecessor on the best path so far (null for the source or unreached vertices)
         int cost;     // Accumulated cost from source to this vertex
 
         /**
@@ -445,10 +637,12 @@ public class Graph_M
      * Represents the result of a pathfinding operation.
      * Contains the path string, total cost, and number of interchanges.
      */
-    private static class PathResult {
+    static class PathResult {
         String path;         // Raw or formatted path string (e.g., "A B C" or "Start A -> B End")
         int totalCost;       // Total cost (distance in KM or time in seconds)
         int interchangeCount; // Number of interchanges
+        String[] stations;   // Airports along a raw path, in order (null for error and formatted results)
+        String[] carriers;   // Carrier of each leg of a carrier-aware path (see CarrierRouter), else null
 
         public PathResult(String path, int totalCost, int interchangeCount) {
             this.path = path;
@@ -457,6 +651,42 @@ public class Graph_M
         }
     }
 
+    /**
+     * Builds the raw PathResult for a settled destination by walking predecessor links.
+     * The path string is only assembled once here, instead of on every relaxation.
+     */
+    private static PathResult rawPath(DijkstraPair des) {
+        int hops = 0;
+        for (DijkstraPair p = des; p != null; p = p.prev) {
+            hops++;
+        }
+        String[] stations = new String[hops];
+        for (DijkstraPair p = des; p != null; p = p.prev) {
+            stations[--hops] = p.vname;
+        }
+        // Joined with the same "###" delimiter processPathForDisplay splits on.
+        PathResult result = new PathResult(String.join("###", stations), des.cost, 0);
+        result.stations = stations;
+        return result;
+    }
+
+    /**
+     * Converts an edge weight into the cost of traversing it under the chosen metric.
+     * Shared by every search engine so they all agree on leg costs.
+     * @param edgeWeight The weight stored by addEdge (distance units).
+     * @param isTimeCost If true, returns the time cost (in seconds); otherwise the distance cost.
+     * @return The leg cost.
+     */
+    static int edgeCost(int edgeWeight, boolean isTimeCost) {
+        if (isTimeCost) {
+            // Time cost: fixed overhead + travel time based on distance.
+            // 120 (seconds) fixed time for transfer/waiting + 40 (seconds per distance unit) * edgeWeight.
+            return 120 + 40 * edgeWeight;
+        }
+        // Distance cost: the edge distance itself.
+        return edgeWeight;
+    }
+
     /**
      * Implements Dijkstra's algorithm to find the shortest path (cost and raw path string).
      *
@@ -466,6 +696,17 @@ public class Graph_M
      * @return A PathResult object containing the raw path string and total cost, or error indicators.
      */
     public PathResult dijkstra(String src, String des, boolean isTimeCost) {
+        // Every query is traced into QueryMetrics (histograms per metric/strategy) and JFR.
+        QueryTrace trace = QueryTrace.start();
+        PathResult result = dijkstra(src, des, isTimeCost, trace);
+        trace.finish(QueryMetrics.metricName(isTimeCost), "dijkstra", src, des, result.totalCost != -1);
+        return result;
+    }
+
+    /**
+     * Dijkstra's algorithm body, counting settled vertices, relaxed edges and heap operations into a trace.
+     */
+    private PathResult dijkstra(String src, String des, boolean isTimeCost, QueryTrace trace) {
         // Basic validation: Check if source or destination exist in the graph.
         if (!containsVertex(src) || !containsVertex(des)) {
             return new PathResult("INVALID_STATIONS", -1, 0);
@@ -482,25 +723,26 @@ public class Graph_M
         for (String key : vtces.keySet()) {
             DijkstraPair np = new DijkstraPair();
             np.vname = key;
-            np.psf = ""; // Path will be built
+            np.prev = null; // Path will be built from predecessor links
             np.cost = Integer.MAX_VALUE;
 
             if (key.equals(src)) {
-                np.cost = 0;
-                np.psf = key; // Path starts with the source airport
+                np.cost = 0; // Path starts with the source airport
             }
 
             pq.add(np); // Add to the heap
             map.put(key, np); // Store in the map
         }
+        trace.heapOps += pq.size();
 
         // Dijkstra's main loop: continues as long as there are unvisited vertices in the heap.
         while (!pq.isEmpty()) {
             DijkstraPair rp = pq.remove(); // Extract the vertex with the minimum current cost.
+            trace.heapOps++;
 
             // If the extracted vertex is the destination, we've found the shortest path.
             if (rp.vname.equals(des)) {
-                return new PathResult(rp.psf, rp.cost, 0); // Return raw path and cost.
+                return rawPath(rp); // Return raw path and cost.
             }
 
             // If this vertex has already been "processed" (i.e., removed from the map)
@@ -512,6 +754,7 @@ public class Graph_M
 
             // Mark this vertex as processed by removing it from the map.
             map.remove(rp.vname);
+            trace.settled++;
 
             // Get the actual Vertex object for the removed pair.
             Vertex v = vtces.get(rp.vname);
@@ -523,29 +766,20 @@ public class Graph_M
             for (String nbr : v.nbrs.keySet()) {
                 // Only consider neighbors that are still in the 'map' (i.e., not yet processed).
                 if (map.containsKey(nbr)) {
+                    trace.relaxed++;
                     int oldCost = map.get(nbr).cost; // Current known cost to neighbor.
-                    int newCost;
                     int edgeWeight = v.nbrs.get(nbr); // Weight of the edge to this neighbor (e.g., distance in KM).
-
-                    if (isTimeCost) {
-                        // Calculate new time cost: accumulated time + fixed overhead + travel time based on distance.
-                        // Assuming edgeWeight (from addEdge) is 'distance units'.
-                        // 120 (seconds) fixed time for transfer/waiting + 40 (seconds per distance unit) * edgeWeight.
-                        newCost = rp.cost + (120 + 40 * edgeWeight);
-                    } else {
-                        // Calculate new distance cost: accumulated distance + edge distance.
-                        newCost = rp.cost + edgeWeight;
-                    }
+                    int newCost = rp.cost + edgeCost(edgeWeight, isTimeCost);
 
                     // If a shorter path to the neighbor is found (relaxation step).
                     if (newCost < oldCost) {
                         DijkstraPair gp = map.get(nbr); // Get the DijkstraPair for the neighbor.
-                        // CRITICAL FIX: Use a unique delimiter for path segments
-                        gp.psf = rp.psf + "###" + nbr;    // Update neighbor's path.
+                        gp.prev = rp;                  // Update neighbor's path (predecessor link).
                         gp.cost = newCost;             // Update neighbor's cost.
 
                         // Use the custom Heap's updatePriority to re-position the neighbor in the heap.
                         pq.updatePriority(gp);
+                        trace.heapOps++;
                     }
                 }
             }
@@ -597,6 +831,17 @@ public class Graph_M
                 return new PathResult("PATH_FORMAT_ERROR", -1, 0); // Return an error state.
             }
 
+            if (rawPathResult.carriers != null) {
+                // Carrier-aware path: an interchange is a change of carrier, as minimized by CarrierRouter.
+                String carrier = rawPathResult.carriers[i - 1];
+                if (i > 1 && !carrier.equals(rawPathResult.carriers[i - 2])) {
+                    interchanges++;
+                    formattedPathSegments.add("CHANGE FROM " + rawPathResult.carriers[i - 2] + " TO " + carrier + " AT " + prevStation);
+                }
+                formattedPathSegments.add(currentStation + " (" + carrier + ")");
+                continue;
+            }
+
             // Extract line codes (the part before '~').
             String currentLineCode = currentStation.substring(0, currentTildeIndex);
             String prevLineCode = prevStation.substring(0, prevTildeIndex);
@@ -656,6 +901,28 @@ public class Graph_M
         g.addVertex("AUH~Abu Dhabi International Airport, Abu Dhabi"); // Added for better ME connectivity
         g.addVertex("HKG~Hong Kong International Airport, Hong Kong"); // Added for better Asia connectivity
 
+        // Airport locations (latitude, longitude in degrees) for nearest-airport and radius queries
+        g.setLocation("DEL~Indira Gandhi International Airport, Delhi", 28.5665, 77.1031);
+        g.setLocation("BOM~Chhatrapati Shivaji Maharaj International Airport, Mumbai", 19.0915, 72.8596);
+        g.setLocation("BLR~Kempegowda International Airport, Bengaluru", 13.1979, 77.7061);
+        g.setLocation("MAA~Chennai International Airport, Chennai", 12.9900, 80.1691);
+        g.setLocation("CCU~Netaji Subhas Chandra Bose International Airport, Kolkata", 22.6538, 88.4447);
+        g.setLocation("HYD~Rajiv Gandhi International Airport, Hyderabad", 17.2300, 78.4294);
+        g.setLocation("AMD~Sardar Vallabhbhai Patel International Airport, Ahmedabad", 23.0784, 72.6225);
+        g.setLocation("PNQ~Pune Airport, Pune", 18.5794, 73.9181);
+        g.setLocation("GOI~Goa International Airport (Dabolim), Goa", 15.3808, 73.8314);
+        g.setLocation("COK~Cochin International Airport, Kochi", 10.1520, 76.3934);
+        g.setLocation("JAI~Jaipur International Airport, Jaipur", 26.8184, 75.8122);
+        g.setLocation("LKO~Chaudhary Charan Singh International Airport, Lucknow", 26.7606, 80.8893);
+        g.setLocation("ATQ~Sri Guru Ram Dass Jee International Airport, Amritsar", 31.7096, 74.7973);
+        g.setLocation("LHR~Heathrow Airport, London", 51.4700, -0.4543);
+        g.setLocation("DXB~Dubai International Airport, Dubai", 25.2532, 55.3653);
+        g.setLocation("SIN~Changi Airport, Singapore", 1.3644, 103.9915);
+        g.setLocation("JFK~John F. Kennedy International Airport, New York", 40.6413, -73.7781);
+        g.setLocation("CDG~Charles de Gaulle Airport, Paris", 49.0097, 2.5479);
+        g.setLocation("AUH~Abu Dhabi International Airport, Abu Dhabi", 24.4330, 54.6511);
+        g.setLocation("HKG~Hong Kong International Airport, Hong Kong", 22.3080, 113.9185);
+
 
         // --- Domestic Indian Flight Routes (approximate durations in minutes, converted to distance units) ---
         // Assuming 10 minutes ~ 1 distance unit (approximate, for demonstration)
@@ -740,6 +1007,29 @@ public class Graph_M
         return codes;
     }
 
+    /**
+     * Resolves user or API input to an airport's full name.
+     * Accepts either the full "CODE~FULL_NAME" key or just the code (case-insensitive).
+     * @param codeOrName The airport code (e.g., "DEL") or full name.
+     * @return The full airport name, or null if no airport matches.
+     */
+    public static String resolveAirport(String codeOrName) {
+        if (codeOrName == null) {
+            return null;
+        }
+        String input = codeOrName.trim();
+        if (vtces.containsKey(input)) {
+            return input;
+        }
+        for (String key : vtces.keySet()) {
+            int tildeIndex = key.indexOf('~');
+            if (tildeIndex == input.length() && key.regionMatches(true, 0, input, 0, tildeIndex)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
     /**
      * Prints a formatted list of all airports along with their generated short codes.
      * @param keys The list of all airport full names.
@@ -885,7 +1175,19 @@ public class Graph_M
 
     public static void main(String[] args) throws IOException {
         Graph_M g = new Graph_M();
-        Create_Metro_Map(g); // Populate the graph with airports and connections
+        // With -Dflight.data.dir=<dir>, the map is restored from the snapshot + mutation log in that
+        // directory, and every later change is journaled there. The built-in map seeds a new directory.
+        String dataDir = System.getProperty("flight.data.dir");
+        if (dataDir != null) {
+            MutationLog log = MutationLog.open(java.nio.file.Paths.get(dataDir), 1000);
+            if (!log.recovered()) {
+                Create_Metro_Map(g);
+                log.snapshot();
+            }
+        } else {
+            Create_Metro_Map(g); // Populate the graph with airports and connections
+        }
+        QueryPlanner planner = new QueryPlanner(g, null); // Picks the engine for options 3 to 6
 
         BufferedReader inp = new BufferedReader(new InputStreamReader(System.in));
 
@@ -912,6 +1214,14 @@ public class Graph_M
             System.out.print("\n***********************************************************\n");
 
             if (choice == 7) {
+                // Run with -Dflight.metrics.dump=true to print the query metrics snapshot on exit.
+                if (Boolean.getBoolean("flight.metrics.dump")) {
+                    System.out.println(QueryMetrics.global().toText());
+                    System.out.println(planner.toText());
+                }
+                if (journal != null) {
+                    journal.close(); // Make sure every journaled change is on disk
+                }
                 System.out.println("Thank you for using the Global Flight App!");
                 System.exit(0);
             }
@@ -950,14 +1260,15 @@ public class Graph_M
                     }
 
                     if (choice == 3) {
-                        PathResult result = g.dijkstra(source, destination, false); // Calculate distance
+                        // Value-only query: the planner answers it from hub labels when they are built.
+                        PathResult result = planner.value(source, destination, false);
                         if (result.totalCost != -1 && !result.path.equals("NO_PATH")) {
                             System.out.println("SHORTEST DISTANCE FROM " + source + " TO " + destination + " IS " + result.totalCost + " KM\n");
                         } else {
                             System.out.println("Could not calculate shortest distance. Error: " + result.path);
                         }
                     } else if (choice == 4) {
-                        PathResult result = g.dijkstra(source, destination, true); // Calculate time
+                        PathResult result = planner.value(source, destination, true); // Calculate time
                         if (result.totalCost != -1 && !result.path.equals("NO_PATH")) {
                             // Dijkstra's time cost is in seconds, convert to minutes for display
                             double shortestTimeInMinutes = Math.ceil((double) result.totalCost / 60);
@@ -966,7 +1277,7 @@ public class Graph_M
                             System.out.println("Could not calculate shortest time. Error: " + result.path);
                         }
                     } else if (choice == 5) {
-                        PathResult rawResult = g.dijkstra(source, destination, false); // Get raw distance path
+                        PathResult rawResult = planner.route(source, destination, false); // Get raw distance path
                         PathResult finalResult = g.processPathForDisplay(rawResult); // Process for display and interchanges
 
                         if (finalResult.path.equals("NO_PATH") || finalResult.path.equals("INVALID_STATIONS") || finalResult.path.equals("PATH_FORMAT_ERROR")) {
@@ -981,7 +1292,7 @@ public class Graph_M
                             System.out.println("~~~~~~~~~~~~~");
                         }
                     } else if (choice == 6) {
-                        PathResult rawResult = g.dijkstra(source, destination, true); // Get raw time path
+                        PathResult rawResult = planner.route(source, destination, true); // Get raw time path
                         PathResult finalResult = g.processPathForDisplay(rawResult); // Process for display and interchanges
 
                         if (finalResult.path.equals("NO_PATH") || finalResult.path.equals("INVALID_STATIONS") || finalResult.path.equals("PATH_FORMAT_ERROR")) {
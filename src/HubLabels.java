@@ -0,0 +1,449 @@
+import java.util.Arrays;
+
+/**
+ * Hub labeling (2-hop cover) index for constant-time-ish distance and time queries.
+ *
+ * Every airport v stores an out-label and an in-label: short lists of (hub, cost, parent) entries sorted
+ * by hub rank, such that for any pair (s, t) some hub on a shortest s-t path appears in both
+ * Lout(s) and Lin(t). A query is then just a linear merge of the two sorted label arrays:
+ *     dist(s, t) = min over common hubs h of Lout(s)[h] + Lin(t)[h].
+ * Labels are built with pruned Dijkstra searches (pruned landmark labeling) from each hub in order
+ * of decreasing degree, so mega-hubs like DEL, BOM or DXB are processed first and cover most pairs:
+ * a forward search from the hub fills in-labels, a backward search over the reverse graph fills
+ * out-labels. On a symmetric graph both labels are identical, so one search per hub builds a single set
+ * that serves as both. The parent stored with each entry is the next airport towards the hub (out) or
+ * the previous airport coming from it (in), which lets a full path be unpacked on demand without
+ * keeping shortest-path trees around.
+ *
+ * Labels for all vertices are flattened into a few int arrays (CSR layout like CompactGraph).
+ * An index is built for one metric and one CompactGraph snapshot; {@link #current(boolean)} rebuilds it
+ * lazily when the graph version changes.
+ */
+public class HubLabels
+{
+    static final int INF = Integer.MAX_VALUE;
+
+    final RouteGraph graph;
+    final boolean isTimeCost;
+    final int[] hubVertex;     // hub rank -> vertex id
+    final Labels out;          // cost vertex -> hub; parent is the next vertex towards the hub
+    final Labels in;           // cost hub -> vertex; parent is the previous vertex from the hub (== out if symmetric)
+
+    private static volatile HubLabels cachedDistance;
+    private static volatile HubLabels cachedTime;
+
+    /**
+     * One flattened label set.
+     */
+    static final class Labels
+    {
+        final int[] start;     // vertex id -> first entry (length n + 1)
+        final int[] hub;       // entry -> hub rank (ascending within each label)
+        final int[] cost;      // entry -> cost between the vertex and the hub
+        final int[] parent;    // entry -> neighbouring vertex on the way to/from the hub (-1 for the hub itself)
+
+        Labels(int[] start, int[] hub, int[] cost, int[] parent) {
+            this.start = start;
+            this.hub = hub;
+            this.cost = cost;
+            this.parent = parent;
+        }
+
+        int size(int v) {
+            return start[v + 1] - start[v];
+        }
+    }
+
+    private HubLabels(RouteGraph graph, boolean isTimeCost, int[] hubVertex, Labels out, Labels in) {
+        this.graph = graph;
+        this.isTimeCost = isTimeCost;
+        this.hubVertex = hubVertex;
+        this.out = out;
+        this.in = in;
+    }
+
+    /**
+     * Returns the index for the current graph and metric only if it is already built; never builds.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return The index, or null if there is none for the current Graph_M version.
+     */
+    public static HubLabels peek(boolean isTimeCost)
+    {
+        HubLabels h = isTimeCost ? cachedTime : cachedDistance;
+        return h != null && h.graph == RouteGraph.current() ? h : null;
+    }
+
+    /**
+     * Returns the index for the current graph and metric, building it if the graph changed.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return An index consistent with the current Graph_M version.
+     */
+    public static HubLabels current(boolean isTimeCost)
+    {
+        RouteGraph g = RouteGraph.current();
+        HubLabels h = isTimeCost ? cachedTime : cachedDistance;
+        if (h == null || h.graph != g) {
+            synchronized (HubLabels.class) {
+                h = isTimeCost ? cachedTime : cachedDistance;
+                if (h == null || h.graph != g) {
+                    h = build(g, isTimeCost);
+                    if (isTimeCost) {
+                        cachedTime = h;
+                    } else {
+                        cachedDistance = h;
+                    }
+                }
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Builds hub labels for a graph with pruned Dijkstra searches.
+     * @param g          The graph (on- or off-heap).
+     * @param isTimeCost The metric to index.
+     * @return The finished index.
+     */
+    public static HubLabels build(RouteGraph g, boolean isTimeCost)
+    {
+        int n = g.numVertices();
+        RouteGraph rev = g.reverse();
+        boolean symmetric = rev == g;
+
+        // Hub order: highest degree (in + out) first, ties by id for determinism.
+        int[] degree = new int[n];
+        for (int v = 0; v < n; v++) {
+            degree[v] = (g.arcEnd(v) - g.arcBegin(v)) + (rev.arcEnd(v) - rev.arcBegin(v));
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> degree[a] != degree[b] ? degree[b] - degree[a] : a - b);
+        int[] hubVertex = new int[n];
+        for (int r = 0; r < n; r++) {
+            hubVertex[r] = order[r];
+        }
+
+        LabelBuilder outLabels = new LabelBuilder(n);
+        LabelBuilder inLabels = symmetric ? outLabels : new LabelBuilder(n);
+        PrunedSearch search = new PrunedSearch(n, isTimeCost);
+        for (int r = 0; r < n; r++) {
+            int h = hubVertex[r];
+            // Forward from h: costs h -> v go into Lin(v); v is covered if Lout(h) and Lin(v) already meet.
+            search.run(g, h, r, inLabels, outLabels);
+            if (!symmetric) {
+                // Backward from h: costs v -> h go into Lout(v); covered if Lout(v) and Lin(h) already meet.
+                search.run(rev, h, r, outLabels, inLabels);
+            }
+        }
+        Labels out = outLabels.flatten();
+        Labels in = symmetric ? out : inLabels.flatten();
+        return new HubLabels(g, isTimeCost, hubVertex, out, in);
+    }
+
+    /**
+     * Growable per-vertex labels used during construction.
+     */
+    private static final class LabelBuilder
+    {
+        final int[][] hubs;
+        final int[][] costs;
+        final int[][] parents;
+        final int[] len;
+
+        LabelBuilder(int n) {
+            hubs = new int[n][];
+            costs = new int[n][];
+            parents = new int[n][];
+            len = new int[n];
+            for (int v = 0; v < n; v++) {
+                hubs[v] = new int[4];
+                costs[v] = new int[4];
+                parents[v] = new int[4];
+            }
+        }
+
+        // Ranks arrive in increasing order, so labels stay sorted.
+        void add(int v, int rank, int cost, int parent) {
+            if (len[v] == hubs[v].length) {
+                int cap = len[v] * 2;
+                hubs[v] = Arrays.copyOf(hubs[v], cap);
+                costs[v] = Arrays.copyOf(costs[v], cap);
+                parents[v] = Arrays.copyOf(parents[v], cap);
+            }
+            hubs[v][len[v]] = rank;
+            costs[v][len[v]] = cost;
+            parents[v][len[v]] = parent;
+            len[v]++;
+        }
+
+        Labels flatten() {
+            int n = len.length;
+            int[] start = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                start[v + 1] = start[v] + len[v];
+            }
+            int total = start[n];
+            int[] hub = new int[total];
+            int[] cost = new int[total];
+            int[] parent = new int[total];
+            for (int v = 0; v < n; v++) {
+                System.arraycopy(hubs[v], 0, hub, start[v], len[v]);
+                System.arraycopy(costs[v], 0, cost, start[v], len[v]);
+                System.arraycopy(parents[v], 0, parent, start[v], len[v]);
+            }
+            return new Labels(start, hub, cost, parent);
+        }
+    }
+
+    /**
+     * One pruned Dijkstra search per hub and direction, with scratch arrays reused across searches.
+     */
+    private static final class PrunedSearch
+    {
+        final boolean isTimeCost;
+        final int[] dist;
+        final int[] parent;
+        final int[] hubCost;   // hub rank -> cost between the current hub and that hub, from the hub's own label
+        final int[] touched;
+        final IndexedMinHeap pq;
+
+        PrunedSearch(int n, boolean isTimeCost) {
+            this.isTimeCost = isTimeCost;
+            dist = new int[n];
+            parent = new int[n];
+            hubCost = new int[n];
+            touched = new int[n];
+            Arrays.fill(dist, INF);
+            Arrays.fill(hubCost, INF);
+            pq = new IndexedMinHeap(n);
+        }
+
+        /**
+         * Searches dir from hub h (rank r) and appends an entry to grow for every vertex that the labels
+         * built so far do not already cover; hubSide holds the hub's own label on the opposite side.
+         */
+        void run(RouteGraph dir, int h, int r, LabelBuilder grow, LabelBuilder hubSide) {
+            for (int i = 0; i < hubSide.len[h]; i++) {
+                hubCost[hubSide.hubs[h][i]] = hubSide.costs[h][i];
+            }
+
+            int touchedCount = 0;
+            dist[h] = 0;
+            parent[h] = -1;
+            touched[touchedCount++] = h;
+            pq.pushOrDecrease(h, 0);
+
+            while (!pq.isEmpty()) {
+                int v = pq.pop();
+                int d = dist[v];
+
+                // Prune: v is already covered by an earlier (higher-ranked) hub at no greater cost.
+                boolean covered = false;
+                int[] vHubs = grow.hubs[v];
+                int[] vCosts = grow.costs[v];
+                for (int i = 0; i < grow.len[v]; i++) {
+                    int hc = hubCost[vHubs[i]];
+                    if (hc != INF && (long) hc + vCosts[i] <= d) {
+                        covered = true;
+                        break;
+                    }
+                }
+                if (covered) {
+                    continue;
+                }
+                grow.add(v, r, d, parent[v]);
+
+                for (int a = dir.arcBegin(v), end = dir.arcEnd(v); a < end; a++) {
+                    int w = dir.arcHead(a);
+                    int nd = d + dir.arcCost(a, isTimeCost);
+                    if (nd < dist[w]) {
+                        if (dist[w] == INF) {
+                            touched[touchedCount++] = w;
+                        }
+                        dist[w] = nd;
+                        parent[w] = v;
+                        pq.pushOrDecrease(w, nd);
+                    }
+                }
+            }
+
+            // Reset only what this search touched.
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = INF;
+            }
+            for (int i = 0; i < hubSide.len[h]; i++) {
+                hubCost[hubSide.hubs[h][i]] = INF;
+            }
+        }
+    }
+
+    // --- Queries ---
+
+    /**
+     * Returns the shortest cost from s to t by a linear merge of Lout(s) and Lin(t).
+     * @param s Source vertex id.
+     * @param t Target vertex id.
+     * @return The cost, or INF if t is unreachable from s.
+     */
+    public int cost(int s, int t)
+    {
+        int i = out.start[s], iEnd = out.start[s + 1];
+        int j = in.start[t], jEnd = in.start[t + 1];
+        long best = INF;
+        while (i < iEnd && j < jEnd) {
+            int hi = out.hub[i], hj = in.hub[j];
+            if (hi == hj) {
+                long c = (long) out.cost[i] + in.cost[j];
+                if (c < best) {
+                    best = c;
+                }
+                i++;
+                j++;
+            } else if (hi < hj) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (int) Math.min(best, INF);
+    }
+
+    // Same merge, but returns the hub rank of the best meeting hub (-1 if none).
+    private int bestHub(int s, int t)
+    {
+        int i = out.start[s], iEnd = out.start[s + 1];
+        int j = in.start[t], jEnd = in.start[t + 1];
+        long best = INF;
+        int bestHub = -1;
+        while (i < iEnd && j < jEnd) {
+            int hi = out.hub[i], hj = in.hub[j];
+            if (hi == hj) {
+                long c = (long) out.cost[i] + in.cost[j];
+                if (c < best) {
+                    best = c;
+                    bestHub = hi;
+                }
+                i++;
+                j++;
+            } else if (hi < hj) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return bestHub;
+    }
+
+    /**
+     * Unpacks the full shortest path between two vertices.
+     * @param s Source vertex id.
+     * @param t Target vertex id.
+     * @return The vertex ids from s to t, or null if unreachable.
+     */
+    public int[] path(int s, int t)
+    {
+        int hubRank = bestHub(s, t);
+        if (hubRank == -1) {
+            return null;
+        }
+        int hub = hubVertex[hubRank];
+        int up = hops(out, s, hubRank, hub);
+        int down = hops(in, t, hubRank, hub);
+        int[] path = new int[up + down + 1];
+        // s -> hub along out-label parents
+        int v = s;
+        for (int i = 0; i < up; i++) {
+            path[i] = v;
+            v = out.parent[find(out, v, hubRank)];
+        }
+        path[up] = hub;
+        // hub -> t along in-label parents, filled backwards from t
+        v = t;
+        for (int i = path.length - 1; i > up; i--) {
+            path[i] = v;
+            v = in.parent[find(in, v, hubRank)];
+        }
+        return path;
+    }
+
+    // Number of edges between v and the hub, following parent pointers.
+    private int hops(Labels side, int v, int hubRank, int hub)
+    {
+        int count = 0;
+        while (v != hub) {
+            v = side.parent[find(side, v, hubRank)];
+            count++;
+        }
+        return count;
+    }
+
+    // Binary search for the label entry of vertex v with the given hub rank.
+    private int find(Labels side, int v, int hubRank)
+    {
+        int idx = Arrays.binarySearch(side.hub, side.start[v], side.start[v + 1], hubRank);
+        if (idx < 0) {
+            throw new IllegalStateException("Hub label missing during path unpacking");
+        }
+        return idx;
+    }
+
+    /**
+     * Value-only query by airport name (menu options 3 and 4).
+     * @param src Source airport full name.
+     * @param des Destination airport full name.
+     * @return A PathResult with an empty path and the cost, or the usual error indicators.
+     */
+    public Graph_M.PathResult queryValue(String src, String des)
+    {
+        QueryTrace trace = QueryTrace.start();
+        int s = graph.idOf(src);
+        int t = graph.idOf(des);
+        Graph_M.PathResult result;
+        if (s == -1 || t == -1) {
+            result = new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        } else {
+            // Label entries scanned by the merge are reported in the "relaxed" column.
+            trace.relaxed = out.size(s) + in.size(t);
+            int c = cost(s, t);
+            result = c == INF ? new Graph_M.PathResult("NO_PATH", -1, 0) : new Graph_M.PathResult("", c, 0);
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), "hub-labels", src, des, result.totalCost != -1);
+        return result;
+    }
+
+    /**
+     * Full path query by airport name, with the same raw format as Graph_M.dijkstra.
+     * @param src Source airport full name.
+     * @param des Destination airport full name.
+     * @return A raw PathResult (stations set) or the usual error indicators.
+     */
+    public Graph_M.PathResult queryPath(String src, String des)
+    {
+        int s = graph.idOf(src);
+        int t = graph.idOf(des);
+        if (s == -1 || t == -1) {
+            return new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        }
+        int[] ids = path(s, t);
+        if (ids == null) {
+            return new Graph_M.PathResult("NO_PATH", -1, 0);
+        }
+        String[] stations = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            stations[i] = graph.name(ids[i]);
+        }
+        Graph_M.PathResult result = new Graph_M.PathResult(String.join("###", stations), cost(s, t), 0);
+        result.stations = stations;
+        return result;
+    }
+
+    /**
+     * @return The total number of label entries (index size); shared labels count once.
+     */
+    public int labelEntries()
+    {
+        return out.hub.length + (in == out ? 0 : in.hub.length);
+    }
+}
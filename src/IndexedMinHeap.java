@@ -0,0 +1,144 @@
+import java.util.Arrays;
+
+/**
+ * Primitive binary min-heap over vertex ids [0, capacity) keyed by int cost, with decrease-key.
+ * It is the array-based counterpart of the generic Heap used by Graph_M.dijkstra: no boxing,
+ * no per-entry objects, and the position index is an int array instead of a HashMap.
+ * A heap can be reused across queries with {@link #clear()}, which only touches live entries.
+ */
+public class IndexedMinHeap
+{
+    private final int[] heap;   // heap slot -> vertex id
+    private final int[] keys;   // vertex id -> current key
+    private final int[] pos;    // vertex id -> heap slot, or -1 if not in the heap
+    private int size = 0;
+
+    /**
+     * @param capacity The number of distinct ids the heap can hold (ids are 0..capacity-1).
+     */
+    public IndexedMinHeap(int capacity)
+    {
+        heap = new int[capacity];
+        keys = new int[capacity];
+        pos = new int[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean contains(int id)
+    {
+        return pos[id] != -1;
+    }
+
+    /**
+     * @return The key of the minimum entry (the heap must not be empty).
+     */
+    public int minKey()
+    {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Inserts an id, or lowers its key if it is already present with a larger key.
+     * @param id  The vertex id.
+     * @param key The new key.
+     * @return True if the heap changed.
+     */
+    public boolean pushOrDecrease(int id, int key)
+    {
+        int slot = pos[id];
+        if (slot == -1) {
+            slot = size++;
+            heap[slot] = id;
+            pos[id] = slot;
+            keys[id] = key;
+            siftUp(slot);
+            return true;
+        }
+        if (key < keys[id]) {
+            keys[id] = key;
+            siftUp(slot);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes and returns the id with the smallest key.
+     * @return The removed id.
+     */
+    public int pop()
+    {
+        int top = heap[0];
+        pos[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            pos[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Empties the heap in O(size) so it can be reused for the next query.
+     */
+    public void clear()
+    {
+        for (int i = 0; i < size; i++) {
+            pos[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int slot)
+    {
+        int id = heap[slot];
+        int key = keys[id];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            int pid = heap[parent];
+            if (keys[pid] <= key) {
+                break;
+            }
+            heap[slot] = pid;
+            pos[pid] = slot;
+            slot = parent;
+        }
+        heap[slot] = id;
+        pos[id] = slot;
+    }
+
+    private void siftDown(int slot)
+    {
+        int id = heap[slot];
+        int key = keys[id];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int cid = heap[child];
+            if (keys[cid] >= key) {
+                break;
+            }
+            heap[slot] = cid;
+            pos[cid] = slot;
+            slot = child;
+        }
+        heap[slot] = id;
+        pos[id] = slot;
+    }
+}
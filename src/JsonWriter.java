@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Minimal streaming JSON writer that encodes straight into a reusable ByteBuffer as UTF-8.
+ * No intermediate Strings are built: characters and numbers are written byte by byte,
+ * and substrings can be emitted by range without calling substring().
+ * Commas between members are inserted automatically based on the nesting state.
+ */
+public class JsonWriter
+{
+    private static final byte[] DIGITS = "0123456789abcdef".getBytes();
+    private static final int MAX_DEPTH = 32;
+
+    private ByteBuffer buf;
+    // needsComma[d] is true once the container at depth d has at least one element.
+    private final boolean[] needsComma = new boolean[MAX_DEPTH];
+    private int depth = 0;
+    // Set right after a member name, so the following value is not preceded by a comma.
+    private boolean afterName = false;
+    // Scratch space for formatting longs without allocating.
+    private final byte[] numScratch = new byte[20];
+
+    /**
+     * Creates a writer with the given initial capacity; the buffer grows on demand.
+     * @param initialCapacity Initial buffer size in bytes.
+     */
+    public JsonWriter(int initialCapacity)
+    {
+        this.buf = ByteBuffer.allocate(Math.max(16, initialCapacity));
+    }
+
+    /**
+     * Clears the writer so the same buffer can be reused for the next document.
+     * @return This writer.
+     */
+    public JsonWriter reset()
+    {
+        buf.clear();
+        depth = 0;
+        afterName = false;
+        needsComma[0] = false;
+        return this;
+    }
+
+    /**
+     * @return The number of bytes written so far.
+     */
+    public int size()
+    {
+        return buf.position();
+    }
+
+    /**
+     * @return A read-only view of the encoded bytes [0, size()).
+     */
+    public ByteBuffer encoded()
+    {
+        ByteBuffer view = buf.duplicate();
+        view.flip();
+        return view.asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the encoded bytes to a stream (e.g. an HTTP response body).
+     * @param out The destination stream.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(OutputStream out) throws IOException
+    {
+        out.write(buf.array(), buf.arrayOffset(), buf.position());
+    }
+
+    // --- Structure ---
+
+    public JsonWriter beginObject()
+    {
+        return open((byte) '{');
+    }
+
+    public JsonWriter endObject()
+    {
+        return close((byte) '}');
+    }
+
+    public JsonWriter beginArray()
+    {
+        return open((byte) '[');
+    }
+
+    public JsonWriter endArray()
+    {
+        return close((byte) ']');
+    }
+
+    /**
+     * Writes an object member name; the next call must write its value.
+     * @param name The member name (plain ASCII keys are expected but any text is escaped).
+     * @return This writer.
+     */
+    public JsonWriter name(String name)
+    {
+        separator();
+        writeQuoted(name, 0, name.length());
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    // --- Values ---
+
+    public JsonWriter value(String s)
+    {
+        if (s == null) {
+            return nullValue();
+        }
+        return value(s, 0, s.length());
+    }
+
+    /**
+     * Writes the characters s[from, to) as a JSON string without creating a substring.
+     */
+    public JsonWriter value(CharSequence s, int from, int to)
+    {
+        separator();
+        writeQuoted(s, from, to);
+        return this;
+    }
+
+    public JsonWriter value(long v)
+    {
+        separator();
+        writeLong(v);
+        return this;
+    }
+
+    /**
+     * Writes a number rounded to a fixed number of decimals, without formatting it through a String.
+     * NaN and infinities, which JSON cannot represent, are written as null. Values too large to scale
+     * into a long are written as whole numbers, clamped to the long range.
+     * @param v        The value.
+     * @param decimals Digits after the decimal point, 0 to 9.
+     * @return This writer.
+     */
+    public JsonWriter value(double v, int decimals)
+    {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            return nullValue();
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        separator();
+        if (Math.abs(v) * scale >= Long.MAX_VALUE) {
+            writeLong(Math.round(v));
+            return this;
+        }
+        long scaled = Math.round(v * scale);
+        if (scaled < 0) {
+            put((byte) '-');
+            scaled = -scaled;
+        }
+        writeLong(scaled / scale);
+        if (decimals > 0) {
+            put((byte) '.');
+            long fraction = scaled % scale;
+            for (long digit = scale / 10; digit > 0; digit /= 10) {
+                put((byte) ('0' + (int) (fraction / digit % 10)));
+            }
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean b)
+    {
+        separator();
+        writeAscii(b ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue()
+    {
+        separator();
+        writeAscii("null");
+        return this;
+    }
+
+    // --- Internals ---
+
+    private JsonWriter open(byte bracket)
+    {
+        separator();
+        put(bracket);
+        if (++depth >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nesting too deep");
+        }
+        needsComma[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(byte bracket)
+    {
+        if (depth == 0) {
+            throw new IllegalStateException("Unbalanced JSON container");
+        }
+        depth--;
+        put(bracket);
+        return this;
+    }
+
+    // Emits a comma before every element but the first in the current container.
+    private void separator()
+    {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (needsComma[depth]) {
+            put((byte) ',');
+        }
+        needsComma[depth] = true;
+    }
+
+    private void writeQuoted(CharSequence s, int from, int to)
+    {
+        put((byte) '"');
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                put((byte) '\\');
+                put((byte) c);
+            } else if (c < 0x20) {
+                // Control characters use the \\u00XX form.
+                put((byte) '\\');
+                put((byte) 'u');
+                put((byte) '0');
+                put((byte) '0');
+                put(DIGITS[c >> 4]);
+                put(DIGITS[c & 0xF]);
+            } else if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                put((byte) (0xC0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                put((byte) (0xF0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                put((byte) (0xE0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        put((byte) '"');
+    }
+
+    private void writeLong(long v)
+    {
+        if (v == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (v < 0) {
+            put((byte) '-');
+            v = -v;
+        }
+        int n = 0;
+        do {
+            numScratch[n++] = (byte) ('0' + (int) (v % 10));
+            v /= 10;
+        } while (v != 0);
+        while (n > 0) {
+            put(numScratch[--n]);
+        }
+    }
+
+    private void writeAscii(String s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            put((byte) s.charAt(i));
+        }
+    }
+
+    private void put(byte b)
+    {
+        if (!buf.hasRemaining()) {
+            grow();
+        }
+        buf.put(b);
+    }
+
+    // Doubles the buffer; the reused writer keeps the larger buffer for later documents.
+    private void grow()
+    {
+        ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+        buf.flip();
+        bigger.put(buf);
+        buf = bigger;
+    }
+}
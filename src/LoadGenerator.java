@@ -0,0 +1,324 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for the route engines: replays a recorded query log or a Zipf-skewed
+ * synthetic mix at a target rate and reports latency percentiles and throughput.
+ *
+ * Request i is due at start + i / qps, whatever happened to earlier requests. Worker threads take the
+ * next due request, wait for its time and run it; latency is measured from the time it was due, not
+ * from when a worker got to it. A stalled engine therefore shows up as queueing delay in every request
+ * scheduled during the stall (coordinated-omission correction), instead of as one slow sample. The
+ * service time (from actual start) is reported alongside, so the two can be compared.
+ *
+ * Synthetic mix: source and destination ranks are drawn from a Zipf distribution over airports ordered
+ * by number of routes, so the busiest hubs dominate as in real traffic. A query log has one query per
+ * line, "FROM TO [distance|time]" (airport codes separated by spaces or commas, or codes or full names
+ * separated by tabs; '#' starts a comment), and is replayed in order, wrapping around if the run needs
+ * more requests.
+ *
+ * Usage: java LoadGenerator [--engine=dijkstra|bidirectional|hub-labels|alt|coalesced] [--qps=500]
+ *        [--threads=4] [--seconds=10] [--warmup=2] [--metric=distance|time|mixed] [--zipf=1.1]
+ *        [--log=queries.txt] [--save=queries.txt]
+ * The map is the built-in one, or the one recovered from -Dflight.data.dir when that is set.
+ */
+public class LoadGenerator
+{
+    /**
+     * One route engine instance; used by a single worker thread.
+     */
+    interface Engine
+    {
+        Graph_M.PathResult route(String src, String des, boolean isTimeCost) throws TimeoutException;
+    }
+
+    static final String[] ENGINES = {"dijkstra", "bidirectional", "hub-labels", "alt", "coalesced"};
+
+    final String[] src;
+    final String[] des;
+    final boolean[] isTimeCost;
+
+    // Results of the last run
+    final LogHistogram latency = new LogHistogram();  // from the time the request was due
+    final LogHistogram service = new LogHistogram();  // from the time a worker started it
+    final LongAdder errors = new LongAdder();
+    long elapsedNanos;
+    long completed;
+
+    /**
+     * @param src        Source airport full names, one per query.
+     * @param des        Destination airport full names.
+     * @param isTimeCost Metric per query.
+     */
+    LoadGenerator(String[] src, String[] des, boolean[] isTimeCost) {
+        this.src = src;
+        this.des = des;
+        this.isTimeCost = isTimeCost;
+    }
+
+    /**
+     * Builds a synthetic query mix with Zipf-distributed endpoints.
+     * @param count   Number of queries.
+     * @param s       Zipf exponent (0 is uniform; around 1 is typical of web and booking traffic).
+     * @param metric  "distance", "time" or "mixed" (half each).
+     * @param seed    Random seed.
+     */
+    static LoadGenerator zipf(int count, double s, String metric, long seed)
+    {
+        // Rank airports by number of routes, busiest first
+        String[] airports = Graph_M.vtces.keySet().toArray(new String[0]);
+        Arrays.sort(airports);
+        Integer[] order = new Integer[airports.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(Graph_M.vtces.get(airports[b]).nbrs.size(),
+                Graph_M.vtces.get(airports[a]).nbrs.size()));
+        double[] cdf = new double[airports.length];
+        double total = 0;
+        for (int r = 0; r < cdf.length; r++) {
+            total += 1 / Math.pow(r + 1, s);
+            cdf[r] = total;
+        }
+        Random rnd = new Random(seed);
+        String[] src = new String[count];
+        String[] des = new String[count];
+        boolean[] time = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int a = rank(cdf, rnd.nextDouble() * total);
+            int b = a;
+            while (b == a && airports.length > 1) {
+                b = rank(cdf, rnd.nextDouble() * total);
+            }
+            src[i] = airports[order[a]];
+            des[i] = airports[order[b]];
+            time[i] = metric.equals("time") || (metric.equals("mixed") && rnd.nextBoolean());
+        }
+        return new LoadGenerator(src, des, time);
+    }
+
+    private static int rank(double[] cdf, double x)
+    {
+        int i = Arrays.binarySearch(cdf, x);
+        return Math.min(i >= 0 ? i : -i - 1, cdf.length - 1);
+    }
+
+    /**
+     * Reads a query log ("FROM TO [distance|time]" per line).
+     * @param metric Metric for lines that do not name one ("mixed" alternates).
+     */
+    static LoadGenerator fromLog(String file, String metric) throws IOException
+    {
+        ArrayList<String> src = new ArrayList<>();
+        ArrayList<String> des = new ArrayList<>();
+        ArrayList<Boolean> time = new ArrayList<>();
+        int lineNo = 0;
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            lineNo++;
+            int hash = line.indexOf('#');
+            String body = (hash >= 0 ? line.substring(0, hash) : line).trim();
+            if (body.isEmpty()) {
+                continue;
+            }
+            // Full names contain spaces and commas, so they need tabs; codes may use either
+            String[] parts = body.split(body.indexOf('\t') >= 0 ? "\\s*\\t\\s*" : "[\\s,]+");
+            if (parts.length < 2) {
+                throw new IOException(file + ":" + lineNo + ": expected FROM TO [metric]");
+            }
+            String a = Graph_M.resolveAirport(parts[0]);
+            String b = Graph_M.resolveAirport(parts[1]);
+            if (a == null || b == null) {
+                throw new IOException(file + ":" + lineNo + ": unknown airport " + (a == null ? parts[0] : parts[1]));
+            }
+            String m = parts.length > 2 ? parts[2] : metric;
+            src.add(a);
+            des.add(b);
+            time.add(m.equals("time") || (m.equals("mixed") && src.size() % 2 == 0));
+        }
+        if (src.isEmpty()) {
+            throw new IOException(file + ": no queries");
+        }
+        boolean[] t = new boolean[time.size()];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = time.get(i);
+        }
+        return new LoadGenerator(src.toArray(new String[0]), des.toArray(new String[0]), t);
+    }
+
+    /**
+     * Writes the query mix as a log that {@link #fromLog} reads back.
+     */
+    void save(String file) throws IOException
+    {
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < src.length; i++) {
+                out.write(src[i] + "\t" + des[i] + "\t" + QueryMetrics.metricName(isTimeCost[i]));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Creates one engine instance for a worker thread.
+     * @param coalescer Shared coalescer, used by the "coalesced" engine.
+     */
+    static Engine engine(String name, Graph_M g, RouteCoalescer coalescer)
+    {
+        switch (name) {
+            case "dijkstra":
+                return g::dijkstra;
+            case "bidirectional": {
+                RouteGraph cg = RouteGraph.current();
+                BidirectionalDijkstra[] byMetric = {new BidirectionalDijkstra(cg, false), new BidirectionalDijkstra(cg, true)};
+                return (s, t, time) -> byMetric[time ? 1 : 0].queryPath(s, t);
+            }
+            case "hub-labels":
+                return (s, t, time) -> HubLabels.current(time).queryPath(s, t);
+            case "alt": {
+                AltSearch[] byMetric = {new AltSearch(AltLandmarks.current(false)), new AltSearch(AltLandmarks.current(true))};
+                return (s, t, time) -> byMetric[time ? 1 : 0].queryPath(s, t);
+            }
+            case "coalesced":
+                return coalescer::route;
+            default:
+                throw new IllegalArgumentException("Unknown engine '" + name + "', expected one of " + String.join(", ", ENGINES));
+        }
+    }
+
+    /**
+     * Runs the mix open-loop at a fixed rate and records latencies into this generator's histograms.
+     * @param engines   One engine per worker thread.
+     * @param qps       Target requests per second.
+     * @param requests  Number of requests to issue (the mix wraps around).
+     */
+    void run(Engine[] engines, double qps, long requests) throws InterruptedException
+    {
+        latency.reset();
+        service.reset();
+        errors.reset();
+        AtomicLong next = new AtomicLong();
+        long intervalNanos = Math.max(1, (long) (1e9 / qps));
+        long start = System.nanoTime() + 10_000_000L; // Let every worker reach the start line
+        CountDownLatch done = new CountDownLatch(engines.length);
+        for (Engine engine : engines) {
+            Thread worker = new Thread(() -> {
+                try {
+                    long i;
+                    while ((i = next.getAndIncrement()) < requests) {
+                        long due = start + i * intervalNanos;
+                        waitUntil(due);
+                        int q = (int) (i % src.length);
+                        long began = System.nanoTime();
+                        try {
+                            if (engine.route(src[q], des[q], isTimeCost[q]).totalCost == -1) {
+                                errors.increment();
+                            }
+                        } catch (TimeoutException | RuntimeException e) {
+                            errors.increment();
+                        }
+                        long end = System.nanoTime();
+                        latency.record(end - due);
+                        service.record(end - began);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-worker");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        done.await();
+        elapsedNanos = System.nanoTime() - start;
+        completed = latency.count();
+    }
+
+    // Parks until shortly before the deadline, then spins; returns at once if it has passed.
+    private static void waitUntil(long deadline)
+    {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > 100_000) {
+                LockSupport.parkNanos(remaining - 50_000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * @return A short multi-line report of the last run.
+     */
+    String report(String engine, double qps, int threads)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "engine=%s threads=%d target=%.0f/s achieved=%.1f/s requests=%d errors=%d%n",
+                engine, threads, qps, completed / (elapsedNanos / 1e9), completed, errors.sum()));
+        sb.append(line("latency", latency)).append(line("service", service));
+        return sb.toString();
+    }
+
+    private static String line(String label, LogHistogram h)
+    {
+        return String.format(Locale.ROOT, "%-8s p50=%.3f ms  p99=%.3f ms  p99.9=%.3f ms  max=%.3f ms  mean=%.3f ms%n",
+                label, h.percentile(50) / 1e6, h.percentile(99) / 1e6, h.percentile(99.9) / 1e6,
+                h.max() / 1e6, h.mean() / 1e6);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        HashMap<String, String> opt = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                System.err.println("Expected --name=value, got " + arg);
+                System.exit(2);
+            }
+            opt.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        String engineName = opt.getOrDefault("engine", "dijkstra");
+        double qps = Double.parseDouble(opt.getOrDefault("qps", "500"));
+        int threads = Integer.parseInt(opt.getOrDefault("threads", "4"));
+        double seconds = Double.parseDouble(opt.getOrDefault("seconds", "10"));
+        double warmup = Double.parseDouble(opt.getOrDefault("warmup", "2"));
+        String metric = opt.getOrDefault("metric", "mixed");
+
+        Graph_M g = new Graph_M();
+        String dataDir = System.getProperty("flight.data.dir");
+        if (dataDir == null || !MutationLog.open(Paths.get(dataDir), 1000).recovered()) {
+            Graph_M.Create_Metro_Map(g);
+        }
+        LoadGenerator load = opt.containsKey("log")
+                ? fromLog(opt.get("log"), metric)
+                : zipf(1 << 16, Double.parseDouble(opt.getOrDefault("zipf", "1.1")), metric, 42);
+        if (opt.containsKey("save")) {
+            load.save(opt.get("save"));
+        }
+
+        RouteCoalescer coalescer = new RouteCoalescer(g::dijkstra, Runtime.getRuntime().availableProcessors(), 10_000);
+        Engine[] engines = new Engine[threads];
+        for (int i = 0; i < threads; i++) {
+            engines[i] = engine(engineName, g, coalescer);
+        }
+        System.out.printf(Locale.ROOT, "%d airports, %d queries in the mix%n", g.numVertices(), load.src.length);
+        if (warmup > 0) {
+            load.run(engines, qps, (long) (qps * warmup));
+        }
+        QueryMetrics.global().reset();
+        load.run(engines, qps, Math.max(1, (long) (qps * seconds)));
+        System.out.print(load.report(engineName, qps, threads));
+        coalescer.shutdown();
+    }
+}
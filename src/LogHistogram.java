@@ -0,0 +1,152 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram (HdrHistogram-style bucketing) for non-negative long values.
+ * Values below 32 are counted exactly; larger values fall into 16 buckets per power of two, each at
+ * most 1/16 (6.25%) wide relative to the values in it, so percentiles stay accurate across
+ * nanoseconds to minutes.
+ * Recording is a single atomic increment plus two adders, safe to call from any thread.
+ */
+public class LogHistogram
+{
+    // Number of bits of precision kept below the most significant bit.
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;      // 32 exact buckets at the bottom
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;      // 16 buckets per power of two above that
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a single value. Negative values are clamped to zero.
+     * @param value The value to record.
+     */
+    public void record(long value)
+    {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        total.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Maps a value to its bucket index.
+     * @param value A non-negative value.
+     * @return The bucket index.
+     */
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value; // Exact buckets for small values
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value that falls into the given bucket.
+     * @param index The bucket index.
+     * @return The inclusive upper bound of the bucket.
+     */
+    static long bucketUpperBound(int index)
+    {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long top = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * @return The number of recorded values.
+     */
+    public long count()
+    {
+        return total.sum();
+    }
+
+    /**
+     * @return The largest recorded value, or 0 if nothing was recorded.
+     */
+    public long max()
+    {
+        return max.get();
+    }
+
+    /**
+     * @return The arithmetic mean of the recorded values, or 0 if nothing was recorded.
+     */
+    public double mean()
+    {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the value at the given percentile (upper bound of the bucket that contains it).
+     * The result is computed from a racy snapshot of the buckets, which is fine for reporting.
+     * @param percentile A percentile in the range [0, 100].
+     * @return The estimated value at that percentile, or 0 if nothing was recorded.
+     */
+    public long percentile(double percentile)
+    {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * Adds all values recorded in another histogram into this one.
+     * @param other The histogram to merge from.
+     */
+    public void add(LogHistogram other)
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = other.counts.get(i);
+            if (c != 0) {
+                counts.addAndGet(i, c);
+            }
+        }
+        total.add(other.total.sum());
+        sum.add(other.sum.sum());
+        max.accumulate(other.max());
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.reset();
+    }
+}
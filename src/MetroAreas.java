@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Metropolitan-area groupings for city-level queries, e.g. London = LHR/LGW/STN/LTN/LCY and
+ * New York = JFK/EWR/LGA.
+ *
+ * An area lists airport codes; only those present in the current graph take part in a query, so areas
+ * can name airports the network does not serve yet. Cities without an explicit area are grouped by the
+ * city part of the airport name ("BOM~..., Mumbai" belongs to "Mumbai"). A city-to-city route is one
+ * MultiSourceDijkstra search seeded with every origin airport that stops at the first destination
+ * airport settled, instead of one search per (origin, destination) pair.
+ */
+public class MetroAreas
+{
+    /**
+     * A named group of airports serving one city.
+     */
+    static final class Area {
+        final String code;        // IATA metropolitan-area code, e.g. "LON"
+        final String city;
+        final String[] airports;  // member airport codes
+
+        Area(String code, String city, String[] airports) {
+            this.code = code;
+            this.city = city;
+            this.airports = airports;
+        }
+    }
+
+    // Keyed by lower-cased area code and lower-cased city name
+    private static final ConcurrentHashMap<String, Area> AREAS = new ConcurrentHashMap<>();
+
+    static {
+        define("LON", "London", "LHR", "LGW", "STN", "LTN", "LCY");
+        define("NYC", "New York", "JFK", "EWR", "LGA");
+        define("PAR", "Paris", "CDG", "ORY");
+        define("TYO", "Tokyo", "HND", "NRT");
+        define("WAS", "Washington", "IAD", "DCA", "BWI");
+        define("CHI", "Chicago", "ORD", "MDW");
+    }
+
+    /**
+     * Adds or replaces a metropolitan area.
+     * @param code         Area code, e.g. "LON".
+     * @param city         City name, e.g. "London".
+     * @param airportCodes Codes of the member airports.
+     */
+    public static void define(String code, String city, String... airportCodes)
+    {
+        if (airportCodes.length == 0) {
+            throw new IllegalArgumentException("A metro area needs at least one airport");
+        }
+        Area area = new Area(code, city, airportCodes.clone());
+        AREAS.put(code.toLowerCase(Locale.ROOT), area);
+        AREAS.put(city.toLowerCase(Locale.ROOT), area);
+    }
+
+    /**
+     * Resolves an airport or a city to the airports it stands for in the current graph.
+     * Tried in order: airport code or full name, area code or city name of a defined area, and finally
+     * the city part of the airport names.
+     * @param input Airport code, full airport name, area code or city name.
+     * @return The full names of the matching airports; empty if nothing matches.
+     */
+    public static List<String> resolve(String input)
+    {
+        List<String> airports = new ArrayList<>();
+        if (input == null || input.isBlank()) {
+            return airports;
+        }
+        String airport = Graph_M.resolveAirport(input);
+        if (airport != null) {
+            airports.add(airport);
+            return airports;
+        }
+        String key = input.trim().toLowerCase(Locale.ROOT);
+        Area area = AREAS.get(key);
+        if (area != null) {
+            for (String code : area.airports) {
+                String name = Graph_M.resolveAirport(code);
+                if (name != null) {
+                    airports.add(name);
+                }
+            }
+            return airports;
+        }
+        HashMap<String, Graph_M.Vertex> vtces = Graph_M.vtces;
+        for (String name : vtces.keySet()) {
+            int comma = name.lastIndexOf(", ");
+            if (comma != -1 && name.substring(comma + 2).equalsIgnoreCase(key)) {
+                airports.add(name);
+            }
+        }
+        return airports;
+    }
+
+    /**
+     * Finds the cheapest route from any origin airport to any destination airport with one search.
+     * @param from       Full names of the origin airports.
+     * @param to         Full names of the destination airports.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return A raw PathResult (stations set; the first and last stations are the airports chosen),
+     *         or the usual error indicators.
+     */
+    public static Graph_M.PathResult route(List<String> from, List<String> to, boolean isTimeCost)
+    {
+        QueryTrace trace = QueryTrace.start();
+        RouteGraph g = RouteGraph.current();
+        int[] sources = ids(g, from);
+        int[] targets = ids(g, to);
+        Graph_M.PathResult result;
+        if (sources == null || targets == null) {
+            result = new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        } else {
+            SearchPool<MultiSourceDijkstra> pool = MultiSourceDijkstra.pool(g, isTimeCost);
+            MultiSourceDijkstra search = pool.acquire();
+            try {
+                int cost = search.search(sources, targets);
+                trace.settled = search.settled;
+                trace.relaxed = search.relaxed;
+                trace.heapOps = search.heapOps;
+                result = cost == MultiSourceDijkstra.INF
+                        ? new Graph_M.PathResult("NO_PATH", -1, 0)
+                        : MultiSourceDijkstra.toResult(g, search.path(), cost);
+            } finally {
+                pool.release(search);
+            }
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), "multi-source",
+                String.join("|", from), String.join("|", to), result.totalCost != -1);
+        return result;
+    }
+
+    // Vertex ids of the named airports, or null if the list is empty or names an unknown airport.
+    private static int[] ids(RouteGraph g, List<String> names)
+    {
+        if (names.isEmpty()) {
+            return null;
+        }
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = g.idOf(names.get(i));
+            if (ids[i] == -1) {
+                return null;
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,209 @@
+import java.util.Arrays;
+
+/**
+ * Dijkstra from a set of source airports to a set of target airports.
+ *
+ * Every source starts in the queue at cost zero and the search stops as soon as any target is settled,
+ * so one search finds the best route between the two sets instead of one search per (source, target)
+ * pair. Used for routing "from any airport within 150 km of this point" ({@link #fromPoint}), with the
+ * candidates taken from GeoIndex, and for city-to-city queries over metro areas (MetroAreas.route).
+ *
+ * An instance keeps its arrays between queries and resets only the entries it touched, so it is cheap
+ * to reuse but not thread-safe; queries take one from the pool of the current graph ({@link #pool}).
+ */
+public class MultiSourceDijkstra
+{
+    static final int INF = Integer.MAX_VALUE;
+
+    private final RouteGraph g;
+    private final boolean isTimeCost;
+    private final int[] dist;
+    private final int[] parent;      // previous vertex on the path, -1 at a source
+    private final IndexedMinHeap pq;
+    private final int[] touched;
+    private int touchedCount = 0;
+    private final int[] targetStamp; // targetStamp[v] == stamp marks v as a target of the current search
+    private int stamp = 0;
+    private int found = -1;          // target reached by the last search, or -1
+
+    // Reusable instances per metric, replaced with a new pool when the graph snapshot changes.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final SearchPool<MultiSourceDijkstra>[] POOLS = new SearchPool[2];
+
+    // Work counters of the last query
+    long settled, relaxed, heapOps;
+
+    /**
+     * @param g          The graph to search.
+     * @param isTimeCost True for the time metric, false for distance.
+     */
+    public MultiSourceDijkstra(RouteGraph g, boolean isTimeCost)
+    {
+        int n = g.numVertices();
+        this.g = g;
+        this.isTimeCost = isTimeCost;
+        dist = new int[n];
+        Arrays.fill(dist, INF);
+        parent = new int[n];
+        pq = new IndexedMinHeap(n);
+        touched = new int[n];
+        targetStamp = new int[n];
+    }
+
+    /**
+     * Returns the pool of search instances for a graph and metric; acquire one per query and release
+     * it when done.
+     */
+    static SearchPool<MultiSourceDijkstra> pool(RouteGraph g, boolean isTimeCost)
+    {
+        return SearchPool.forGraph(POOLS, isTimeCost ? 1 : 0, g, graph -> new MultiSourceDijkstra(graph, isTimeCost));
+    }
+
+    /**
+     * Finds the cheapest route from any of the sources to the target.
+     * @param sources Source vertex ids (duplicates are harmless).
+     * @param target  Target vertex id.
+     * @return The cost, or INF if the target is unreachable from every source.
+     */
+    public int search(int[] sources, int target)
+    {
+        return search(sources, new int[] {target});
+    }
+
+    /**
+     * Finds the cheapest route from any of the sources to any of the targets, stopping at the first
+     * target settled (which is the cheapest one to reach).
+     * @param sources Source vertex ids (duplicates are harmless).
+     * @param targets Target vertex ids.
+     * @return The cost, or INF if no target is reachable from any source.
+     */
+    public int search(int[] sources, int[] targets)
+    {
+        reset();
+        if (++stamp == 0) { // Wrapped around: clear old marks once
+            Arrays.fill(targetStamp, 0);
+            stamp = 1;
+        }
+        for (int t : targets) {
+            targetStamp[t] = stamp;
+        }
+        for (int s : sources) {
+            if (dist[s] == INF) {
+                touched[touchedCount++] = s;
+                dist[s] = 0;
+                parent[s] = -1;
+                pq.pushOrDecrease(s, 0);
+                heapOps++;
+            }
+        }
+        while (!pq.isEmpty()) {
+            int u = pq.pop();
+            heapOps++;
+            settled++;
+            if (targetStamp[u] == stamp) {
+                found = u;
+                return dist[u];
+            }
+            int du = dist[u];
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                int v = g.arcHead(a);
+                int nd = du + g.arcCost(a, isTimeCost);
+                relaxed++;
+                if (nd < dist[v]) {
+                    if (dist[v] == INF) {
+                        touched[touchedCount++] = v;
+                    }
+                    dist[v] = nd;
+                    parent[v] = u;
+                    pq.pushOrDecrease(v, nd);
+                    heapOps++;
+                }
+            }
+        }
+        return INF;
+    }
+
+    /**
+     * @return The path of the last successful search, from the chosen source to the target reached, or null.
+     */
+    public int[] path()
+    {
+        if (found == -1) {
+            return null;
+        }
+        int hops = 0;
+        for (int v = found; parent[v] != -1; v = parent[v]) {
+            hops++;
+        }
+        int[] path = new int[hops + 1];
+        for (int v = found, i = hops; i >= 0; v = parent[v], i--) {
+            path[i] = v;
+        }
+        return path;
+    }
+
+    /**
+     * Routes from the best airport within a radius of a point to a destination airport.
+     * @param lat        Latitude of the origin point in degrees.
+     * @param lng        Longitude of the origin point in degrees.
+     * @param radiusKm   Candidate origin airports must lie within this great-circle distance.
+     * @param des        Destination airport full name.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return A raw PathResult (stations set; the first station is the chosen origin),
+     *         "NO_AIRPORT_IN_RADIUS", or the usual error indicators.
+     * @throws IllegalArgumentException If the point is not a valid latitude and longitude.
+     */
+    public static Graph_M.PathResult fromPoint(double lat, double lng, double radiusKm, String des, boolean isTimeCost)
+    {
+        QueryTrace trace = QueryTrace.start();
+        GeoIndex geo = GeoIndex.current();
+        RouteGraph g = geo.graph;
+        int t = g.idOf(des);
+        int[] sources = geo.withinRadius(lat, lng, radiusKm);
+        String origin = lat + "," + lng;
+        Graph_M.PathResult result;
+        if (t == -1) {
+            result = new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        } else if (sources.length == 0) {
+            result = new Graph_M.PathResult("NO_AIRPORT_IN_RADIUS", -1, 0);
+        } else {
+            SearchPool<MultiSourceDijkstra> pool = pool(g, isTimeCost);
+            MultiSourceDijkstra search = pool.acquire();
+            try {
+                int cost = search.search(sources, t);
+                trace.settled = search.settled;
+                trace.relaxed = search.relaxed;
+                trace.heapOps = search.heapOps;
+                result = cost == INF ? new Graph_M.PathResult("NO_PATH", -1, 0) : toResult(g, search.path(), cost);
+            } finally {
+                pool.release(search);
+            }
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), "multi-source", origin, des, result.totalCost != -1);
+        return result;
+    }
+
+    // Raw PathResult in the same format as Graph_M.dijkstra.
+    static Graph_M.PathResult toResult(RouteGraph g, int[] ids, int cost)
+    {
+        String[] stations = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            stations[i] = g.name(ids[i]);
+        }
+        Graph_M.PathResult result = new Graph_M.PathResult(String.join("###", stations), cost, 0);
+        result.stations = stations;
+        return result;
+    }
+
+    // Clears the state of the previous query.
+    private void reset()
+    {
+        for (int i = 0; i < touchedCount; i++) {
+            dist[touched[i]] = INF;
+        }
+        touchedCount = 0;
+        pq.clear();
+        found = -1;
+        settled = relaxed = heapOps = 0;
+    }
+}
@@ -0,0 +1,731 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Durable write-ahead log of graph mutations plus periodic compacted snapshots.
+ *
+ * Every successful addVertex / removeVertex / addEdge / removeEdge (and their one-way variants) on Graph_M is appended as a
+ * checksummed record before the change is applied, and the call returns only once that record is on disk,
+ * so a change that was visible is never lost by a crash. Appends are queued and a single flusher thread writes whatever has
+ * accumulated with one FileChannel write and one force() (group commit), so many mutations share
+ * the cost of an fsync. Every {@code snapshotEvery} records the full graph is written to a snapshot
+ * file, the log rolls over to a new segment, and older segments and snapshots are deleted, so restart
+ * time stays bounded by the snapshot size plus a short log tail.
+ *
+ * Files in the data directory:
+ *   snapshot-SEQ.bin   full graph, including airport locations and route carriers, as of record SEQ
+ *                      (CRC32 over the whole file)
+ *   wal-SEQ.log        records starting at sequence number SEQ
+ * Record layout: int bodyLength, body (long seq, byte op, name a, name b, int weight), int CRC32(body),
+ * where a name is an unsigned short byte length followed by UTF-8 bytes. SET_LOCATION bodies append
+ * double lat, double lng; SET_CARRIERS bodies append the comma-separated carrier codes as a name.
+ *
+ * Only the flusher thread writes to, closes and rolls over log segments: a snapshot queues a rotation
+ * marker behind the records it covers, and the flusher switches segments when it reaches the marker.
+ *
+ * Recovery ({@link #open}) loads the newest valid snapshot, replays later records, and truncates
+ * a torn or corrupt tail left by a crash. The records of a GraphBatch commit are enclosed in
+ * BEGIN_BATCH / END_BATCH markers, so a batch is either replayed completely or not at all.
+ */
+public class MutationLog implements Closeable
+{
+    static final byte ADD_VERTEX = 1;
+    static final byte REMOVE_VERTEX = 2;
+    static final byte ADD_EDGE = 3;
+    static final byte REMOVE_EDGE = 4;
+    // Brackets the records of one GraphBatch commit; replay applies a batch only once its end is on disk.
+    static final byte BEGIN_BATCH = 5;
+    static final byte END_BATCH = 6;
+    static final byte ADD_ARC = 7;      // One direction only (Graph_M.addDirectedEdge)
+    static final byte REMOVE_ARC = 8;   // One direction only (Graph_M.removeDirectedEdge)
+    static final byte SET_LOCATION = 9; // Followed in the body by double lat, double lng
+    static final byte SET_CARRIERS = 10; // Followed in the body by the comma-separated carrier codes
+
+    private static final int SNAPSHOT_MAGIC = 0x46525333;    // "FRS3": routes carry carrier codes
+    private static final int SNAPSHOT_MAGIC_V2 = 0x46525332; // "FRS2": vertices carry lat/lng
+    private static final int SNAPSHOT_MAGIC_V1 = 0x46525331; // "FRS1": no locations, still readable
+
+    /**
+     * A record waiting for the flusher, or a rotation marker (data == null) telling it to start a new
+     * segment whose first record is seq.
+     */
+    private static final class Pending
+    {
+        final ByteBuffer data;
+        final long seq;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+
+        Pending(ByteBuffer data, long seq) {
+            this.data = data;
+            this.seq = seq;
+        }
+    }
+
+    private final Path dir;
+    private final long snapshotEvery;
+    private final Object lock = new Object();
+    private final Thread flusher;
+    private final boolean recovered;
+
+    // Owned by the flusher thread (and by close() once the flusher has stopped)
+    private FileChannel segment;
+
+    // Guarded by lock
+    private long nextSeq;
+    private ArrayList<Pending> pending = new ArrayList<>();
+    private boolean closed = false;
+    private IOException failure;
+    private long sinceSnapshot = 0;     // Records appended since the last snapshot
+    private boolean snapshotPending = false; // A periodic snapshot is due (see snapshotIfDue)
+
+    private volatile long durableSeq;
+
+    private MutationLog(Path dir, long snapshotEvery, long nextSeq, boolean recovered) throws IOException {
+        this.dir = dir;
+        this.snapshotEvery = snapshotEvery;
+        this.nextSeq = nextSeq;
+        this.durableSeq = nextSeq - 1;
+        this.recovered = recovered;
+        this.segment = openSegment(nextSeq);
+        this.flusher = new Thread(this::flushLoop, "mutation-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // --- Recovery ---
+
+    /**
+     * Recovers the graph from a data directory into Graph_M.vtces, then attaches a new log to Graph_M
+     * so that subsequent mutations are journaled.
+     * @param dir           The data directory (created if missing).
+     * @param snapshotEvery Records between automatic snapshots.
+     * @return The open log; {@link #recovered()} tells whether any prior state was found.
+     * @throws IOException If the directory cannot be read or written.
+     */
+    public static MutationLog open(Path dir, long snapshotEvery) throws IOException
+    {
+        Files.createDirectories(dir);
+        Graph_M.journal = null; // Replay must not re-log what it applies
+        Graph_M g = new Graph_M();
+
+        // Sequence numbers start at 1; 0 means "nothing recorded yet".
+        long snapshotSeq = 0;
+        boolean recovered = false;
+        for (Path snap : listFiles(dir, "snapshot-", ".bin", true)) {
+            long seq = loadSnapshot(snap);
+            if (seq >= 0) {
+                snapshotSeq = seq;
+                recovered = true;
+                break;
+            }
+            System.err.println("Warning: ignoring corrupt snapshot " + snap.getFileName());
+            g = new Graph_M(); // Discard anything a partially parsed snapshot added
+        }
+
+        long lastSeq = snapshotSeq;
+        for (Path wal : listFiles(dir, "wal-", ".log", false)) {
+            long seq = replay(wal, g, snapshotSeq);
+            if (seq > 0) {
+                recovered = true;
+                lastSeq = Math.max(lastSeq, seq);
+            }
+        }
+        MutationLog log = new MutationLog(dir, snapshotEvery, lastSeq + 1, recovered);
+        Graph_M.journal = log;
+        return log;
+    }
+
+    /**
+     * @return True if open() found a snapshot or log records to restore.
+     */
+    public boolean recovered()
+    {
+        return recovered;
+    }
+
+    // Applies records with seq > afterSeq; truncates the file at the first torn or corrupt record,
+    // or at the start of a batch whose END_BATCH never made it to disk.
+    private static long replay(Path wal, Graph_M g, long afterSeq) throws IOException
+    {
+        long lastSeq = -1;
+        try (FileChannel ch = FileChannel.open(wal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer all = ByteBuffer.allocate((int) ch.size());
+            while (all.hasRemaining() && ch.read(all) != -1) {
+                // keep reading
+            }
+            all.flip();
+            int good = 0;
+            ArrayList<Object[]> batch = null; // Records of an open batch, applied at END_BATCH
+            while (all.remaining() >= 4) {
+                int len = all.getInt(all.position());
+                if (len <= 0 || all.remaining() < 8 + len) {
+                    break; // Torn write at the tail
+                }
+                byte[] body = new byte[len];
+                all.position(all.position() + 4);
+                all.get(body);
+                int crc = all.getInt();
+                if (crc != crc(body)) {
+                    break;
+                }
+                ByteBuffer in = ByteBuffer.wrap(body);
+                long seq = in.getLong();
+                byte op = in.get();
+                String a = readName(in);
+                String b = readName(in);
+                int weight = in.getInt();
+                double lat = op == SET_LOCATION ? in.getDouble() : 0;
+                double lng = op == SET_LOCATION ? in.getDouble() : 0;
+                String carriers = op == SET_CARRIERS ? readName(in) : null;
+                if (op == BEGIN_BATCH) {
+                    batch = new ArrayList<>();
+                    continue;
+                }
+                if (batch != null && op != END_BATCH) {
+                    batch.add(new Object[] {seq, op, a, b, weight, lat, lng, carriers});
+                    continue;
+                }
+                if (batch != null) {
+                    for (Object[] r : batch) {
+                        if ((Long) r[0] > afterSeq) {
+                            apply(g, (Byte) r[1], (String) r[2], (String) r[3], (Integer) r[4], (Double) r[5], (Double) r[6],
+                                    (String) r[7]);
+                        }
+                    }
+                    batch = null;
+                } else if (seq > afterSeq) {
+                    apply(g, op, a, b, weight, lat, lng, carriers);
+                }
+                lastSeq = seq;
+                good = all.position();
+            }
+            if (good < ch.size()) {
+                System.err.println("Warning: truncating " + (ch.size() - good) + " bytes of damaged log tail in " + wal.getFileName());
+                ch.truncate(good);
+            }
+        }
+        return lastSeq;
+    }
+
+    private static void apply(Graph_M g, byte op, String a, String b, int weight, double lat, double lng,
+                              String carriers)
+    {
+        switch (op) {
+            case ADD_VERTEX:
+                g.addVertex(a);
+                break;
+            case REMOVE_VERTEX:
+                g.removeVertex(a);
+                break;
+            case ADD_EDGE:
+                g.addEdge(a, b, weight);
+                break;
+            case REMOVE_EDGE:
+                g.removeEdge(a, b);
+                break;
+            case ADD_ARC:
+                g.addDirectedEdge(a, b, weight);
+                break;
+            case REMOVE_ARC:
+                g.removeDirectedEdge(a, b);
+                break;
+            case SET_LOCATION:
+                g.setLocation(a, lat, lng);
+                break;
+            case SET_CARRIERS:
+                g.setCarriers(a, b, carriers.isEmpty() ? new String[0] : carriers.split(","));
+                break;
+            default:
+                throw new IllegalStateException("Unknown mutation op " + op);
+        }
+    }
+
+    // --- Appending ---
+
+    /**
+     * Queues a mutation record for the next group commit.
+     * Called by Graph_M before the mutation is applied; see {@link #await} and {@link #snapshotIfDue}.
+     * @return A future completed with the record's sequence number once it is on disk.
+     */
+    CompletableFuture<Long> append(byte op, String a, String b, int weight)
+    {
+        Pending p;
+        synchronized (lock) {
+            checkOpen();
+            p = enqueue(op, a, b, weight, null);
+            countRecords(1);
+            lock.notifyAll();
+        }
+        return p.done;
+    }
+
+    /**
+     * Queues an airport location change (Graph_M.setLocation).
+     * @return A future completed with the record's sequence number once it is on disk.
+     */
+    CompletableFuture<Long> appendLocation(String vname, double lat, double lng)
+    {
+        Pending p;
+        synchronized (lock) {
+            checkOpen();
+            p = new Pending(encode(nextSeq, SET_LOCATION, vname, null, 0, lat, lng, null), nextSeq);
+            nextSeq++;
+            pending.add(p);
+            countRecords(1);
+            lock.notifyAll();
+        }
+        return p.done;
+    }
+
+    /**
+     * Queues a change of the carriers flying a route (Graph_M.setCarriers).
+     * @param carriers The comma-separated carrier codes, empty to clear them.
+     * @return A future completed with the record's sequence number once it is on disk.
+     */
+    CompletableFuture<Long> appendCarriers(String vname1, String vname2, String carriers)
+    {
+        Pending p;
+        synchronized (lock) {
+            checkOpen();
+            p = new Pending(encode(nextSeq, SET_CARRIERS, vname1, vname2, 0, 0, 0, carriers), nextSeq);
+            nextSeq++;
+            pending.add(p);
+            countRecords(1);
+            lock.notifyAll();
+        }
+        return p.done;
+    }
+
+    /**
+     * Queues the changes of one batch commit, bracketed by BEGIN_BATCH / END_BATCH, as a unit:
+     * no snapshot or other record can land between them.
+     * @param ops The changes that took effect, in order.
+     * @return A future completed once the whole batch is on disk.
+     */
+    CompletableFuture<Long> appendBatch(List<GraphBatch.Op> ops)
+    {
+        Pending p;
+        synchronized (lock) {
+            checkOpen();
+            enqueue(BEGIN_BATCH, "", null, 0, null);
+            for (GraphBatch.Op op : ops) {
+                enqueue(op.op, op.a, op.b, op.weight, op.carriers);
+            }
+            p = enqueue(END_BATCH, "", null, 0, null);
+            countRecords(ops.size() + 2);
+            lock.notifyAll();
+        }
+        return p.done;
+    }
+
+    // Caller holds lock.
+    private void checkOpen()
+    {
+        if (closed) {
+            throw new IllegalStateException("Mutation log is closed");
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Mutation log failed", failure);
+        }
+    }
+
+    // Caller holds lock.
+    private Pending enqueue(byte op, String a, String b, int weight, String carriers)
+    {
+        Pending p = new Pending(encode(nextSeq, op, a, b, weight, 0, 0, carriers), nextSeq);
+        nextSeq++;
+        pending.add(p);
+        return p;
+    }
+
+    // Caller holds lock. Counts appended records and marks a periodic snapshot due every snapshotEvery.
+    private void countRecords(int records)
+    {
+        sinceSnapshot += records;
+        if (sinceSnapshot >= snapshotEvery) {
+            sinceSnapshot = 0;
+            snapshotPending = true;
+        }
+    }
+
+    /**
+     * Waits until an appended record is on disk. Graph_M and GraphBatch call this before they apply the
+     * change, so a change is never visible unless it would survive a crash.
+     * @param record The future returned by an append.
+     * @throws IllegalStateException If the log failed before the record was written.
+     */
+    static void await(CompletableFuture<Long> record)
+    {
+        try {
+            record.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Mutation log failed", e.getCause());
+        }
+    }
+
+    /**
+     * Takes the periodic snapshot if the records appended so far made one due. Called by the mutating
+     * thread once its change is applied, so the snapshot contains every record it covers.
+     */
+    void snapshotIfDue()
+    {
+        synchronized (lock) {
+            if (!snapshotPending) {
+                return;
+            }
+            snapshotPending = false;
+        }
+        try {
+            snapshot();
+        } catch (IOException e) {
+            System.err.println("Warning: periodic snapshot failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Blocks until every record appended so far is durable.
+     * @throws IOException If the flusher failed to write.
+     */
+    public void sync() throws IOException
+    {
+        long target;
+        synchronized (lock) {
+            target = nextSeq - 1;
+            while (durableSeq < target && failure == null) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for log sync", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void flushLoop()
+    {
+        while (true) {
+            ArrayList<Pending> batch;
+            synchronized (lock) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return; // Closed and drained
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                // Records up to a rotation marker go to the current segment, the rest to the next one.
+                int from = 0;
+                for (int i = 0; i < batch.size(); i++) {
+                    if (batch.get(i).data == null) {
+                        write(batch, from, i);
+                        rotate(batch.get(i));
+                        from = i + 1;
+                    }
+                }
+                write(batch, from, batch.size());
+            } catch (IOException e) {
+                synchronized (lock) {
+                    failure = e;
+                    batch.addAll(pending); // Queued behind the failed write; their callers must not wait forever
+                    pending = new ArrayList<>();
+                    lock.notifyAll();
+                }
+                for (Pending p : batch) {
+                    p.done.completeExceptionally(e); // No effect on records already completed
+                }
+                return;
+            }
+        }
+    }
+
+    // Writes records [from, to) of a batch with one gathering write and one fsync, then completes them.
+    private void write(ArrayList<Pending> batch, int from, int to) throws IOException
+    {
+        if (from == to) {
+            return;
+        }
+        ByteBuffer[] bufs = new ByteBuffer[to - from];
+        long remaining = 0;
+        for (int i = 0; i < bufs.length; i++) {
+            bufs[i] = batch.get(from + i).data;
+            remaining += bufs[i].remaining();
+        }
+        while (remaining > 0) {
+            remaining -= segment.write(bufs);
+        }
+        segment.force(false); // One fsync for the whole batch
+        synchronized (lock) {
+            durableSeq = batch.get(to - 1).seq;
+            lock.notifyAll();
+        }
+        for (int i = from; i < to; i++) {
+            batch.get(i).done.complete(batch.get(i).seq);
+        }
+    }
+
+    // Closes the current segment and starts the one beginning at the marker's seq.
+    private void rotate(Pending marker) throws IOException
+    {
+        segment.close();
+        segment = openSegment(marker.seq);
+        marker.done.complete(marker.seq);
+    }
+
+    // --- Snapshots ---
+
+    /**
+     * Writes a compacted snapshot of the current graph, rolls the log to a new segment and deletes
+     * segments and snapshots that the new snapshot supersedes.
+     * The graph is read while the snapshot is written, so this holds the Graph_M.class lock that every
+     * mutation takes; periodic snapshots run on the mutating thread right after it applied its change
+     * (see {@link #snapshotIfDue}). The segment switch itself is done by the flusher.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void snapshot() throws IOException
+    {
+        synchronized (Graph_M.class) {
+            writeSnapshot();
+        }
+    }
+
+    private void writeSnapshot() throws IOException
+    {
+        long seq;
+        Pending rotation;
+        synchronized (lock) {
+            if (failure != null) {
+                throw failure;
+            }
+            checkOpen();
+            seq = nextSeq - 1;
+            rotation = new Pending(null, nextSeq); // Later records go to wal-(seq + 1)
+            pending.add(rotation);
+            sinceSnapshot = 0;
+            snapshotPending = false;
+            lock.notifyAll();
+        }
+        try {
+            rotation.done.get(); // Everything up to seq is durable and its segment closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for log rotation", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+
+        Path tmp = dir.resolve("snapshot.tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream file = Files.newOutputStream(tmp);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(seq);
+            out.writeInt(Graph_M.vtces.size());
+            for (Map.Entry<String, Graph_M.Vertex> v : Graph_M.vtces.entrySet()) {
+                out.writeUTF(v.getKey());
+                out.writeDouble(v.getValue().lat);
+                out.writeDouble(v.getValue().lng);
+                out.writeInt(v.getValue().nbrs.size());
+                for (Map.Entry<String, Integer> e : v.getValue().nbrs.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeInt(e.getValue());
+                    String[] carriers = v.getValue().carriers.get(e.getKey());
+                    out.writeUTF(carriers == null ? "" : String.join(",", carriers));
+                }
+            }
+            out.flush();
+            out.writeLong(crc.getValue()); // Trailer, not itself covered by the checksum
+            out.flush();
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Path finalPath = dir.resolve(String.format("snapshot-%020d.bin", seq));
+        Files.move(tmp, finalPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // Compaction: everything up to seq is now in the snapshot.
+        for (Path snap : listFiles(dir, "snapshot-", ".bin", false)) {
+            if (!snap.equals(finalPath)) {
+                Files.deleteIfExists(snap);
+            }
+        }
+        for (Path wal : listFiles(dir, "wal-", ".log", false)) {
+            if (startSeq(wal, "wal-", ".log") <= seq) {
+                Files.deleteIfExists(wal);
+            }
+        }
+    }
+
+    // Loads a snapshot into Graph_M.vtces; returns its sequence number, or -1 if it is corrupt.
+    private static long loadSnapshot(Path snap) throws IOException
+    {
+        byte[] bytes = Files.readAllBytes(snap);
+        if (bytes.length < 8 + 16) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue()) {
+            return -1;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        int magic = in.readInt();
+        if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_V2 && magic != SNAPSHOT_MAGIC_V1) {
+            return -1;
+        }
+        long seq = in.readLong();
+        int vertices = in.readInt();
+        for (int i = 0; i < vertices; i++) {
+            String name = in.readUTF();
+            Graph_M.Vertex vtx = Graph_M.vtces.computeIfAbsent(name, k -> new Graph_M.Vertex());
+            if (magic != SNAPSHOT_MAGIC_V1) {
+                vtx.lat = in.readDouble();
+                vtx.lng = in.readDouble();
+            }
+            int nbrs = in.readInt();
+            for (int j = 0; j < nbrs; j++) {
+                String nbr = in.readUTF();
+                vtx.nbrs.put(nbr, in.readInt());
+                String carriers = magic == SNAPSHOT_MAGIC ? in.readUTF() : "";
+                if (!carriers.isEmpty()) {
+                    vtx.carriers.put(nbr, carriers.split(","));
+                }
+            }
+        }
+        Graph_M.version++;
+        return seq;
+    }
+
+    // --- Helpers ---
+
+    private FileChannel openSegment(long startSeq) throws IOException
+    {
+        Path p = dir.resolve(String.format("wal-%020d.log", startSeq));
+        return FileChannel.open(p, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String readName(ByteBuffer in)
+    {
+        byte[] bytes = new byte[Short.toUnsignedInt(in.getShort())];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // lat and lng are only written for SET_LOCATION records, carriers only for SET_CARRIERS.
+    private static ByteBuffer encode(long seq, byte op, String a, String b, int weight, double lat, double lng,
+                                     String carriers)
+    {
+        byte[] an = a.getBytes(StandardCharsets.UTF_8);
+        byte[] bn = b == null ? new byte[0] : b.getBytes(StandardCharsets.UTF_8);
+        byte[] cn = op == SET_CARRIERS ? carriers.getBytes(StandardCharsets.UTF_8) : null;
+        // Names are written as an unsigned short length followed by UTF-8 bytes.
+        int len = 8 + 1 + 2 + an.length + 2 + bn.length + 4 + (op == SET_LOCATION ? 16 : 0)
+                + (cn != null ? 2 + cn.length : 0);
+        ByteBuffer buf = ByteBuffer.allocate(4 + len + 4);
+        buf.putInt(len);
+        buf.putLong(seq).put(op);
+        buf.putShort((short) an.length).put(an);
+        buf.putShort((short) bn.length).put(bn);
+        buf.putInt(weight);
+        if (op == SET_LOCATION) {
+            buf.putDouble(lat).putDouble(lng);
+        }
+        if (cn != null) {
+            buf.putShort((short) cn.length).put(cn);
+        }
+        buf.putInt(crc(buf.array(), 4, len));
+        buf.flip();
+        return buf;
+    }
+
+    private static int crc(byte[] body)
+    {
+        return crc(body, 0, body.length);
+    }
+
+    private static int crc(byte[] bytes, int off, int len)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, off, len);
+        return (int) crc.getValue();
+    }
+
+    // Files named prefix + 20-digit sequence + suffix, sorted by sequence.
+    private static ArrayList<Path> listFiles(Path dir, String prefix, String suffix, boolean newestFirst) throws IOException
+    {
+        ArrayList<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path p : ds) {
+                files.add(p);
+            }
+        }
+        Collections.sort(files);
+        if (newestFirst) {
+            Collections.reverse(files);
+        }
+        return files;
+    }
+
+    private static long startSeq(Path p, String prefix, String suffix)
+    {
+        String name = p.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    /**
+     * Flushes outstanding records, stops the flusher and detaches the log from Graph_M.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        sync();
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            segment.close();
+        }
+        if (Graph_M.journal == this) {
+            Graph_M.journal = null;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * RouteGraph stored outside the Java heap in direct ByteBuffers.
+ *
+ * Adjacency offsets, arc heads, arc weights, airport names and airport coordinates all live in direct
+ * memory, so a multi-GB network adds almost nothing to the heap the garbage collector has to trace and copy.
+ * Arc costs are derived from the stored weight with Graph_M.edgeCost on access instead of being stored
+ * per metric. Int arrays are split into 1 GiB chunks, so a graph is not limited by the 2 GB size of a single
+ * ByteBuffer. Name lookups binary-search an id index sorted by the UTF-8 bytes of each name.
+ * The reverse graph of an asymmetric network gets its own offsets/heads/weights but shares the names
+ * and coordinates; a symmetric network stores its adjacency once.
+ *
+ * With -Dflight.graph.offheap=true, {@link RouteGraph#current()} hands the engines an OffHeapGraph
+ * snapshot of Graph_M instead of a CompactGraph; the on-heap snapshot it is copied from is dropped
+ * as soon as the copy exists.
+ *
+ * The tree targets JDK 17, where the FFM MemorySegment/Arena API is still incubating, so direct
+ * ByteBuffers are used; the memory is released when the graph becomes unreachable.
+ */
+public class OffHeapGraph implements RouteGraph
+{
+    static final boolean SELECTED = Boolean.getBoolean("flight.graph.offheap");
+
+    private static final int CHUNK_SHIFT = 28;                 // 2^28 ints = 1 GiB per chunk
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final int DOUBLE_CHUNK_SHIFT = 27;          // 2^27 doubles = 1 GiB per chunk
+    private static final int DOUBLE_CHUNK_MASK = (1 << DOUBLE_CHUNK_SHIFT) - 1;
+
+    private static volatile OffHeapGraph cached;
+
+    private final int n;
+    private final int m;
+    private final IntArray offsets;   // length n + 1
+    private final IntArray heads;     // length m
+    private final IntArray weights;   // length m
+    private final IntArray nameStart; // length n + 1, byte offsets into names
+    private final ByteBuffer names;   // UTF-8 names back to back
+    private final IntArray byName;    // vertex ids sorted by name bytes
+    private final DoubleArray lat;    // length n, degrees (NaN if unknown)
+    private final DoubleArray lng;
+    private final int version;        // Graph_M.version this snapshot was built from (-1 if none)
+    private OffHeapGraph reverse;     // Set once by copyOf; this if symmetric
+
+    private OffHeapGraph(int n, int m, IntArray offsets, IntArray heads, IntArray weights, IntArray nameStart,
+                         ByteBuffer names, IntArray byName, DoubleArray lat, DoubleArray lng, int version) {
+        this.n = n;
+        this.m = m;
+        this.offsets = offsets;
+        this.heads = heads;
+        this.weights = weights;
+        this.nameStart = nameStart;
+        this.names = names;
+        this.byName = byName;
+        this.lat = lat;
+        this.lng = lng;
+        this.version = version;
+        this.reverse = this;
+    }
+
+    /**
+     * Returns an off-heap snapshot of the current Graph_M contents, reusing the cached one while the
+     * graph version is unchanged (the off-heap counterpart of CompactGraph.current).
+     * @return The off-heap graph for the current graph version.
+     */
+    public static OffHeapGraph current()
+    {
+        OffHeapGraph g = cached;
+        if (g == null || g.version != Graph_M.version) {
+            synchronized (OffHeapGraph.class) {
+                g = cached;
+                int version = Graph_M.version; // Read before vtces: a batch publishes vtces first
+                if (g == null || g.version != version) {
+                    g = copyOf(CompactGraph.snapshot(Graph_M.vtces, version), version);
+                    cached = g;
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Installs a snapshot built ahead of publishing a new graph version (see GraphBatch.commit).
+     * @param g The snapshot for the version that was just published.
+     */
+    static synchronized void install(OffHeapGraph g)
+    {
+        if (g.version == Graph_M.version) {
+            cached = g;
+        }
+    }
+
+    /**
+     * Copies any RouteGraph (typically a CompactGraph snapshot) into direct memory.
+     * Once the copy exists, the on-heap source can be dropped.
+     * @param g The graph to copy.
+     * @return The off-heap graph.
+     */
+    public static OffHeapGraph copyOf(RouteGraph g)
+    {
+        return copyOf(g, -1);
+    }
+
+    /**
+     * Same, tagging the copy with the Graph_M version it was taken from.
+     */
+    static OffHeapGraph copyOf(RouteGraph g, int version)
+    {
+        int n = g.numVertices();
+        int m = g.numArcs();
+        IntArray[] arcs = copyArcs(g);
+
+        // Names: encode once, then lay them out back to back.
+        byte[][] encoded = new byte[n][];
+        long total = 0;
+        for (int v = 0; v < n; v++) {
+            encoded[v] = g.name(v).getBytes(StandardCharsets.UTF_8);
+            total += encoded[v].length;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Airport names exceed 2 GB");
+        }
+        ByteBuffer names = ByteBuffer.allocateDirect((int) total);
+        IntArray nameStart = new IntArray(n + 1L);
+        for (int v = 0; v < n; v++) {
+            nameStart.set(v, names.position());
+            names.put(encoded[v]);
+        }
+        nameStart.set(n, names.position());
+
+        Integer[] order = new Integer[n];
+        for (int v = 0; v < n; v++) {
+            order[v] = v;
+        }
+        Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+        IntArray byName = new IntArray(n);
+        for (int i = 0; i < n; i++) {
+            byName.set(i, order[i]);
+        }
+        DoubleArray lat = new DoubleArray(n);
+        DoubleArray lng = new DoubleArray(n);
+        for (int v = 0; v < n; v++) {
+            lat.set(v, g.lat(v));
+            lng.set(v, g.lng(v));
+        }
+        OffHeapGraph copy = new OffHeapGraph(n, m, arcs[0], arcs[1], arcs[2], nameStart, names, byName, lat, lng, version);
+        RouteGraph rev = g.reverse();
+        if (rev != g) {
+            IntArray[] rArcs = copyArcs(rev);
+            copy.reverse = new OffHeapGraph(n, m, rArcs[0], rArcs[1], rArcs[2], nameStart, names, byName, lat, lng, version);
+            copy.reverse.reverse = copy;
+        }
+        return copy;
+    }
+
+    // Copies offsets, heads and weights of a graph into direct memory.
+    private static IntArray[] copyArcs(RouteGraph g)
+    {
+        int n = g.numVertices();
+        int m = g.numArcs();
+        IntArray offsets = new IntArray(n + 1L);
+        IntArray heads = new IntArray(m);
+        IntArray weights = new IntArray(m);
+        for (int v = 0; v < n; v++) {
+            offsets.set(v, g.arcBegin(v));
+        }
+        offsets.set(n, m);
+        for (int a = 0; a < m; a++) {
+            heads.set(a, g.arcHead(a));
+            weights.set(a, g.arcWeight(a));
+        }
+        return new IntArray[] {offsets, heads, weights};
+    }
+
+    // --- RouteGraph ---
+
+    @Override
+    public int numVertices()
+    {
+        return n;
+    }
+
+    @Override
+    public int numArcs()
+    {
+        return m;
+    }
+
+    @Override
+    public int arcBegin(int v)
+    {
+        return offsets.get(v);
+    }
+
+    @Override
+    public int arcEnd(int v)
+    {
+        return offsets.get(v + 1);
+    }
+
+    @Override
+    public int arcHead(int a)
+    {
+        return heads.get(a);
+    }
+
+    @Override
+    public int arcWeight(int a)
+    {
+        return weights.get(a);
+    }
+
+    @Override
+    public int arcCost(int a, boolean isTimeCost)
+    {
+        return Graph_M.edgeCost(weights.get(a), isTimeCost);
+    }
+
+    @Override
+    public RouteGraph reverse()
+    {
+        return reverse;
+    }
+
+    @Override
+    public String name(int v)
+    {
+        int from = nameStart.get(v);
+        byte[] bytes = new byte[nameStart.get(v + 1) - from];
+        names.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int idOf(String name)
+    {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = byName.get(mid);
+            int c = compareName(v, key);
+            if (c == 0) {
+                return v;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double lat(int v)
+    {
+        return lat.get(v);
+    }
+
+    @Override
+    public double lng(int v)
+    {
+        return lng.get(v);
+    }
+
+    // Unsigned byte comparison of vertex v's stored name against key, without decoding it.
+    private int compareName(int v, byte[] key)
+    {
+        int from = nameStart.get(v);
+        int len = nameStart.get(v + 1) - from;
+        int common = Math.min(len, key.length);
+        for (int i = 0; i < common; i++) {
+            int c = Byte.toUnsignedInt(names.get(from + i)) - Byte.toUnsignedInt(key[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return len - key.length;
+    }
+
+    /**
+     * @return Bytes of direct memory held by this graph.
+     */
+    public long offHeapBytes()
+    {
+        long bytes = 4L * (offsets.length + heads.length + weights.length + nameStart.length + byName.length)
+                + 8L * (lat.length + lng.length) + names.capacity();
+        if (reverse != this) {
+            bytes += 4L * (reverse.offsets.length + reverse.heads.length + reverse.weights.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Fixed-length int array in direct memory, split into 1 GiB chunks.
+     */
+    static final class IntArray
+    {
+        final long length;
+        private final IntBuffer[] chunks;
+
+        IntArray(long length) {
+            this.length = length;
+            int count = (int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+            chunks = new IntBuffer[Math.max(1, count)];
+            long left = length;
+            for (int i = 0; i < chunks.length; i++) {
+                int ints = (int) Math.min(left, 1L << CHUNK_SHIFT);
+                chunks[i] = ByteBuffer.allocateDirect(ints * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+                left -= ints;
+            }
+        }
+
+        int get(long i) {
+            return chunks[(int) (i >>> CHUNK_SHIFT)].get((int) (i & CHUNK_MASK));
+        }
+
+        void set(long i, int v) {
+            chunks[(int) (i >>> CHUNK_SHIFT)].put((int) (i & CHUNK_MASK), v);
+        }
+    }
+
+    /**
+     * Fixed-length double array in direct memory, split into 1 GiB chunks.
+     */
+    static final class DoubleArray
+    {
+        final long length;
+        private final DoubleBuffer[] chunks;
+
+        DoubleArray(long length) {
+            this.length = length;
+            int count = (int) ((length + DOUBLE_CHUNK_MASK) >>> DOUBLE_CHUNK_SHIFT);
+            chunks = new DoubleBuffer[Math.max(1, count)];
+            long left = length;
+            for (int i = 0; i < chunks.length; i++) {
+                int doubles = (int) Math.min(left, 1L << DOUBLE_CHUNK_SHIFT);
+                chunks[i] = ByteBuffer.allocateDirect(doubles * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+                left -= doubles;
+            }
+        }
+
+        double get(long i) {
+            return chunks[(int) (i >>> DOUBLE_CHUNK_SHIFT)].get((int) (i & DOUBLE_CHUNK_MASK));
+        }
+
+        void set(long i, double v) {
+            chunks[(int) (i >>> DOUBLE_CHUNK_SHIFT)].put((int) (i & DOUBLE_CHUNK_MASK), v);
+        }
+    }
+
+    /**
+     * Benchmark: heap footprint and query speed of the on-heap vs off-heap layout.
+     * Usage: java -XX:MaxDirectMemorySize=4g OffHeapGraph [vertices=1000000] [avgDegree=6]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        CompactGraph onHeap = SyntheticNetwork.generate(n, degree, 800, 42);
+        long heapWithCompact = usedHeap();
+        OffHeapGraph offHeap = copyOf(onHeap);
+
+        int[] sources = {0, n / 3, 2 * n / 3};
+        long onHeapNanos = 0, offHeapNanos = 0;
+        boolean identical = true;
+        for (int src : sources) {
+            long t0 = System.nanoTime();
+            int[] a = CompactDijkstra.allCosts(onHeap, src, false);
+            long t1 = System.nanoTime();
+            int[] b = CompactDijkstra.allCosts(offHeap, src, false);
+            long t2 = System.nanoTime();
+            onHeapNanos += t1 - t0;
+            offHeapNanos += t2 - t1;
+            identical &= Arrays.equals(a, b);
+        }
+        onHeap = null; // Drop the on-heap copy before measuring again
+        long heapWithOffHeap = usedHeap();
+
+        System.out.println("Vertices: " + n + ", arcs: " + offHeap.numArcs());
+        System.out.printf("Heap used with CompactGraph: %d MB, with OffHeapGraph only: %d MB%n",
+                heapWithCompact >> 20, heapWithOffHeap >> 20);
+        System.out.printf("Direct memory: graph %d MB, JVM direct pool %d MB%n",
+                offHeap.offHeapBytes() >> 20, directPoolBytes() >> 20);
+        System.out.printf("One-to-all Dijkstra: on-heap %.1f ms, off-heap %.1f ms (avg), results %s%n",
+                onHeapNanos / 1e6 / sources.length, offHeapNanos / 1e6 / sources.length,
+                identical ? "identical" : "MISMATCH");
+    }
+
+    private static long usedHeap()
+    {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long directPoolBytes()
+    {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Aggregated, lock-free instrumentation for route queries.
+ * Every query records its settled nodes, relaxed edges, heap operations, wall time and allocated bytes
+ * into histograms grouped by cost metric ("distance" / "time") and search strategy ("dijkstra", ...).
+ * The global registry is cheap enough to leave on permanently and can be exported as text or JSON.
+ */
+public class QueryMetrics
+{
+    /**
+     * All histograms for one (metric, strategy) combination.
+     */
+    public static class Series
+    {
+        final String metric;
+        final String strategy;
+        final LogHistogram settled = new LogHistogram();   // Vertices removed from the queue and expanded
+        final LogHistogram relaxed = new LogHistogram();   // Edges examined during expansion
+        final LogHistogram heapOps = new LogHistogram();   // add / remove / decrease-key calls on the queue
+        final LogHistogram wallNanos = new LogHistogram(); // Wall-clock time per query
+        final LogHistogram allocBytes = new LogHistogram(); // Bytes allocated by the querying thread
+
+        Series(String metric, String strategy) {
+            this.metric = metric;
+            this.strategy = strategy;
+        }
+
+        /**
+         * Records a finished query into this series.
+         */
+        void record(long settledCount, long relaxedCount, long heapOpCount, long nanos, long bytes) {
+            settled.record(settledCount);
+            relaxed.record(relaxedCount);
+            heapOps.record(heapOpCount);
+            wallNanos.record(nanos);
+            if (bytes >= 0) {
+                allocBytes.record(bytes);
+            }
+        }
+
+        public long queries() {
+            return wallNanos.count();
+        }
+
+        void reset() {
+            settled.reset();
+            relaxed.reset();
+            heapOps.reset();
+            wallNanos.reset();
+            allocBytes.reset();
+        }
+    }
+
+    private static final QueryMetrics GLOBAL = new QueryMetrics();
+
+    // metric -> strategy -> series. Nested maps avoid building a composite key string on every query.
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Series>> series = new ConcurrentHashMap<>();
+
+    /**
+     * @return The process-wide metrics registry used by all route engines.
+     */
+    public static QueryMetrics global()
+    {
+        return GLOBAL;
+    }
+
+    /**
+     * Returns the metric name used for a cost type, matching the isTimeCost flag of the search methods.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return "time" or "distance".
+     */
+    public static String metricName(boolean isTimeCost)
+    {
+        return isTimeCost ? "time" : "distance";
+    }
+
+    /**
+     * Returns (creating on first use) the series for a metric and strategy.
+     * @param metric   The cost metric name.
+     * @param strategy The search strategy name.
+     * @return The series to record into.
+     */
+    public Series series(String metric, String strategy)
+    {
+        ConcurrentHashMap<String, Series> byStrategy = series.get(metric);
+        if (byStrategy == null) {
+            byStrategy = series.computeIfAbsent(metric, k -> new ConcurrentHashMap<>());
+        }
+        Series s = byStrategy.get(strategy);
+        if (s == null) {
+            s = byStrategy.computeIfAbsent(strategy, k -> new Series(metric, strategy));
+        }
+        return s;
+    }
+
+    /**
+     * @return All series with at least one query since the last reset, sorted by metric then strategy.
+     */
+    public ArrayList<Series> allSeries()
+    {
+        ArrayList<Series> all = new ArrayList<>();
+        for (Map<String, Series> byStrategy : series.values()) {
+            for (Series s : byStrategy.values()) {
+                if (s.queries() > 0) {
+                    all.add(s);
+                }
+            }
+        }
+        Collections.sort(all, (a, b) -> {
+            int c = a.metric.compareTo(b.metric);
+            return c != 0 ? c : a.strategy.compareTo(b.strategy);
+        });
+        return all;
+    }
+
+    /**
+     * Clears every series (e.g. between benchmark phases). The series are emptied in place rather than
+     * dropped, so queries that already hold one keep recording into the registry; a query finishing
+     * during the reset may keep some of its values and lose others.
+     */
+    public void reset()
+    {
+        for (Map<String, Series> byStrategy : series.values()) {
+            for (Series s : byStrategy.values()) {
+                s.reset();
+            }
+        }
+    }
+
+    // --- Export ---
+
+    /**
+     * Renders a human-readable snapshot of all series.
+     * @return A multi-line text report.
+     */
+    public String toText()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n\t Route Query Metrics\n");
+        sb.append("\t------------------\n");
+        for (Series s : allSeries()) {
+            sb.append(s.metric).append(" / ").append(s.strategy).append(" : ").append(s.queries()).append(" queries\n");
+            appendText(sb, "settled", s.settled);
+            appendText(sb, "relaxed", s.relaxed);
+            appendText(sb, "heap ops", s.heapOps);
+            appendText(sb, "wall ns", s.wallNanos);
+            appendText(sb, "alloc B", s.allocBytes);
+        }
+        return sb.toString();
+    }
+
+    private static void appendText(StringBuilder sb, String label, LogHistogram h)
+    {
+        sb.append(String.format(Locale.ROOT, "\t%-9s mean=%-12.1f p50=%-10d p99=%-10d p999=%-10d max=%d%n",
+                label, h.mean(), h.percentile(50), h.percentile(99), h.percentile(99.9), h.max()));
+    }
+
+    /**
+     * Writes a JSON snapshot of all series, e.g.
+     * {"series":[{"metric":"distance","strategy":"dijkstra","queries":3,"settled":{...},...}]}
+     * @param out The writer to encode into.
+     */
+    public void writeJson(JsonWriter out)
+    {
+        out.beginObject().name("series").beginArray();
+        for (Series s : allSeries()) {
+            out.beginObject()
+               .name("metric").value(s.metric)
+               .name("strategy").value(s.strategy)
+               .name("queries").value(s.queries());
+            writeJson(out, "settled", s.settled);
+            writeJson(out, "relaxed", s.relaxed);
+            writeJson(out, "heapOps", s.heapOps);
+            writeJson(out, "wallNanos", s.wallNanos);
+            writeJson(out, "allocBytes", s.allocBytes);
+            out.endObject();
+        }
+        out.endArray().endObject();
+    }
+
+    private static void writeJson(JsonWriter out, String label, LogHistogram h)
+    {
+        out.name(label).beginObject()
+           .name("count").value(h.count())
+           .name("mean").value(h.mean(), 1)
+           .name("p50").value(h.percentile(50))
+           .name("p90").value(h.percentile(90))
+           .name("p99").value(h.percentile(99))
+           .name("p999").value(h.percentile(99.9))
+           .name("max").value(h.max())
+           .endObject();
+    }
+}
@@ -0,0 +1,410 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses the route engine for each query, so callers ask for a route or a value and not for an
+ * algorithm.
+ *
+ * A query is first looked up in the RouteCache (if the planner has one). On a miss the planner picks
+ * one of the engines that can answer it right now:
+ *   hub-labels     label merge; only while an index for the current graph version exists
+ *   alt            landmark A*; only while landmark tables for the current graph version exist
+ *   bidirectional  always available (pooled search state over the current RouteGraph)
+ *   dijkstra       Graph_M.dijkstra, the reference search; always available
+ * Indexes are never built on the query path. Once the graph has gone -Dflight.planner.settleMs
+ * (default 2000) without a change, a missing index is built in the background, so a network that is
+ * being edited keeps using the index-free searches instead of rebuilding after every change.
+ *
+ * Queries are grouped by type (value or path) and by the great-circle distance between the airports
+ * (near, mid, far, or unlocated). Within a group the planner learns which engine is fastest on this
+ * data: it tries every available engine a few times, then takes the one with the lowest median latency
+ * over its recent samples. The first runs of an engine (JIT compilation, cold caches) are not counted,
+ * and a median is not moved by a single GC pause the way an average is. On a small fraction of queries
+ * it still explores, picking the other engine with the fewest samples, so that the medians of the
+ * engines not currently chosen stay current. Decisions and latencies are exported with {@link #toText()} and
+ * {@link #writeJson}; the engines themselves keep recording their work into QueryMetrics as before.
+ */
+public class QueryPlanner
+{
+    static final String[] STRATEGIES = {"hub-labels", "alt", "bidirectional", "dijkstra"};
+    static final int HUB_LABELS = 0, ALT = 1, BIDIRECTIONAL = 2, DIJKSTRA = 3;
+    static final String[] KINDS = {"value", "path"};
+    static final String[] BUCKETS = {"near", "mid", "far", "unlocated"};
+    static final double NEAR_KM = 1500, MID_KM = 5000;
+
+    static final int WARMUP = 3;               // First runs per engine and group, not counted
+    static final int MIN_SAMPLES = 5;          // Counted runs per engine and group before its median is trusted
+    static final int WINDOW = 31;              // Recent latencies the median is taken over
+    static final double EXPLORE_RATE = 0.05;   // Share of queries that go to another engine
+
+    /**
+     * Latency statistics of one engine within one query group.
+     */
+    private static final class Arm {
+        final LogHistogram nanos = new LogHistogram();  // Every counted latency, for the report
+        final long[] recent = new long[WINDOW];         // Ring buffer of the latest counted latencies
+        long runs;            // Times the engine ran, warm-up included
+        long median;          // Median of the recent latencies in ns
+        long chosen;          // Times the planner picked this engine
+        long explored;        // ... of which to explore
+
+        void record(long latency) {
+            if (++runs <= WARMUP) {
+                return;
+            }
+            long counted = nanos.count();
+            recent[(int) (counted % WINDOW)] = latency;
+            nanos.record(latency);
+            int size = (int) Math.min(counted + 1, WINDOW);
+            long[] sorted = Arrays.copyOf(recent, size);
+            Arrays.sort(sorted);
+            median = sorted[size / 2];
+        }
+
+        // True while the engine still needs runs before its median can be compared.
+        boolean learning() {
+            return runs < WARMUP + MIN_SAMPLES;
+        }
+    }
+
+    private final Graph_M graph;
+    private final RouteCache cache;
+    private final long settleNanos;
+    private final Arm[][][] arms = new Arm[KINDS.length][BUCKETS.length][STRATEGIES.length];
+    // Reusable search state per metric, replaced with a new pool when the graph or landmark tables change
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final SearchPool<BidirectionalDijkstra>[] bidirectionalPools = new SearchPool[2];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final SearchPool<AltSearch>[] altPools = new SearchPool[2];
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder indexBuilds = new LongAdder();
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private volatile RouteGraph seenGraph;   // Graph version seen last, and since when
+    private volatile long seenSince;
+
+    /**
+     * @param graph The flight graph, used by the dijkstra engine.
+     * @param cache The route cache to consult first, or null for none.
+     */
+    public QueryPlanner(Graph_M graph, RouteCache cache)
+    {
+        this.graph = graph;
+        this.cache = cache;
+        this.settleNanos = Long.getLong("flight.planner.settleMs", 2000) * 1_000_000L;
+        for (Arm[][] byBucket : arms) {
+            for (Arm[] group : byBucket) {
+                for (int i = 0; i < group.length; i++) {
+                    group[i] = new Arm();
+                }
+            }
+        }
+    }
+
+    /**
+     * Full path query, with the same raw format as Graph_M.dijkstra.
+     * @param src        Source airport full name.
+     * @param des        Destination airport full name.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return A raw PathResult (stations set) or the usual error indicators.
+     */
+    public Graph_M.PathResult route(String src, String des, boolean isTimeCost)
+    {
+        Graph_M.PathResult result = lookup(src, des, isTimeCost, true);
+        if (result == null) {
+            int version = Graph_M.version;
+            result = search(src, des, isTimeCost, true);
+            store(src, des, isTimeCost, result, version);
+        }
+        return result;
+    }
+
+    /**
+     * Value-only query (menu options 3 and 4, /distance and /time).
+     * @return A PathResult with the cost (the path may be empty), or the usual error indicators.
+     */
+    public Graph_M.PathResult value(String src, String des, boolean isTimeCost)
+    {
+        Graph_M.PathResult result = lookup(src, des, isTimeCost, false);
+        return result != null ? result : search(src, des, isTimeCost, false);
+    }
+
+    /**
+     * Looks a query up in the cache and counts the hit or miss.
+     * @param needPath False for a value-only query, which gets a result without the path.
+     * @return The cached result, or null if there is none (or no cache).
+     */
+    public Graph_M.PathResult lookup(String src, String des, boolean isTimeCost, boolean needPath)
+    {
+        if (cache == null) {
+            return null;
+        }
+        Graph_M.PathResult hit = cache.get(src, des, isTimeCost);
+        if (hit == null) {
+            cacheMisses.increment();
+            return null;
+        }
+        cacheHits.increment();
+        return needPath || hit.totalCost == -1 ? hit : new Graph_M.PathResult("", hit.totalCost, 0);
+    }
+
+    /**
+     * Caches a searched path result, if the planner has a cache.
+     * @param version Graph_M.version read before the search (see RouteCache.put).
+     */
+    public void store(String src, String des, boolean isTimeCost, Graph_M.PathResult result, int version)
+    {
+        if (cache != null) {
+            cache.put(src, des, isTimeCost, result, version);
+        }
+    }
+
+    /**
+     * Path search without the cache, e.g. as the search behind a RouteCoalescer.
+     */
+    public Graph_M.PathResult searchPath(String src, String des, boolean isTimeCost)
+    {
+        return search(src, des, isTimeCost, true);
+    }
+
+    /**
+     * Picks an engine for the query, runs it and records its latency.
+     * @param needPath True for a path query, false if only the cost is needed.
+     * @return The engine's result.
+     */
+    public Graph_M.PathResult search(String src, String des, boolean isTimeCost, boolean needPath)
+    {
+        RouteGraph g = RouteGraph.current();
+        buildIndexesIfSettled(g, isTimeCost);
+        HubLabels labels = HubLabels.peek(isTimeCost);
+        AltLandmarks landmarks = AltLandmarks.peek(isTimeCost);
+        Arm[] group = arms[needPath ? 1 : 0][bucket(g, src, des)];
+        int strategy = choose(group, labels != null, landmarks != null);
+
+        long began = System.nanoTime();
+        Graph_M.PathResult result;
+        switch (strategy) {
+            case HUB_LABELS:
+                result = needPath ? labels.queryPath(src, des) : labels.queryValue(src, des);
+                break;
+            case ALT: {
+                SearchPool<AltSearch> pool = SearchPool.forGraph(altPools, isTimeCost ? 1 : 0, landmarks.graph,
+                        lg -> new AltSearch(landmarks));
+                AltSearch alt = pool.acquire();
+                try {
+                    result = alt.queryPath(src, des);
+                } finally {
+                    pool.release(alt);
+                }
+                break;
+            }
+            case BIDIRECTIONAL: {
+                SearchPool<BidirectionalDijkstra> pool = SearchPool.forGraph(bidirectionalPools, isTimeCost ? 1 : 0, g,
+                        bg -> new BidirectionalDijkstra(bg, isTimeCost));
+                BidirectionalDijkstra bidi = pool.acquire();
+                try {
+                    result = bidi.queryPath(src, des);
+                } finally {
+                    pool.release(bidi);
+                }
+                break;
+            }
+            default:
+                result = graph.dijkstra(src, des, isTimeCost);
+        }
+        long nanos = System.nanoTime() - began;
+        synchronized (group) {
+            group[strategy].record(nanos);
+        }
+        return result;
+    }
+
+    // Runs engines that are still learning first, else the fastest, except that now and then another
+    // engine is explored: the one with the fewest samples, so that the rarely chosen ones catch up first.
+    private static int choose(Arm[] group, boolean hasLabels, boolean hasLandmarks)
+    {
+        boolean[] available = {hasLabels, hasLandmarks, true, true};
+        synchronized (group) {
+            int pick = -1;
+            boolean explore = false;
+            for (int i = 0; i < group.length && pick == -1; i++) {
+                if (available[i] && group[i].learning()) {
+                    pick = i;
+                    explore = true;
+                }
+            }
+            if (pick == -1) {
+                for (int i = 0; i < group.length; i++) {
+                    if (available[i] && (pick == -1 || group[i].median < group[pick].median)) {
+                        pick = i;
+                    }
+                }
+                if (ThreadLocalRandom.current().nextDouble() < EXPLORE_RATE) {
+                    int best = pick;
+                    for (int i = 0; i < group.length; i++) {
+                        if (available[i] && i != best && (pick == best || group[i].runs < group[pick].runs)) {
+                            pick = i;
+                        }
+                    }
+                    explore = pick != best;
+                }
+            }
+            group[pick].chosen++;
+            if (explore) {
+                group[pick].explored++;
+            }
+            return pick;
+        }
+    }
+
+    // Query group by great-circle distance between the two airports.
+    private static int bucket(RouteGraph g, String src, String des)
+    {
+        int s = g.idOf(src);
+        int t = g.idOf(des);
+        if (s == -1 || t == -1 || Double.isNaN(g.lat(s)) || Double.isNaN(g.lat(t))) {
+            return 3;
+        }
+        double km = GeoIndex.haversineKm(g.lat(s), g.lng(s), g.lat(t), g.lng(t));
+        return km < NEAR_KM ? 0 : km < MID_KM ? 1 : 2;
+    }
+
+    // Starts a background build of the missing indexes once the graph has stopped changing.
+    private void buildIndexesIfSettled(RouteGraph g, boolean isTimeCost)
+    {
+        long now = System.nanoTime();
+        if (seenGraph != g) {
+            seenGraph = g;
+            seenSince = now;
+            return;
+        }
+        if (now - seenSince < settleNanos || (HubLabels.peek(isTimeCost) != null && AltLandmarks.peek(isTimeCost) != null)
+                || !building.compareAndSet(false, true)) {
+            return;
+        }
+        Thread builder = new Thread(() -> {
+            try {
+                AltLandmarks.current(isTimeCost); // Cheap (2k searches), so usable first
+                HubLabels.current(isTimeCost);
+                indexBuilds.increment();
+            } finally {
+                building.set(false);
+            }
+        }, "planner-index-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * @return The number of background index builds completed so far.
+     */
+    public long indexBuilds()
+    {
+        return indexBuilds.sum();
+    }
+
+    /**
+     * Renders the planner's decisions: cache hits, then per query group how often each engine was
+     * chosen (and explored), the median of its recent latencies and its overall latency percentiles.
+     * @return A multi-line text report.
+     */
+    public String toText()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("\n\t Query Planner\n");
+        sb.append("\t------------------\n");
+        sb.append(String.format(Locale.ROOT, "cache hits=%d misses=%d, index builds=%d%n",
+                cacheHits.sum(), cacheMisses.sum(), indexBuilds.sum()));
+        for (int k = 0; k < KINDS.length; k++) {
+            for (int b = 0; b < BUCKETS.length; b++) {
+                Arm[] group = arms[k][b];
+                synchronized (group) {
+                    for (int i = 0; i < group.length; i++) {
+                        Arm a = group[i];
+                        if (a.chosen > 0) {
+                            sb.append(String.format(Locale.ROOT, "\t%-5s %-9s %-13s chosen=%-8d explored=%-6d recent ns=%-10d p50=%-10d p99=%d%n",
+                                    KINDS[k], BUCKETS[b], STRATEGIES[i], a.chosen, a.explored, a.median,
+                                    a.nanos.percentile(50), a.nanos.percentile(99)));
+                        }
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the planner's decisions as JSON, e.g.
+     * {"cacheHits":3,"cacheMisses":5,"indexBuilds":1,"groups":[{"kind":"path","distance":"far",
+     *  "strategy":"hub-labels","chosen":4,"explored":1,"recentNanos":5120,"p50":4095,"p99":8191},...]}
+     * where recentNanos is the median of the recent latencies the planner compares engines by.
+     * @param out The writer to encode into.
+     */
+    public void writeJson(JsonWriter out)
+    {
+        out.beginObject()
+           .name("cacheHits").value(cacheHits.sum())
+           .name("cacheMisses").value(cacheMisses.sum())
+           .name("indexBuilds").value(indexBuilds.sum())
+           .name("groups").beginArray();
+        for (int k = 0; k < KINDS.length; k++) {
+            for (int b = 0; b < BUCKETS.length; b++) {
+                Arm[] group = arms[k][b];
+                synchronized (group) {
+                    for (int i = 0; i < group.length; i++) {
+                        Arm a = group[i];
+                        if (a.chosen == 0) {
+                            continue;
+                        }
+                        out.beginObject()
+                           .name("kind").value(KINDS[k])
+                           .name("distance").value(BUCKETS[b])
+                           .name("strategy").value(STRATEGIES[i])
+                           .name("chosen").value(a.chosen)
+                           .name("explored").value(a.explored)
+                           .name("recentNanos").value(a.median)
+                           .name("p50").value(a.nanos.percentile(50))
+                           .name("p99").value(a.nanos.percentile(99))
+                           .endObject();
+                    }
+                }
+            }
+        }
+        out.endArray().endObject();
+    }
+
+    /**
+     * Benchmark: a Zipf query mix on the built-in map through the planner, reporting what it learned,
+     * and a check that every answer matches Graph_M.dijkstra.
+     * Usage: java QueryPlanner [queries=20000]
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Graph_M g = new Graph_M();
+        Graph_M.Create_Metro_Map(g);
+        QueryPlanner planner = new QueryPlanner(g, new RouteCache(64));
+        LoadGenerator mix = LoadGenerator.zipf(2_000, 1.0, "mixed", 7);
+        int wrong = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            int q = i % mix.src.length;
+            boolean needPath = (i & 1) == 0;
+            Graph_M.PathResult r = needPath ? planner.route(mix.src[q], mix.des[q], mix.isTimeCost[q])
+                                            : planner.value(mix.src[q], mix.des[q], mix.isTimeCost[q]);
+            if (r.totalCost != g.dijkstra(mix.src[q], mix.des[q], mix.isTimeCost[q]).totalCost) {
+                wrong++;
+            }
+            if (i == count / 4) {
+                Thread.sleep(planner.settleNanos / 1_000_000 + 1); // Let the indexes get built
+            }
+        }
+        System.out.printf(Locale.ROOT, "%d queries in %.1f ms (with a reference search each), %d wrong%n",
+                count, (System.nanoTime() - t0) / 1e6, wrong);
+        System.out.println(planner.toText());
+    }
+}
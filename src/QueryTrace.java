@@ -0,0 +1,83 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Per-query counters filled in by a search engine while it runs.
+ * A trace is confined to the thread executing the query, so its counters are plain fields.
+ * Call {@link #start()} before the search and {@link #finish} once it completes; finishing
+ * records the query into {@link QueryMetrics} and emits a {@link RouteQueryEvent} when JFR is recording.
+ */
+public class QueryTrace
+{
+    // HotSpot's extended ThreadMXBean exposes per-thread allocation counters; null on other VMs.
+    private static final com.sun.management.ThreadMXBean ALLOC_BEAN = allocationBean();
+    // Allocation tracking can be switched off with -Dflight.metrics.alloc=false.
+    private static final boolean TRACK_ALLOC = ALLOC_BEAN != null
+            && !"false".equals(System.getProperty("flight.metrics.alloc"));
+
+    long settled;   // Vertices settled (removed from the queue and expanded)
+    long relaxed;   // Edges examined
+    long heapOps;   // Priority queue operations
+    private final long startNanos;
+    private final long startAlloc;
+
+    private QueryTrace(long startNanos, long startAlloc) {
+        this.startNanos = startNanos;
+        this.startAlloc = startAlloc;
+    }
+
+    /**
+     * Starts timing a new query on the current thread.
+     * @return A fresh trace.
+     */
+    public static QueryTrace start()
+    {
+        long alloc = TRACK_ALLOC ? ALLOC_BEAN.getCurrentThreadAllocatedBytes() : -1;
+        return new QueryTrace(System.nanoTime(), alloc);
+    }
+
+    /**
+     * Stops timing and records the query under the given metric and strategy.
+     * @param metric   Cost metric name (see {@link QueryMetrics#metricName(boolean)}).
+     * @param strategy Search strategy name (e.g. "dijkstra").
+     * @param src      Source airport, only used for the JFR event.
+     * @param des      Destination airport, only used for the JFR event.
+     * @param found    Whether a route was found.
+     */
+    public void finish(String metric, String strategy, String src, String des, boolean found)
+    {
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = TRACK_ALLOC && startAlloc >= 0 ? ALLOC_BEAN.getCurrentThreadAllocatedBytes() - startAlloc : -1;
+        QueryMetrics.global().series(metric, strategy).record(settled, relaxed, heapOps, nanos, bytes);
+
+        RouteQueryEvent event = new RouteQueryEvent();
+        if (event.isEnabled()) {
+            event.source = src;
+            event.destination = des;
+            event.metric = metric;
+            event.strategy = strategy;
+            event.found = found;
+            event.settled = settled;
+            event.relaxed = relaxed;
+            event.heapOps = heapOps;
+            event.wallTime = nanos;
+            event.allocatedBytes = bytes;
+            event.commit();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean()
+    {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+                if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                    return sunBean;
+                }
+            }
+        } catch (Throwable t) {
+            // Management API unavailable (e.g. minimal runtime image): fall through without allocation stats.
+        }
+        return null;
+    }
+}
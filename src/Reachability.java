@@ -0,0 +1,403 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded single-source exploration: every airport reachable from an origin within a cost budget and,
+ * optionally, a limit on the number of flights ("within 6 hours and at most 1 connection" is a time
+ * budget of 21600 with maxHops = 2).
+ *
+ * The search stops at the budget and resets only the entries it touched, so its cost depends on the
+ * size of the explored frontier rather than on the size of the network. With a hop limit it runs over
+ * (airport, flights taken) states and keeps a state only if no cheaper-or-equal state with fewer
+ * flights has been settled, so an airport is reported at the cheapest cost that respects the limit.
+ * States are created when first reached and chained per airport, so the search state grows with the
+ * explored frontier, not with airports times the hop limit.
+ *
+ * Results are kept per (origin, hop limit, metric) for the current graph snapshot. A query whose budget
+ * is within one already explored is answered with a prefix of the cached result, because results are
+ * listed in cost order.
+ */
+public class Reachability
+{
+    static final int INF = Integer.MAX_VALUE;
+
+    /**
+     * maxHops value for "any number of flights".
+     */
+    public static final int UNLIMITED = -1;
+
+    private static final int CACHE_ENTRIES = 1024;
+    private static final int INITIAL_STATES = 64;
+
+    /**
+     * Airports reachable from one origin, in ascending cost order. Entries [0, count) of the arrays are
+     * valid; the arrays may be shared with the cache and must not be modified.
+     */
+    public static final class Result {
+        final RouteGraph graph;
+        public final int origin;
+        public final int budget;
+        public final int maxHops;
+        public final int count;
+        public final int[] ids;     // reachable vertex ids (origin excluded)
+        public final int[] costs;   // cost of the cheapest route within the hop limit
+        public final int[] hops;    // flights on that route
+        final boolean exhaustive;   // true if nothing beyond the budget was reachable either
+
+        Result(RouteGraph graph, int origin, int budget, int maxHops, int count,
+               int[] ids, int[] costs, int[] hops, boolean exhaustive) {
+            this.graph = graph;
+            this.origin = origin;
+            this.budget = budget;
+            this.maxHops = maxHops;
+            this.count = count;
+            this.ids = ids;
+            this.costs = costs;
+            this.hops = hops;
+            this.exhaustive = exhaustive;
+        }
+
+        /**
+         * @return The full airport name of entry i.
+         */
+        public String name(int i) {
+            return graph.name(ids[i]);
+        }
+
+        // True if this result contains the answer for a smaller or equal budget.
+        boolean covers(int smallerBudget) {
+            return smallerBudget <= budget || exhaustive;
+        }
+
+        // The entries within a smaller budget, sharing this result's arrays.
+        Result within(int smallerBudget) {
+            if (smallerBudget >= budget && (exhaustive || smallerBudget == budget)) {
+                return this;
+            }
+            int lo = 0, hi = count; // first entry costing more than smallerBudget
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (costs[mid] <= smallerBudget) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return new Result(graph, origin, smallerBudget, maxHops, lo, ids, costs, hops, false);
+        }
+    }
+
+    private final RouteGraph g;
+    private final boolean isTimeCost;
+    private final int n;
+
+    // Search state over (vertex, hops) states, numbered in creation order. With a hop limit a vertex
+    // has one state per flight count it was reached with; without one, a single state per vertex.
+    private final int[] firstState;  // vertex -> its most recent state, -1 if none
+    private int[] nextState;         // state -> previous state of the same vertex, -1 if none
+    private int[] vertexOf;          // state -> vertex
+    private int[] dist;
+    private int[] hopOf;             // flights on the tentative route to a state
+    private int stateCount = 0;
+    private long[] pq;               // lazy min-heap of (cost << 32 | state); stale entries are skipped
+    private int pqSize = 0;
+    private final int retainedStates; // state arrays larger than this are dropped after a query
+    private final int[] fewestHops;  // vertex -> fewest flights among its settled states, INF if none
+    private final int[] settledList;
+    private int settledCount = 0;
+
+    // Result buffer, copied out once per search
+    private final int[] outIds, outCosts, outHops;
+
+    // Work counters of the last query
+    long settled, relaxed, heapOps;
+
+    // Reusable engines per metric, replaced with a new pool when the graph snapshot changes.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final SearchPool<Reachability>[] POOLS = new SearchPool[2];
+
+    private static RouteGraph cacheGraph;
+    private static final LinkedHashMap<Long, Result> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Result> eldest) {
+            return size() > CACHE_ENTRIES;
+        }
+    };
+
+    /**
+     * @param g          The graph to search.
+     * @param isTimeCost True for the time metric, false for distance.
+     */
+    public Reachability(RouteGraph g, boolean isTimeCost)
+    {
+        this.g = g;
+        this.isTimeCost = isTimeCost;
+        this.n = g.numVertices();
+        firstState = new int[n];
+        Arrays.fill(firstState, -1);
+        retainedStates = Math.max(INITIAL_STATES, n);
+        allocateStates(INITIAL_STATES);
+        fewestHops = new int[n];
+        Arrays.fill(fewestHops, INF);
+        settledList = new int[n];
+        outIds = new int[n];
+        outCosts = new int[n];
+        outHops = new int[n];
+    }
+
+    /**
+     * Explores from an origin up to a cost budget without using the cache.
+     * @param origin  Origin vertex id.
+     * @param budget  Largest cost to include (km or seconds, as for the metric).
+     * @param maxHops Largest number of flights, or UNLIMITED.
+     * @return The reachable airports in ascending cost order.
+     */
+    public Result explore(int origin, int budget, int maxHops)
+    {
+        boolean limited = maxHops != UNLIMITED && maxHops < n - 1;
+        if (maxHops < 0 && maxHops != UNLIMITED) {
+            throw new IllegalArgumentException("maxHops must be non-negative or UNLIMITED");
+        }
+        reset();
+        int count = 0;
+        boolean exhaustive = true;
+
+        push(origin, 0, 0, limited);
+        while (pqSize > 0) {
+            long top = pop();
+            heapOps++;
+            int state = (int) top;
+            int d = dist[state];
+            if ((int) (top >>> 32) != d) {
+                continue; // Superseded by a cheaper push of the same state
+            }
+            int v = vertexOf[state];
+            int h = hopOf[state];
+            if (fewestHops[v] <= h) {
+                continue; // A cheaper-or-equal route with no more flights is already settled
+            }
+            settled++;
+            if (fewestHops[v] == INF) {
+                settledList[settledCount++] = v;
+                if (v != origin) {
+                    outIds[count] = v;
+                    outCosts[count] = d;
+                    outHops[count] = h;
+                    count++;
+                }
+            }
+            fewestHops[v] = h;
+            if (limited && h == maxHops) {
+                continue;
+            }
+            for (int a = g.arcBegin(v), end = g.arcEnd(v); a < end; a++) {
+                int w = g.arcHead(a);
+                relaxed++;
+                if (fewestHops[w] <= h + 1) {
+                    continue;
+                }
+                long nd = (long) d + g.arcCost(a, isTimeCost);
+                if (nd > budget) {
+                    exhaustive = false;
+                    continue;
+                }
+                push(w, (int) nd, h + 1, limited);
+            }
+        }
+        if (dist.length > retainedStates || pq.length > retainedStates) {
+            clearStates(); // A pooled engine keeps only O(n) memory between queries
+            allocateStates(INITIAL_STATES);
+        }
+        return new Result(g, origin, budget, limited ? maxHops : UNLIMITED, count,
+                Arrays.copyOf(outIds, count), Arrays.copyOf(outCosts, count), Arrays.copyOf(outHops, count),
+                exhaustive);
+    }
+
+    /**
+     * Airports reachable from an origin on the current graph, served from the cache when an earlier
+     * query from the same origin already explored at least this far.
+     * @param origin     Origin airport full name.
+     * @param budget     Largest cost to include (km or seconds, as for the metric).
+     * @param maxHops    Largest number of flights, or UNLIMITED.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return The reachable airports, or null if the origin is unknown.
+     */
+    public static Result reachable(String origin, int budget, int maxHops, boolean isTimeCost)
+    {
+        QueryTrace trace = QueryTrace.start();
+        RouteGraph g = RouteGraph.current();
+        int s = g.idOf(origin);
+        Result result = null;
+        String strategy = "reachability";
+        if (s != -1) {
+            int hopKey = maxHops < 0 || maxHops >= g.numVertices() - 1 ? UNLIMITED : maxHops;
+            long key = ((long) s << 32) | ((long) (hopKey + 1) << 1) | (isTimeCost ? 1 : 0);
+            Result cached;
+            synchronized (CACHE) {
+                if (cacheGraph != g) {
+                    CACHE.clear();
+                    cacheGraph = g;
+                }
+                cached = CACHE.get(key);
+            }
+            if (cached != null && cached.covers(budget)) {
+                result = cached.within(budget);
+                strategy = "reachability-cache";
+            } else {
+                SearchPool<Reachability> pool = SearchPool.forGraph(POOLS, isTimeCost ? 1 : 0, g,
+                        graph -> new Reachability(graph, isTimeCost));
+                Reachability engine = pool.acquire();
+                try {
+                    result = engine.explore(s, budget, hopKey);
+                    trace.settled = engine.settled;
+                    trace.relaxed = engine.relaxed;
+                    trace.heapOps = engine.heapOps;
+                } finally {
+                    pool.release(engine);
+                }
+                synchronized (CACHE) {
+                    if (cacheGraph == g) {
+                        CACHE.put(key, result);
+                    }
+                }
+            }
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), strategy, origin, "*", result != null);
+        return result;
+    }
+
+    // Lowers the cost of the state of w with the given flights (any flights when unlimited), creating it
+    // on first reach.
+    private void push(int w, int cost, int hops, boolean limited)
+    {
+        int state = firstState[w];
+        while (state != -1 && limited && hopOf[state] != hops) {
+            state = nextState[state];
+        }
+        if (state == -1) {
+            if (stateCount == dist.length) {
+                growStates();
+            }
+            state = stateCount++;
+            vertexOf[state] = w;
+            nextState[state] = firstState[w];
+            firstState[w] = state;
+        } else if (cost >= dist[state]) {
+            return;
+        }
+        dist[state] = cost;
+        hopOf[state] = hops;
+        offer(((long) cost << 32) | state);
+        heapOps++;
+    }
+
+    private void allocateStates(int capacity)
+    {
+        nextState = new int[capacity];
+        vertexOf = new int[capacity];
+        dist = new int[capacity];
+        hopOf = new int[capacity];
+        pq = new long[capacity];
+    }
+
+    private void growStates()
+    {
+        int capacity = (int) Math.min(2L * dist.length, Integer.MAX_VALUE - 8);
+        if (capacity == dist.length) {
+            throw new IllegalStateException("Too many search states");
+        }
+        nextState = Arrays.copyOf(nextState, capacity);
+        vertexOf = Arrays.copyOf(vertexOf, capacity);
+        dist = Arrays.copyOf(dist, capacity);
+        hopOf = Arrays.copyOf(hopOf, capacity);
+    }
+
+    private void offer(long entry)
+    {
+        if (pqSize == pq.length) {
+            pq = Arrays.copyOf(pq, (int) Math.min(2L * pq.length, Integer.MAX_VALUE - 8));
+        }
+        int i = pqSize++;
+        while (i > 0 && pq[(i - 1) >>> 1] > entry) {
+            pq[i] = pq[(i - 1) >>> 1];
+            i = (i - 1) >>> 1;
+        }
+        pq[i] = entry;
+    }
+
+    private long pop()
+    {
+        long top = pq[0];
+        long last = pq[--pqSize];
+        int i = 0;
+        int half = pqSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < pqSize && pq[child + 1] < pq[child]) {
+                child++;
+            }
+            if (pq[child] >= last) {
+                break;
+            }
+            pq[i] = pq[child];
+            i = child;
+        }
+        if (pqSize > 0) {
+            pq[i] = last;
+        }
+        return top;
+    }
+
+    // Clears the state of the previous query.
+    private void reset()
+    {
+        clearStates();
+        for (int i = 0; i < settledCount; i++) {
+            fewestHops[settledList[i]] = INF;
+        }
+        settledCount = 0;
+        settled = relaxed = heapOps = 0;
+    }
+
+    private void clearStates()
+    {
+        for (int i = 0; i < stateCount; i++) {
+            firstState[vertexOf[i]] = -1;
+        }
+        stateCount = 0;
+        pqSize = 0;
+    }
+
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        CompactGraph g = SyntheticNetwork.generate(n, 6, 1000, 42);
+        Reachability engine = new Reachability(g, true);
+        java.util.Random rnd = new java.util.Random(7);
+        int budget = 2 * 120 + 40 * 800; // about one and a half average flights
+        for (int maxHops : new int[] {UNLIMITED, 2}) {
+            for (int warm = 0; warm < 200; warm++) {
+                engine.explore(rnd.nextInt(n), budget, maxHops);
+            }
+            int queries = 2000;
+            long reached = 0, work = 0;
+            long t0 = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                Result r = engine.explore(rnd.nextInt(n), budget, maxHops);
+                reached += r.count;
+                work += engine.settled;
+            }
+            long t1 = System.nanoTime();
+            System.out.printf("n=%d maxHops=%s: %.1f us/query, %.1f reached, %.1f settled per query%n",
+                    n, maxHops == UNLIMITED ? "any" : String.valueOf(maxHops),
+                    (t1 - t0) / 1e3 / queries, (double) reached / queries, (double) work / queries);
+        }
+        // Per-destination baseline: one full Dijkstra answers the same question for every origin
+        long t0 = System.nanoTime();
+        for (int q = 0; q < 200; q++) {
+            CompactDijkstra.allCosts(g, rnd.nextInt(n), true);
+        }
+        System.out.printf("full Dijkstra: %.1f us/query%n", (System.nanoTime() - t0) / 1e3 / 200);
+    }
+}
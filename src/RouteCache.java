@@ -0,0 +1,443 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Cache of full route results for hot airport pairs that survives restarts.
+ *
+ * Results are kept with an approximate hit count. When the cache is full, the least used quarter is
+ * dropped and the remaining counts are halved, so pairs that were hot yesterday fade out. Every entry
+ * belongs to one graph version; the first access after a mutation clears the cache.
+ *
+ * {@link #save} writes the hottest entries to a compact file (airport names once, stops as indexes
+ * into that table) tagged with a fingerprint of the graph; {@link #load} accepts the file only if the
+ * graph it is loaded into has the same fingerprint, so a restart with an unchanged network starts warm
+ * and a changed network never serves stale routes. The offline job in {@link #main} precomputes the
+ * top-N pairs of a query log (or the busiest hubs) in parallel and writes such a file.
+ */
+public class RouteCache
+{
+    static final int MAGIC = 0x46524331; // "FRC1"
+
+    private static final class Key {
+        final String src;
+        final String des;
+        final boolean isTimeCost;
+
+        Key(String src, String des, boolean isTimeCost) {
+            this.src = src;
+            this.des = des;
+            this.isTimeCost = isTimeCost;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return isTimeCost == k.isTimeCost && src.equals(k.src) && des.equals(k.des);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(src, des, isTimeCost);
+        }
+    }
+
+    private static final class Entry {
+        final Graph_M.PathResult result;
+        final AtomicInteger hits;
+
+        Entry(Graph_M.PathResult result, int hits) {
+            this.result = result;
+            this.hits = new AtomicInteger(hits);
+        }
+    }
+
+    private final int capacity;
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private volatile int version = Graph_M.version;
+
+    /**
+     * @param capacity Maximum number of cached routes.
+     */
+    public RouteCache(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached route for a pair and counts the hit.
+     * @return The raw result (shared, must not be modified), or null on a miss.
+     */
+    public Graph_M.PathResult get(String src, String des, boolean isTimeCost)
+    {
+        QueryTrace trace = QueryTrace.start();
+        checkVersion();
+        Entry e = entries.get(new Key(src, des, isTimeCost));
+        if (e == null) {
+            return null;
+        }
+        e.hits.incrementAndGet();
+        trace.finish(QueryMetrics.metricName(isTimeCost), "route-cache", src, des, true);
+        return e.result;
+    }
+
+    /**
+     * Caches a successful raw route result (with stations set), unless the graph has changed since the
+     * search started.
+     * @param version Graph_M.version read before the search; the result is dropped if it is not current.
+     */
+    public void put(String src, String des, boolean isTimeCost, Graph_M.PathResult result, int version)
+    {
+        if (result.totalCost == -1 || result.stations == null) {
+            return;
+        }
+        checkVersion();
+        synchronized (this) {
+            // Under the lock checkVersion clears with, so a stale result cannot slip in after a clear
+            if (version != this.version || version != Graph_M.version) {
+                return;
+            }
+            entries.putIfAbsent(new Key(src, des, isTimeCost), new Entry(result, 1));
+        }
+        if (entries.size() > capacity) {
+            evict();
+        }
+    }
+
+    /**
+     * @return The number of cached routes.
+     */
+    public int size()
+    {
+        return entries.size();
+    }
+
+    // Drops everything cached for an older graph.
+    private void checkVersion()
+    {
+        if (version != Graph_M.version) {
+            synchronized (this) {
+                if (version != Graph_M.version) {
+                    entries.clear();
+                    version = Graph_M.version;
+                }
+            }
+        }
+    }
+
+    // Removes the least used quarter and halves the remaining counts.
+    private synchronized void evict()
+    {
+        if (entries.size() <= capacity) {
+            return;
+        }
+        List<Map.Entry<Key, Entry>> all = sortedByHits();
+        for (int i = all.size() * 3 / 4; i < all.size(); i++) {
+            entries.remove(all.get(i).getKey(), all.get(i).getValue());
+        }
+        for (Entry e : entries.values()) {
+            e.hits.set(e.hits.get() >>> 1);
+        }
+    }
+
+    private List<Map.Entry<Key, Entry>> sortedByHits()
+    {
+        List<Map.Entry<Key, Entry>> all = new ArrayList<>(entries.entrySet());
+        all.sort((a, b) -> Integer.compare(b.getValue().hits.get(), a.getValue().hits.get()));
+        return all;
+    }
+
+    /**
+     * Precomputes routes in parallel and adds them to the cache.
+     * @param src        Source airport full names.
+     * @param des        Destination airport full names.
+     * @param isTimeCost Metric per pair.
+     * @param threads    Number of worker threads.
+     * @return The number of routes added.
+     */
+    public int precompute(String[] src, String[] des, boolean[] isTimeCost, int threads)
+        throws InterruptedException
+    {
+        int version = Graph_M.version;
+        RouteGraph g = RouteGraph.current();
+        ThreadLocal<BidirectionalDijkstra[]> engines = ThreadLocal.withInitial(() ->
+                new BidirectionalDijkstra[] {new BidirectionalDijkstra(g, false), new BidirectionalDijkstra(g, true)});
+        Graph_M.PathResult[] results = new Graph_M.PathResult[src.length];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, src.length).parallel().forEach(i ->
+                    results[i] = engines.get()[isTimeCost[i] ? 1 : 0].queryPath(src[i], des[i]))).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        int added = 0;
+        checkVersion();
+        synchronized (this) {
+            if (version != this.version || version != Graph_M.version) {
+                return 0; // The graph changed while computing
+            }
+            for (int i = 0; i < results.length; i++) {
+                if (results[i].totalCost != -1) {
+                    entries.put(new Key(src[i], des[i], isTimeCost[i]), new Entry(results[i], 1));
+                    added++;
+                }
+            }
+        }
+        if (entries.size() > capacity) {
+            evict();
+        }
+        return added;
+    }
+
+    /**
+     * Writes the hottest entries atomically: magic, graph fingerprint, airport name table, then per
+     * route its metric, cost, hits and stops (as name indexes), followed by a CRC32 trailer.
+     * @param file  The cache file.
+     * @param limit Maximum number of routes to write.
+     * @return The number of routes written.
+     */
+    public int save(Path file, int limit) throws IOException
+    {
+        checkVersion();
+        List<Map.Entry<Key, Entry>> hot = sortedByHits();
+        hot = hot.subList(0, Math.min(limit, hot.size()));
+        HashMap<String, Integer> nameIds = new HashMap<>();
+        ArrayList<String> names = new ArrayList<>();
+        for (Map.Entry<Key, Entry> e : hot) {
+            for (String station : e.getValue().result.stations) {
+                if (nameIds.putIfAbsent(station, names.size()) == null) {
+                    names.add(station);
+                }
+            }
+        }
+        boolean wide = names.size() > 0xFFFF;
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream raw = Files.newOutputStream(tmp);
+             CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), crc);
+             DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeInt(MAGIC);
+            out.writeLong(AltLandmarks.fingerprint(RouteGraph.current()));
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+            out.writeInt(hot.size());
+            for (Map.Entry<Key, Entry> e : hot) {
+                Graph_M.PathResult r = e.getValue().result;
+                out.writeBoolean(e.getKey().isTimeCost);
+                out.writeInt(r.totalCost);
+                out.writeInt(e.getValue().hits.get());
+                out.writeInt(r.stations.length);
+                for (String station : r.stations) {
+                    int id = nameIds.get(station);
+                    if (wide) {
+                        out.writeInt(id);
+                    } else {
+                        out.writeChar(id);
+                    }
+                }
+            }
+            out.flush();
+            out.writeLong(crc.getValue()); // Trailer, not itself covered by the checksum
+            out.flush();
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return hot.size();
+    }
+
+    /**
+     * Adds the routes of a cache file, if it was written for a graph identical to the current one.
+     * Routes without stops are skipped.
+     * @return The number of routes loaded; 0 if the file is missing, corrupt or for another graph.
+     */
+    public int load(Path file) throws IOException
+    {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+        if (bytes.length < 8 + 12) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue()) {
+            System.err.println("Warning: ignoring corrupt route cache " + file);
+            return 0;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+        checkVersion();
+        if (in.readInt() != MAGIC || in.readLong() != AltLandmarks.fingerprint(RouteGraph.current())) {
+            return 0;
+        }
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readUTF();
+        }
+        boolean wide = names.length > 0xFFFF;
+        int count = in.readInt();
+        int loaded = 0;
+        for (int i = 0; i < count; i++) {
+            boolean isTimeCost = in.readBoolean();
+            int cost = in.readInt();
+            int hits = in.readInt();
+            String[] stations = new String[in.readInt()];
+            for (int j = 0; j < stations.length; j++) {
+                stations[j] = names[wide ? in.readInt() : in.readChar()];
+            }
+            if (stations.length == 0) {
+                continue; // Not written by save(); there is no pair to key it by
+            }
+            Graph_M.PathResult r = new Graph_M.PathResult(String.join("###", stations), cost, 0);
+            r.stations = stations;
+            entries.put(new Key(stations[0], stations[stations.length - 1], isTimeCost), new Entry(r, hits));
+            loaded++;
+        }
+        if (entries.size() > capacity) {
+            evict();
+        }
+        return loaded;
+    }
+
+    /**
+     * @return The default cache file: route-cache.bin in -Dflight.data.dir, or null without one.
+     */
+    static Path defaultFile()
+    {
+        String dir = System.getProperty("flight.data.dir");
+        return dir == null ? null : Paths.get(dir, "route-cache.bin");
+    }
+
+    /**
+     * Offline job: precomputes the top-N pairs in parallel and writes a cache file, then compares a
+     * cold start (every pair through Graph_M.dijkstra) with a warm start (load the file, then look up).
+     * Pairs are the most frequent ones of a query log in LoadGenerator format, or else all pairs among
+     * the busiest airports.
+     * Usage: java RouteCache [--log=queries.tsv] [--top=5000] [--threads=4] [--metric=mixed] [--out=file]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        HashMap<String, String> opt = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (arg.startsWith("--") && eq > 0) {
+                opt.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        int top = Integer.parseInt(opt.getOrDefault("top", "5000"));
+        int threads = Integer.parseInt(opt.getOrDefault("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        String metric = opt.getOrDefault("metric", "mixed");
+        Path out = opt.containsKey("out") ? Paths.get(opt.get("out"))
+                : defaultFile() != null ? defaultFile() : Paths.get("route-cache.bin");
+
+        Graph_M g = new Graph_M();
+        String dataDir = System.getProperty("flight.data.dir");
+        if (dataDir == null || !MutationLog.open(Paths.get(dataDir), 1000).recovered()) {
+            Graph_M.Create_Metro_Map(g);
+        }
+
+        // Choose the pairs: by frequency in the log, or all pairs of the busiest airports
+        ArrayList<String[]> pairs = new ArrayList<>();
+        if (opt.containsKey("log")) {
+            LoadGenerator log = LoadGenerator.fromLog(opt.get("log"), metric);
+            HashMap<String, int[]> freq = new HashMap<>();
+            HashMap<String, String[]> byKey = new HashMap<>();
+            for (int i = 0; i < log.src.length; i++) {
+                String[] p = {log.src[i], log.des[i], QueryMetrics.metricName(log.isTimeCost[i])};
+                String k = String.join("\n", p);
+                freq.computeIfAbsent(k, x -> new int[1])[0]++;
+                byKey.putIfAbsent(k, p);
+            }
+            ArrayList<String> keys = new ArrayList<>(freq.keySet());
+            keys.sort((a, b) -> Integer.compare(freq.get(b)[0], freq.get(a)[0]));
+            for (String k : keys.subList(0, Math.min(top, keys.size()))) {
+                pairs.add(byKey.get(k));
+            }
+        } else {
+            String[] airports = Graph_M.vtces.keySet().toArray(new String[0]);
+            Arrays.sort(airports, (a, b) -> Integer.compare(Graph_M.vtces.get(b).nbrs.size(), Graph_M.vtces.get(a).nbrs.size()));
+            String[] metrics = metric.equals("mixed") ? new String[] {"distance", "time"} : new String[] {metric};
+            outer:
+            for (String a : airports) {
+                for (String b : airports) {
+                    for (String m : metrics) {
+                        if (pairs.size() >= top) {
+                            break outer;
+                        }
+                        if (!a.equals(b)) {
+                            pairs.add(new String[] {a, b, m});
+                        }
+                    }
+                }
+            }
+        }
+        String[] src = new String[pairs.size()];
+        String[] des = new String[pairs.size()];
+        boolean[] time = new boolean[pairs.size()];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = pairs.get(i)[0];
+            des[i] = pairs.get(i)[1];
+            time[i] = pairs.get(i)[2].equals("time");
+        }
+
+        RouteCache cache = new RouteCache(Math.max(top, 1));
+        long t0 = System.nanoTime();
+        int added = cache.precompute(src, des, time, threads);
+        long t1 = System.nanoTime();
+        int written = cache.save(out, top);
+        System.out.printf("Precomputed %d routes on %d threads in %.1f ms; wrote %d to %s (%d bytes)%n",
+                added, threads, (t1 - t0) / 1e6, written, out, Files.size(out));
+
+        // Cold: every pair through dijkstra; warm: load the file, then every pair is a lookup
+        long c0 = System.nanoTime();
+        for (int i = 0; i < src.length; i++) {
+            g.dijkstra(src[i], des[i], time[i]);
+        }
+        long cold = System.nanoTime() - c0;
+        RouteCache restarted = new RouteCache(Math.max(top, 1));
+        long w0 = System.nanoTime();
+        int loaded = restarted.load(out);
+        int hits = 0;
+        for (int i = 0; i < src.length; i++) {
+            hits += restarted.get(src[i], des[i], time[i]) != null ? 1 : 0;
+        }
+        long warm = System.nanoTime() - w0;
+        System.out.printf("Cold start: %.1f ms for %d queries; warm start: loaded %d and answered %d in %.1f ms%n",
+                cold / 1e6, src.length, loaded, hits, warm / 1e6);
+    }
+}
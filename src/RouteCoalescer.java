@@ -0,0 +1,322 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight layer in front of a route search: concurrent requests for the same
+ * (source, destination, metric, graph version) share one computation instead of each running its own.
+ *
+ * The first request for a key starts the search on a small fixed pool and every request, including the
+ * first, waits on the shared CompletableFuture with a timeout. The entry is removed as soon as the
+ * search completes, so results are never served after the fact; only requests that overlap in time
+ * share work. A graph mutation bumps Graph_M.version and therefore the key, so a request never joins
+ * a search over an older graph.
+ *
+ * Fairness between pairs: the pool runs at most one search per pair and takes searches in arrival
+ * order, so a flood of requests for one hot pair costs one queue slot and one worker, not the whole
+ * pool, and requests for other pairs are not starved behind it.
+ *
+ * Overload: the queue of searches waiting for a worker is bounded, and a request that would need a new
+ * search when it is full gets a RejectedExecutionException instead of queueing without limit. Each
+ * search counts the requests still waiting for it; when the last one times out before a worker has
+ * picked the search up, it is taken off the queue and never runs.
+ */
+public class RouteCoalescer
+{
+    /**
+     * A route search to coalesce.
+     */
+    public interface Search
+    {
+        Graph_M.PathResult run(String src, String des, boolean isTimeCost);
+    }
+
+    private static final class Key {
+        final String src;
+        final String des;
+        final boolean isTimeCost;
+        final int version;
+
+        Key(String src, String des, boolean isTimeCost, int version) {
+            this.src = src;
+            this.des = des;
+            this.isTimeCost = isTimeCost;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return isTimeCost == k.isTimeCost && version == k.version && src.equals(k.src) && des.equals(k.des);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(src, des, isTimeCost, version);
+        }
+    }
+
+    /**
+     * One queued or running search and the requests waiting for it.
+     */
+    private final class Flight implements Runnable {
+        final Key key;
+        final CompletableFuture<Graph_M.PathResult> result = new CompletableFuture<>();
+        // Requests still waiting; 0 means abandoned, and then nobody can join any more
+        final AtomicInteger waiters = new AtomicInteger(1);
+
+        Flight(Key key) {
+            this.key = key;
+        }
+
+        // Adds a waiter, unless every earlier one has given up already.
+        boolean join() {
+            for (int n = waiters.get(); n > 0; n = waiters.get()) {
+                if (waiters.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Removes a waiter that timed out; the last one withdraws the search if it has not started.
+        void leave() {
+            if (waiters.decrementAndGet() == 0) {
+                inFlight.remove(key, this);
+                if (workers.remove(this)) {
+                    skipped.increment();
+                    result.cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (waiters.get() == 0) {
+                    // Abandoned after a worker took it but before leave() could withdraw it
+                    skipped.increment();
+                    result.cancel(false);
+                    return;
+                }
+                result.complete(search.run(key.src, key.des, key.isTimeCost));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                inFlight.remove(key, this);
+            }
+        }
+    }
+
+    private final Search search;
+    private final ThreadPoolExecutor workers;
+    private final long timeoutMillis;
+    private final ConcurrentHashMap<Key, Flight> inFlight = new ConcurrentHashMap<>();
+
+    // Counters: requests that started a search, requests that joined one, requests that gave up waiting,
+    // searches dropped because every request had given up, requests turned away by a full queue
+    final LongAdder leaders = new LongAdder();
+    final LongAdder followers = new LongAdder();
+    final LongAdder timeouts = new LongAdder();
+    final LongAdder skipped = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+
+    /**
+     * Creates a coalescer whose queue holds up to 64 searches per thread.
+     * @param search        The search to run once per key (e.g. graph::dijkstra).
+     * @param threads       Number of searches that may run at the same time.
+     * @param timeoutMillis How long a request waits for its result before giving up.
+     */
+    public RouteCoalescer(Search search, int threads, long timeoutMillis)
+    {
+        this(search, threads, timeoutMillis, 64 * threads);
+    }
+
+    /**
+     * @param search        The search to run once per key (e.g. graph::dijkstra).
+     * @param threads       Number of searches that may run at the same time.
+     * @param timeoutMillis How long a request waits for its result before giving up.
+     * @param queueCapacity Number of searches that may wait for a thread; more are rejected.
+     */
+    public RouteCoalescer(Search search, int threads, long timeoutMillis, int queueCapacity)
+    {
+        this.search = search;
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "route-search-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Returns the route, joining an identical search that is already running if there is one.
+     * @param src        Source airport full name.
+     * @param des        Destination airport full name.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return The search result; shared between coalesced requests, so it must not be modified.
+     * @throws TimeoutException If the result is not ready within the timeout. The search keeps
+     *                          running for the other requests waiting on it; if there are none and
+     *                          it has not started yet, it is dropped.
+     * @throws RejectedExecutionException If a new search is needed and the queue is full.
+     */
+    public Graph_M.PathResult route(String src, String des, boolean isTimeCost) throws TimeoutException
+    {
+        Key key = new Key(src, des, isTimeCost, Graph_M.version);
+        Flight flight;
+        while (true) {
+            flight = inFlight.get(key);
+            if (flight != null && flight.join()) {
+                followers.increment();
+                break;
+            }
+            if (flight != null) {
+                inFlight.remove(key, flight); // Abandoned: start over with a new search
+                continue;
+            }
+            Flight mine = new Flight(key);
+            if (inFlight.putIfAbsent(key, mine) == null) {
+                flight = mine;
+                leaders.increment();
+                try {
+                    workers.execute(mine);
+                } catch (RejectedExecutionException e) {
+                    inFlight.remove(key, mine);
+                    mine.result.completeExceptionally(e); // Requests that joined meanwhile are rejected too
+                    rejected.increment();
+                    throw e;
+                }
+                break;
+            }
+        }
+        try {
+            return flight.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            flight.leave();
+            throw e;
+        } catch (InterruptedException e) {
+            flight.leave();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a route", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return Number of searches currently running or queued.
+     */
+    public int inFlight()
+    {
+        return inFlight.size();
+    }
+
+    /**
+     * Stops the search threads; waiting requests time out.
+     */
+    public void shutdown()
+    {
+        workers.shutdownNow();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "searches " + leaders.sum() + ", joined " + followers.sum() + ", timed out " + timeouts.sum()
+                + ", dropped unwatched " + skipped.sum() + ", rejected " + rejected.sum();
+    }
+
+    /**
+     * Benchmark: bursts of concurrent identical requests (a flash sale on a few pairs) through the
+     * coalescer against the same requests each running their own Graph_M.dijkstra.
+     * Usage: java RouteCoalescer [clients=200] [rounds=20]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Graph_M g = new Graph_M();
+        Graph_M.Create_Metro_Map(g);
+        String[] pairs = {
+            Graph_M.resolveAirport("DEL"), Graph_M.resolveAirport("JFK"),
+            Graph_M.resolveAirport("BOM"), Graph_M.resolveAirport("LHR"),
+        };
+        int threads = Runtime.getRuntime().availableProcessors();
+        RouteCoalescer coalescer = new RouteCoalescer(g::dijkstra, threads, 10_000);
+        ExecutorService clientPool = Executors.newFixedThreadPool(clients);
+        try {
+            for (int phase = 0; phase < 2; phase++) {     // Phase 0 warms up
+                long direct = burst(clientPool, clients, rounds, i ->
+                        g.dijkstra(pairs[2 * (i % 2)], pairs[2 * (i % 2) + 1], true));
+                long shared = burst(clientPool, clients, rounds, i ->
+                        coalescer.route(pairs[2 * (i % 2)], pairs[2 * (i % 2) + 1], true));
+                if (phase == 1) {
+                    System.out.printf("%d concurrent clients x %d bursts on 2 pairs: direct %.1f ms, coalesced %.1f ms (%.1fx)%n",
+                            clients, rounds, direct / 1e6, shared / 1e6, (double) direct / shared);
+                    System.out.println("Coalescer: " + coalescer);
+                }
+            }
+        } finally {
+            clientPool.shutdownNow();
+            coalescer.shutdown();
+        }
+    }
+
+    private interface Request
+    {
+        Graph_M.PathResult run(int client) throws Exception;
+    }
+
+    // Runs rounds of `clients` simultaneous requests and returns the total wall time.
+    private static long burst(ExecutorService pool, int clients, int rounds, Request request) throws Exception
+    {
+        long total = 0;
+        for (int r = 0; r < rounds; r++) {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<Graph_M.PathResult>> done = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                int client = i;
+                done.add(pool.submit(() -> {
+                    go.await();
+                    return request.run(client);
+                }));
+            }
+            long t0 = System.nanoTime();
+            go.countDown();
+            for (Future<Graph_M.PathResult> f : done) {
+                if (f.get().totalCost == -1) {
+                    throw new IllegalStateException("Route not found");
+                }
+            }
+            total += System.nanoTime() - t0;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,180 @@
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes raw route results (stops, legs, costs, interchanges) for machine clients,
+ * either as JSON through a {@link JsonWriter} or in a compact binary form, straight into a
+ * caller-supplied reusable buffer. Unlike processPathForDisplay, no intermediate Strings,
+ * lists or builders are created: airport codes are written by range from the existing names,
+ * and interchanges are detected with regionMatches on the code prefix. For carrier-aware results
+ * (CarrierRouter) an interchange is a change of carrier instead, and JSON legs name their carrier.
+ *
+ * Binary layout (big-endian):
+ *   byte   format version (1)
+ *   byte   flags (bit 0: time metric)
+ *   int    total cost
+ *   short  interchange count
+ *   short  stop count N
+ *   N x    { short byteLength; UTF-8 airport name }
+ *   N-1 x  int leg cost
+ */
+public class RouteEncoder
+{
+    static final byte BINARY_VERSION = 1;
+    static final byte FLAG_TIME = 1;
+
+    private RouteEncoder() {
+    }
+
+    /**
+     * Writes a raw dijkstra result as JSON:
+     * {"metric":..,"cost":..,"interchanges":..,"stops":[{"code","name"}],"legs":[{"from","to","cost","change"}]}
+     * where "change" marks the legs counted as interchanges; legs of carrier-aware results add "carrier".
+     * @param result     A raw (unformatted) result from Graph_M.dijkstra with its stations set.
+     * @param isTimeCost The metric the result was computed with.
+     * @param out        The writer to append to.
+     */
+    public static void encodeJson(Graph_M.PathResult result, boolean isTimeCost, JsonWriter out)
+    {
+        String[] stations = result.stations;
+        out.beginObject()
+           .name("metric").value(QueryMetrics.metricName(isTimeCost))
+           .name("cost").value(result.totalCost)
+           .name("interchanges").value(countInterchanges(result));
+
+        out.name("stops").beginArray();
+        for (String station : stations) {
+            out.beginObject()
+               .name("code").value(station, 0, codeEnd(station))
+               .name("name").value(station)
+               .endObject();
+        }
+        out.endArray();
+
+        out.name("legs").beginArray();
+        for (int i = 1; i < stations.length; i++) {
+            String prev = stations[i - 1];
+            String cur = stations[i];
+            out.beginObject()
+               .name("from").value(prev, 0, codeEnd(prev))
+               .name("to").value(cur, 0, codeEnd(cur))
+               .name("cost").value(legCost(prev, cur, isTimeCost));
+            if (result.carriers != null) {
+                out.name("carrier").value(result.carriers[i - 1])
+                   .name("change").value(i > 1 && !result.carriers[i - 1].equals(result.carriers[i - 2]));
+            } else {
+                out.name("change").value(!sameLine(prev, cur));
+            }
+            out.endObject();
+        }
+        out.endArray().endObject();
+    }
+
+    /**
+     * Writes a raw dijkstra result in the binary layout described above.
+     * @param result     A raw result from Graph_M.dijkstra with its stations set.
+     * @param isTimeCost The metric the result was computed with.
+     * @param buf        The destination buffer; its position advances past the encoded route.
+     * @return The number of bytes written.
+     * @throws BufferOverflowException If the buffer is too small (retry with a larger one).
+     */
+    public static int encodeBinary(Graph_M.PathResult result, boolean isTimeCost, ByteBuffer buf)
+    {
+        String[] stations = result.stations;
+        if (stations.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Route has too many stops for the binary format");
+        }
+        int start = buf.position();
+        buf.put(BINARY_VERSION);
+        buf.put(isTimeCost ? FLAG_TIME : 0);
+        buf.putInt(result.totalCost);
+        buf.putShort((short) countInterchanges(result));
+        buf.putShort((short) stations.length);
+        for (String station : stations) {
+            putUtf8(buf, station);
+        }
+        for (int i = 1; i < stations.length; i++) {
+            buf.putInt(legCost(stations[i - 1], stations[i], isTimeCost));
+        }
+        return buf.position() - start;
+    }
+
+    /**
+     * Counts interchanges the same way processPathForDisplay does: changes of carrier for a
+     * carrier-aware result, else changes of line code between consecutive stops.
+     */
+    static int countInterchanges(Graph_M.PathResult result)
+    {
+        if (result.carriers == null) {
+            return countInterchanges(result.stations);
+        }
+        int interchanges = 0;
+        for (int i = 1; i < result.carriers.length; i++) {
+            if (!result.carriers[i].equals(result.carriers[i - 1])) {
+                interchanges++;
+            }
+        }
+        return interchanges;
+    }
+
+    /**
+     * Counts interchanges the same way processPathForDisplay does: a change happens whenever
+     * the line code (text before '~') differs between consecutive stops.
+     */
+    static int countInterchanges(String[] stations)
+    {
+        int interchanges = 0;
+        for (int i = 1; i < stations.length; i++) {
+            if (!sameLine(stations[i - 1], stations[i])) {
+                interchanges++;
+            }
+        }
+        return interchanges;
+    }
+
+    private static boolean sameLine(String a, String b)
+    {
+        int len = codeEnd(a);
+        return len == codeEnd(b) && a.regionMatches(0, b, 0, len);
+    }
+
+    private static int codeEnd(String station)
+    {
+        int tildeIndex = station.indexOf('~');
+        return tildeIndex == -1 ? station.length() : tildeIndex;
+    }
+
+    private static int legCost(String from, String to, boolean isTimeCost)
+    {
+        Graph_M.Vertex vtx = Graph_M.vtces.get(from);
+        Integer weight = vtx == null ? null : vtx.nbrs.get(to);
+        return weight == null ? -1 : Graph_M.edgeCost(weight, isTimeCost);
+    }
+
+    // Writes a length-prefixed UTF-8 string; the length is patched in after the bytes are written.
+    private static void putUtf8(ByteBuffer buf, String s)
+    {
+        int lenPos = buf.position();
+        buf.putShort((short) 0);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf.put((byte) c);
+            } else if (c < 0x800) {
+                buf.put((byte) (0xC0 | (c >> 6)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf.put((byte) (0xF0 | (cp >> 18)));
+                buf.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buf.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                buf.put((byte) (0xE0 | (c >> 12)));
+                buf.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buf.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buf.putShort(lenPos, (short) (buf.position() - lenPos - 2));
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Read-only view of a route graph with dense integer vertex ids, shared by all array-based search engines.
+ * The arcs leaving vertex v are the arc ids in [arcBegin(v), arcEnd(v)). Arcs are directed; the
+ * incoming arcs of every vertex are available through {@link #reverse()}.
+ * Implementations: {@link CompactGraph} (on-heap arrays) and {@link OffHeapGraph} (direct memory).
+ */
+public interface RouteGraph
+{
+    /**
+     * Returns the snapshot of the current Graph_M contents that the engines search: a CompactGraph, or
+     * an OffHeapGraph when the JVM runs with -Dflight.graph.offheap=true.
+     * @return The graph for the current graph version.
+     */
+    static RouteGraph current()
+    {
+        return OffHeapGraph.SELECTED ? OffHeapGraph.current() : CompactGraph.current();
+    }
+
+    int numVertices();
+
+    int numArcs();
+
+    /**
+     * @return The first arc id of vertex v.
+     */
+    int arcBegin(int v);
+
+    /**
+     * @return One past the last arc id of vertex v.
+     */
+    int arcEnd(int v);
+
+    /**
+     * @return The vertex an arc points to.
+     */
+    int arcHead(int a);
+
+    /**
+     * @return The raw edge weight of an arc, as passed to Graph_M.addEdge.
+     */
+    int arcWeight(int a);
+
+    /**
+     * @return The cost of an arc under the chosen metric (see Graph_M.edgeCost).
+     */
+    int arcCost(int a, boolean isTimeCost);
+
+    /**
+     * Returns the transposed graph: the same vertex ids with every arc flipped, so that its arcs out of v
+     * are the arcs into v here. Backward and bidirectional searches run on it. A symmetric graph returns
+     * itself, so undirected networks keep a single copy of their adjacency.
+     * @return The reverse graph; its reverse() is this graph again.
+     */
+    RouteGraph reverse();
+
+    /**
+     * @return True if every arc has a twin of equal weight in the other direction.
+     */
+    default boolean isSymmetric()
+    {
+        return reverse() == this;
+    }
+
+    /**
+     * @return The full airport name of a vertex.
+     */
+    String name(int v);
+
+    /**
+     * @return The id of an airport, or -1 if it is not in the graph.
+     */
+    int idOf(String name);
+
+    /**
+     * @return The latitude of a vertex in degrees, or NaN if its location is unknown.
+     */
+    double lat(int v);
+
+    /**
+     * @return The longitude of a vertex in degrees, or NaN if its location is unknown.
+     */
+    double lng(int v);
+}
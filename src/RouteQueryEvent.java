@@ -0,0 +1,50 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event emitted once per route query.
+ * Enable with e.g. -XX:StartFlightRecording and inspect "flight.RouteQuery" in JMC or `jfr print`.
+ * When no recording is active, {@link #isEnabled()} is false and the event is never populated.
+ */
+@Name("flight.RouteQuery")
+@Label("Route Query")
+@Category({"Flight Routes", "Search"})
+@Description("A single shortest-route query with its search cost counters")
+class RouteQueryEvent extends jdk.jfr.Event
+{
+    @Label("Source")
+    String source;
+
+    @Label("Destination")
+    String destination;
+
+    @Label("Metric")
+    String metric;
+
+    @Label("Strategy")
+    String strategy;
+
+    @Label("Route Found")
+    boolean found;
+
+    @Label("Settled Vertices")
+    long settled;
+
+    @Label("Relaxed Edges")
+    long relaxed;
+
+    @Label("Heap Operations")
+    long heapOps;
+
+    @Label("Wall Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long wallTime;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocatedBytes;
+}
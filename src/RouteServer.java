@@ -0,0 +1,544 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Embedded HTTP JSON API over the Java routing engine, so the browser front end can call it
+ * instead of re-implementing the graph and Dijkstra in JavaScript.
+ *
+ * Endpoints (airports may be given by code, e.g. DEL, or by full name):
+ *   GET /airports                          all airports with their codes
+ *   GET /neighbors?airport=DEL             direct connections and edge weights
+ *   GET /distance?from=DEL&to=LHR          shortest distance value (KM)
+ *   GET /time?from=DEL&to=LHR              shortest time value (seconds and minutes)
+ *   GET /route?from=DEL&to=LHR&metric=time full shortest path (metric defaults to distance);
+ *                                          add format=binary for the RouteEncoder binary layout.
+ *                                          Instead of from, lat&lng[&radiusKm=150] routes from the best
+ *                                          airport within that radius of the point. from and to may also
+ *                                          be cities or metro codes (to=London, from=NYC): the route then
+ *                                          runs between the best pair of their airports. With
+ *                                          transferPenalty=N (seconds for time, km for distance) the
+ *                                          route minimizes cost plus N per change of carrier
+ *   GET /nearest?lat=28.6&lng=77.2&k=3     the k closest airports (k defaults to 1), or every airport
+ *                                          within radiusKm if that is given instead of k
+ *   GET /reachable?from=BLR&metric=time&budget=21600&maxConnections=1
+ *                                          every airport reachable within the budget (km, or seconds
+ *                                          for metric=time), cheapest first; maxConnections is optional
+ *                                          and at most 8
+ *   GET /metrics                           query metrics snapshot (JSON)
+ *   GET /planner                           query planner decisions and per-engine latency (JSON)
+ *
+ * Responses are written with a fixed Content-Length so HTTP/1.1 keep-alive connections are reused.
+ * Response buffers are pooled, so steady-state requests encode without allocating new buffers.
+ * Requests run on virtual threads when the runtime provides them (JDK 21+), else on a cached pool.
+ * Concurrent /route requests for the same airport pair share one search through a RouteCoalescer;
+ * a request that waits longer than -Dflight.route.timeoutMs (default 10000), or that needs a new search
+ * while -Dflight.route.queue searches (default 64 per processor) are already queued, gets a 503.
+ * Single-pair routes are cached in a RouteCache (-Dflight.route.cacheSize, default 10000); with
+ * -Dflight.data.dir the hottest ones are saved there on stop and loaded again at startup.
+ * Values and uncached routes are answered by whichever engine the QueryPlanner finds fastest.
+ */
+public class RouteServer
+{
+    // Largest maxConnections accepted by /reachable; each connection allowed widens the search state.
+    static final int MAX_CONNECTIONS = 8;
+
+    private final Graph_M graph;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final RouteCoalescer coalescer;
+    private final RouteCache cache;
+    private final QueryPlanner planner;
+    // Reusable response buffers, returned to the pool once a response has been sent.
+    private final ConcurrentLinkedQueue<JsonWriter> writerPool = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ByteBuffer> binaryPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates a server bound to the given port (0 picks a free port).
+     * @param graph The populated flight graph to query.
+     * @param port  The TCP port to listen on.
+     * @throws IOException If the port cannot be bound.
+     */
+    public RouteServer(Graph_M graph, int port) throws IOException
+    {
+        this.graph = graph;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = requestExecutor();
+        server.setExecutor(executor);
+        this.cache = new RouteCache(Integer.getInteger("flight.route.cacheSize", 10_000));
+        if (RouteCache.defaultFile() != null) {
+            cache.load(RouteCache.defaultFile());
+        }
+        this.planner = new QueryPlanner(graph, cache);
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.coalescer = new RouteCoalescer(planner::searchPath, threads,
+                Long.getLong("flight.route.timeoutMs", 10_000), Integer.getInteger("flight.route.queue", 64 * threads));
+        server.createContext("/airports", json(this::airports));
+        server.createContext("/neighbors", json(this::neighbors));
+        server.createContext("/distance", json(ex -> value(ex, false)));
+        server.createContext("/time", json(ex -> value(ex, true)));
+        server.createContext("/route", json(this::route));
+        server.createContext("/nearest", json(this::nearest));
+        server.createContext("/reachable", json(this::reachable));
+        server.createContext("/metrics", json(this::metrics));
+        server.createContext("/planner", json(this::planner));
+    }
+
+    public void start()
+    {
+        server.start();
+    }
+
+    /**
+     * Stops accepting connections and waits up to a second for in-flight exchanges, then saves the
+     * route cache if there is a data directory.
+     */
+    public void stop()
+    {
+        server.stop(1);
+        executor.shutdown();
+        coalescer.shutdown();
+        if (RouteCache.defaultFile() != null) {
+            try {
+                cache.save(RouteCache.defaultFile(), Integer.MAX_VALUE);
+            } catch (IOException e) {
+                System.err.println("Warning: could not save route cache: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int port()
+    {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns a virtual-thread-per-task executor when available, otherwise a cached thread pool.
+     * Looked up reflectively so the class still compiles and runs on JDK 17.
+     */
+    static ExecutorService requestExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "route-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // --- Handlers ---
+
+    /**
+     * A handler that fills a JsonWriter and returns the HTTP status to send it with.
+     */
+    interface JsonHandler
+    {
+        int handle(Exchange ex) throws IOException;
+    }
+
+    /**
+     * Per-request state handed to a JsonHandler: parsed query parameters and the response buffers.
+     * A handler either writes JSON to {@code out} or fills {@code binary} for an octet-stream reply.
+     */
+    static class Exchange
+    {
+        final HashMap<String, String> params;
+        final JsonWriter out;
+        ByteBuffer binary;
+
+        Exchange(HashMap<String, String> params, JsonWriter out) {
+            this.params = params;
+            this.out = out;
+        }
+
+        /**
+         * Writes {"error": message} and returns the status code, for one-line error returns.
+         */
+        int error(int status, String message) {
+            out.reset().beginObject().name("error").value(message).endObject();
+            return status;
+        }
+    }
+
+    private HttpHandler json(JsonHandler handler)
+    {
+        return http -> {
+            JsonWriter out = writerPool.poll();
+            Exchange ex = new Exchange(new HashMap<>(), out == null ? new JsonWriter(1024) : out.reset());
+            try {
+                drain(http.getRequestBody());
+                int status;
+                if (!"GET".equals(http.getRequestMethod())) {
+                    status = ex.error(405, "Only GET is supported");
+                } else if (!queryParams(http.getRequestURI(), ex.params)) {
+                    status = ex.error(400, "Malformed query string");
+                } else {
+                    try {
+                        status = handler.handle(ex);
+                    } catch (RuntimeException e) {
+                        status = ex.error(500, "Internal error: " + e.getMessage());
+                    }
+                }
+                send(http, status, ex);
+            } finally {
+                http.close();
+                writerPool.offer(ex.out);
+                if (ex.binary != null) {
+                    binaryPool.offer(ex.binary);
+                }
+            }
+        };
+    }
+
+    private int airports(Exchange ex)
+    {
+        ArrayList<String> keys = new ArrayList<>(Graph_M.vtces.keySet());
+        Collections.sort(keys);
+        JsonWriter out = ex.out;
+        out.beginObject().name("airports").beginArray();
+        for (String key : keys) {
+            writeAirport(out, key);
+        }
+        out.endArray().endObject();
+        return 200;
+    }
+
+    private int neighbors(Exchange ex)
+    {
+        String airport = Graph_M.resolveAirport(ex.params.get("airport"));
+        if (airport == null) {
+            return ex.error(404, "Unknown airport");
+        }
+        Graph_M.Vertex vtx = Graph_M.vtces.get(airport);
+        JsonWriter out = ex.out;
+        out.beginObject().name("airport");
+        writeAirport(out, airport);
+        out.name("neighbors").beginArray();
+        for (HashMap.Entry<String, Integer> e : vtx.nbrs.entrySet()) {
+            out.beginObject()
+               .name("code").value(e.getKey(), 0, codeEnd(e.getKey()))
+               .name("name").value(e.getKey())
+               .name("weight").value(e.getValue())
+               .endObject();
+        }
+        out.endArray().endObject();
+        return 200;
+    }
+
+    private int value(Exchange ex, boolean isTimeCost)
+    {
+        String[] pair = resolvePair(ex);
+        if (pair == null) {
+            return 404;
+        }
+        Graph_M.PathResult result = planner.value(pair[0], pair[1], isTimeCost);
+        if (result.totalCost == -1) {
+            return ex.error(404, result.path);
+        }
+        JsonWriter out = ex.out;
+        out.beginObject()
+           .name("from").value(pair[0])
+           .name("to").value(pair[1]);
+        if (isTimeCost) {
+            out.name("seconds").value(result.totalCost)
+               .name("minutes").value((result.totalCost + 59) / 60);
+        } else {
+            out.name("km").value(result.totalCost);
+        }
+        out.endObject();
+        return 200;
+    }
+
+    private int route(Exchange ex)
+    {
+        String metric = ex.params.getOrDefault("metric", "distance");
+        if (!metric.equals("distance") && !metric.equals("time")) {
+            return ex.error(400, "metric must be 'distance' or 'time'");
+        }
+        boolean isTimeCost = metric.equals("time");
+        Graph_M.PathResult result;
+        if (!ex.params.containsKey("from") && ex.params.containsKey("lat")) {
+            double lat = number(ex, "lat", Double.NaN);
+            double lng = number(ex, "lng", Double.NaN);
+            double radiusKm = number(ex, "radiusKm", 150);
+            if (!(Math.abs(lat) <= 90) || !(Math.abs(lng) <= 180) || !(radiusKm >= 0)) {
+                return ex.error(400, "lat and lng must be valid coordinates and radiusKm a non-negative number");
+            }
+            String des = Graph_M.resolveAirport(ex.params.get("to"));
+            if (des == null) {
+                return ex.error(404, "Unknown destination airport");
+            }
+            result = MultiSourceDijkstra.fromPoint(lat, lng, radiusKm, des, isTimeCost);
+        } else {
+            List<String> srcs = MetroAreas.resolve(ex.params.get("from"));
+            List<String> dess = MetroAreas.resolve(ex.params.get("to"));
+            if (srcs.isEmpty() || dess.isEmpty()) {
+                return ex.error(404, srcs.isEmpty() ? "Unknown source airport or city" : "Unknown destination airport or city");
+            }
+            double penalty = number(ex, "transferPenalty", -1);
+            if (Double.isNaN(penalty)) {
+                return ex.error(400, "transferPenalty must be a number");
+            }
+            if (penalty >= 0) {
+                if (srcs.size() != 1 || dess.size() != 1) {
+                    return ex.error(400, "transferPenalty needs single airports for from and to");
+                }
+                result = CarrierRouter.queryPath(srcs.get(0), dess.get(0), isTimeCost, (int) Math.min(penalty, 1e9));
+            } else if (srcs.size() == 1 && dess.size() == 1) {
+                result = planner.lookup(srcs.get(0), dess.get(0), isTimeCost, true);
+                if (result == null) {
+                    int version = Graph_M.version;
+                    try {
+                        result = coalescer.route(srcs.get(0), dess.get(0), isTimeCost);
+                    } catch (TimeoutException e) {
+                        return ex.error(503, "Route computation timed out");
+                    } catch (RejectedExecutionException e) {
+                        return ex.error(503, "Too many route computations queued");
+                    }
+                    planner.store(srcs.get(0), dess.get(0), isTimeCost, result, version);
+                }
+            } else {
+                result = MetroAreas.route(srcs, dess, isTimeCost);
+            }
+        }
+        if (result.totalCost == -1) {
+            return ex.error(404, result.path);
+        }
+        if ("binary".equals(ex.params.get("format"))) {
+            ByteBuffer buf = binaryPool.poll();
+            buf = buf == null ? ByteBuffer.allocate(4096) : buf;
+            while (true) {
+                try {
+                    buf.clear();
+                    RouteEncoder.encodeBinary(result, isTimeCost, buf);
+                    break;
+                } catch (BufferOverflowException e) {
+                    buf = ByteBuffer.allocate(buf.capacity() * 2); // Grow and retry; the bigger buffer is pooled
+                }
+            }
+            ex.binary = buf;
+            return 200;
+        }
+        RouteEncoder.encodeJson(result, isTimeCost, ex.out);
+        return 200;
+    }
+
+    private int nearest(Exchange ex)
+    {
+        double lat = number(ex, "lat", Double.NaN);
+        double lng = number(ex, "lng", Double.NaN);
+        if (!(Math.abs(lat) <= 90) || !(Math.abs(lng) <= 180)) {
+            return ex.error(400, "lat and lng are required, within [-90, 90] and [-180, 180]");
+        }
+        GeoIndex geo = GeoIndex.current();
+        int[] ids;
+        if (ex.params.containsKey("radiusKm")) {
+            double radiusKm = number(ex, "radiusKm", Double.NaN);
+            if (!(radiusKm >= 0)) {
+                return ex.error(400, "radiusKm must be a non-negative number");
+            }
+            ids = geo.withinRadius(lat, lng, radiusKm);
+        } else {
+            double k = number(ex, "k", 1);
+            if (Double.isNaN(k) || k < 1) {
+                return ex.error(400, "k must be a positive number");
+            }
+            ids = geo.nearest(lat, lng, (int) k);
+        }
+        JsonWriter out = ex.out;
+        out.beginObject().name("airports").beginArray();
+        for (int id : ids) {
+            String key = geo.graph.name(id);
+            out.beginObject()
+               .name("code").value(key, 0, codeEnd(key))
+               .name("name").value(key)
+               .name("km").value(Math.round(geo.distanceKm(id, lat, lng)))
+               .endObject();
+        }
+        out.endArray().endObject();
+        return 200;
+    }
+
+    private int reachable(Exchange ex)
+    {
+        String metric = ex.params.getOrDefault("metric", "distance");
+        if (!metric.equals("distance") && !metric.equals("time")) {
+            return ex.error(400, "metric must be 'distance' or 'time'");
+        }
+        boolean isTimeCost = metric.equals("time");
+        String src = Graph_M.resolveAirport(ex.params.get("from"));
+        if (src == null) {
+            return ex.error(404, "Unknown source airport");
+        }
+        double budget = number(ex, "budget", Double.NaN);
+        double connections = number(ex, "maxConnections", -1);
+        if (Double.isNaN(budget) || budget < 0 || Double.isNaN(connections)) {
+            return ex.error(400, "budget is a required non-negative number and maxConnections must be a number");
+        }
+        if (connections > MAX_CONNECTIONS) {
+            return ex.error(400, "maxConnections must be at most " + MAX_CONNECTIONS);
+        }
+        int maxHops = connections < 0 ? Reachability.UNLIMITED : (int) connections + 1;
+        Reachability.Result result = Reachability.reachable(src, (int) Math.min(budget, Integer.MAX_VALUE), maxHops, isTimeCost);
+        JsonWriter out = ex.out;
+        out.beginObject()
+           .name("from").value(src)
+           .name("count").value(result.count)
+           .name("airports").beginArray();
+        for (int i = 0; i < result.count; i++) {
+            String key = result.name(i);
+            out.beginObject()
+               .name("code").value(key, 0, codeEnd(key))
+               .name("name").value(key)
+               .name(isTimeCost ? "seconds" : "km").value(result.costs[i])
+               .name("connections").value(result.hops[i] - 1)
+               .endObject();
+        }
+        out.endArray().endObject();
+        return 200;
+    }
+
+    private int metrics(Exchange ex)
+    {
+        QueryMetrics.global().writeJson(ex.out);
+        return 200;
+    }
+
+    private int planner(Exchange ex)
+    {
+        planner.writeJson(ex.out);
+        return 200;
+    }
+
+    // --- Helpers ---
+
+    /**
+     * Resolves the from/to parameters; on failure writes the error and returns null.
+     */
+    private static String[] resolvePair(Exchange ex)
+    {
+        String src = Graph_M.resolveAirport(ex.params.get("from"));
+        String des = Graph_M.resolveAirport(ex.params.get("to"));
+        if (src == null || des == null) {
+            ex.error(404, src == null ? "Unknown source airport" : "Unknown destination airport");
+            return null;
+        }
+        return new String[]{src, des};
+    }
+
+    /**
+     * Parses a numeric parameter; returns def if it is absent and NaN if it is malformed.
+     */
+    private static double number(Exchange ex, String name, double def)
+    {
+        String raw = ex.params.get(name);
+        if (raw == null) {
+            return def;
+        }
+        try {
+            return Double.parseDouble(raw);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static void writeAirport(JsonWriter out, String key)
+    {
+        out.beginObject()
+           .name("code").value(key, 0, codeEnd(key))
+           .name("name").value(key)
+           .endObject();
+    }
+
+    // Index of the '~' separating the code from the full name, or the whole key if there is none.
+    private static int codeEnd(String key)
+    {
+        int tildeIndex = key.indexOf('~');
+        return tildeIndex == -1 ? key.length() : tildeIndex;
+    }
+
+    private static void send(HttpExchange http, int status, Exchange ex) throws IOException
+    {
+        http.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+        // A known length (rather than chunked or close-delimited) keeps the connection alive.
+        if (ex.binary != null && status == 200) {
+            http.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            http.sendResponseHeaders(status, ex.binary.position());
+            http.getResponseBody().write(ex.binary.array(), 0, ex.binary.position());
+            return;
+        }
+        http.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        http.sendResponseHeaders(status, ex.out.size());
+        ex.out.writeTo(http.getResponseBody());
+    }
+
+    // Reads any request body so the connection can be reused for the next request.
+    private static void drain(InputStream in) throws IOException
+    {
+        byte[] skip = new byte[256];
+        while (in.read(skip) != -1) {
+            // discard
+        }
+    }
+
+    /**
+     * Decodes the query string of a request URI into params.
+     * @return False if the query has a malformed percent escape.
+     */
+    static boolean queryParams(URI uri, HashMap<String, String> params)
+    {
+        String query = uri.getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return true;
+        }
+        try {
+            for (String part : query.split("&")) {
+                int eq = part.indexOf('=');
+                String key = eq == -1 ? part : part.substring(0, eq);
+                String val = eq == -1 ? "" : part.substring(eq + 1);
+                params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(val, StandardCharsets.UTF_8));
+            }
+        } catch (IllegalArgumentException e) {
+            return false; // e.g. "%zz"
+        }
+        return true;
+    }
+
+    /**
+     * Starts the API on the given port (default 8080) over the built-in flight map.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        Graph_M g = new Graph_M();
+        Graph_M.Create_Metro_Map(g);
+        RouteServer server = new RouteServer(g, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "route-server-stop"));
+        server.start();
+        System.out.println("Flight route API listening on http://localhost:" + server.port() + "/");
+    }
+}
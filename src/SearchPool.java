@@ -0,0 +1,78 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Bounded pool of reusable search instances for one graph snapshot.
+ *
+ * The searches keep O(n) arrays between queries, so they are cheap to reuse but expensive to create.
+ * A ThreadLocal does not work for that under virtual threads: every request runs on a fresh thread and
+ * would allocate its own instance. Instead a caller takes an instance, runs its query and gives it
+ * back. Idle instances are kept up to a capacity; beyond that a returned instance is dropped, so a
+ * burst does not pin memory. A pool belongs to one snapshot; when the graph changes, the owner replaces
+ * the whole pool (see {@link #forGraph}) and the old one is collected with its instances.
+ *
+ * @param <T> The search type.
+ */
+final class SearchPool<T>
+{
+    /** Idle instances kept per pool: searches are CPU-bound, so more than this rarely run at once. */
+    static final int DEFAULT_CAPACITY = 2 * Runtime.getRuntime().availableProcessors();
+
+    final RouteGraph graph;
+    private final Function<RouteGraph, T> factory;
+    private final int capacity;
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    SearchPool(RouteGraph graph, Function<RouteGraph, T> factory, int capacity) {
+        this.graph = graph;
+        this.factory = factory;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the pool for a graph, replacing the one in the slot if it belongs to another snapshot.
+     * Two threads may race to replace it; the loser's pool is used for its query and then dropped.
+     * @param slots   Pools of the owner, indexed by slot (e.g. 0 for distance, 1 for time).
+     * @param slot    The slot to use.
+     * @param g       The graph to search.
+     * @param factory Creates a search instance for the graph.
+     * @return The pool.
+     */
+    static <T> SearchPool<T> forGraph(SearchPool<T>[] slots, int slot, RouteGraph g, Function<RouteGraph, T> factory)
+    {
+        SearchPool<T> pool = slots[slot];
+        if (pool == null || pool.graph != g) {
+            pool = new SearchPool<>(g, factory, DEFAULT_CAPACITY);
+            slots[slot] = pool;
+        }
+        return pool;
+    }
+
+    /**
+     * @return An idle instance, or a new one if none is idle.
+     */
+    T acquire()
+    {
+        T search = idle.poll();
+        if (search == null) {
+            return factory.apply(graph);
+        }
+        idleCount.decrementAndGet();
+        return search;
+    }
+
+    /**
+     * Gives an instance back after its query. It must not be used by the caller afterwards.
+     * @param search An instance taken from this pool.
+     */
+    void release(T search)
+    {
+        if (idleCount.incrementAndGet() <= capacity) {
+            idle.offer(search);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}
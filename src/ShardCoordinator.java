@@ -0,0 +1,493 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers route queries over a graph split across {@link ShardServer} processes.
+ *
+ * The coordinator keeps no routes of its own beyond an overlay graph over the boundary airports: the
+ * routes that cross between shards, plus one arc per pair of boundary airports in the same shard
+ * priced with the cheapest route inside that shard (fetched once per metric at launch). A query from s
+ * to t asks the shard of s for the costs from s to its boundary airports and the shard of t for the
+ * costs from its boundary airports to t, then runs Dijkstra on the overlay between the two sets. When
+ * s and t share a shard, the shard's own route is a candidate too. Any cheapest route alternates
+ * between stretches inside one shard and cut routes, so this finds the same cost as a search over the
+ * whole graph; the full path is unpacked by asking each shard for its stretch.
+ *
+ * Shards run as separate JVMs on this machine and are reached over loopback sockets, so the whole
+ * arrangement can be tested locally; moving a shard to another host only changes the address.
+ */
+public class ShardCoordinator implements AutoCloseable
+{
+    static final int INF = Integer.MAX_VALUE;
+
+    private final String[] names;                   // global id -> full airport name
+    private final HashMap<String, Integer> ids;
+    private final GraphPartitioner.Layout layout;
+    private final ShardLink[] links;
+    private final int[] overlayBase;                // shard -> overlay id of its first boundary airport
+    private final int overlaySize;
+    private final int[] overlayShard;               // overlay id -> shard
+    private final int[] overlayLocal;               // overlay id -> shard-local id
+    private final Overlay distanceOverlay, timeOverlay;
+
+    /**
+     * Overlay arcs for one metric in CSR form.
+     */
+    private static final class Overlay {
+        final int[] offsets;
+        final int[] heads;
+        final int[] costs;
+        final int[] via;     // -1 for a cut route, else the shard whose internal route the arc stands for
+
+        Overlay(int[] offsets, int[] heads, int[] costs, int[] via) {
+            this.offsets = offsets;
+            this.heads = heads;
+            this.costs = costs;
+            this.via = via;
+        }
+    }
+
+    /**
+     * Connection to one shard process. Requests on a link are serialized.
+     */
+    private static final class ShardLink {
+        final Process process;
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        ShardLink(Process process, int port) throws IOException {
+            this.process = process;
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void send(byte op, boolean isTimeCost, int a, int b) throws IOException {
+            out.writeByte(op);
+            out.writeByte(isTimeCost ? 1 : 0);
+            out.writeInt(a);
+            out.writeInt(b);
+            out.flush();
+        }
+
+        // CLIQUE, FROM or TO: a length-prefixed cost array.
+        synchronized int[] costs(byte op, boolean isTimeCost, int a) throws IOException {
+            send(op, isTimeCost, a, 0);
+            int[] costs = new int[op == ShardServer.OP_CLIQUE ? square(in.readInt()) : in.readInt()];
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] = in.readInt();
+            }
+            return costs;
+        }
+
+        // PATH: { cost, local ids... }, or { INF } if there is no route inside the shard.
+        synchronized int[] path(boolean isTimeCost, int a, int b) throws IOException {
+            send(ShardServer.OP_PATH, isTimeCost, a, b);
+            int cost = in.readInt();
+            int[] result = new int[in.readInt() + 1];
+            result[0] = cost;
+            for (int i = 1; i < result.length; i++) {
+                result[i] = in.readInt();
+            }
+            return result;
+        }
+
+        synchronized void shutdown() {
+            try {
+                send(ShardServer.OP_SHUTDOWN, false, 0, 0);
+                socket.close();
+            } catch (IOException ignored) {
+                // The process is destroyed below if it does not exit
+            }
+        }
+
+        private static int square(int n) {
+            return n * n;
+        }
+    }
+
+    private ShardCoordinator(RouteGraph g, GraphPartitioner.Layout layout, ShardLink[] links) throws IOException
+    {
+        int n = g.numVertices();
+        this.layout = layout;
+        this.links = links;
+        names = new String[n];
+        ids = new HashMap<>(n * 2);
+        for (int v = 0; v < n; v++) {
+            names[v] = g.name(v);
+            ids.put(names[v], v);
+        }
+        overlayBase = new int[layout.shards];
+        int size = 0;
+        for (int s = 0; s < layout.shards; s++) {
+            overlayBase[s] = size;
+            size += layout.boundary[s].length;
+        }
+        overlaySize = size;
+        overlayShard = new int[size];
+        overlayLocal = new int[size];
+        for (int s = 0; s < layout.shards; s++) {
+            for (int i = 0; i < layout.boundary[s].length; i++) {
+                overlayShard[overlayBase[s] + i] = s;
+                overlayLocal[overlayBase[s] + i] = layout.boundary[s][i];
+            }
+        }
+        distanceOverlay = buildOverlay(g, false);
+        timeOverlay = buildOverlay(g, true);
+    }
+
+    /**
+     * Partitions a graph, starts one shard process per part and builds the overlay.
+     * @param g      The full graph (only needed during launch).
+     * @param shards Number of shard processes.
+     * @param dir    Directory for the shard files.
+     * @return A coordinator; close it to stop the shard processes.
+     */
+    public static ShardCoordinator launch(RouteGraph g, int shards, Path dir) throws IOException
+    {
+        int[] part = GraphPartitioner.partition(g, shards, 1);
+        GraphPartitioner.Layout layout = new GraphPartitioner.Layout(g, part, shards);
+        Path[] files = GraphPartitioner.writeShards(g, layout, dir);
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        String classpath = System.getProperty("java.class.path");
+        ShardLink[] links = new ShardLink[shards];
+        try {
+            Process[] processes = new Process[shards];
+            for (int s = 0; s < shards; s++) {
+                processes[s] = new ProcessBuilder(java, "-cp", classpath, "ShardServer", files[s].toString())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+            }
+            for (int s = 0; s < shards; s++) {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(processes[s].getInputStream(), StandardCharsets.UTF_8));
+                String line = reader.readLine();
+                if (line == null || !line.startsWith("PORT ")) {
+                    processes[s].destroy();
+                    throw new IOException("Shard " + s + " failed to start");
+                }
+                links[s] = new ShardLink(processes[s], Integer.parseInt(line.substring(5).trim()));
+            }
+            return new ShardCoordinator(g, layout, links);
+        } catch (IOException | RuntimeException e) {
+            for (ShardLink link : links) {
+                if (link != null) {
+                    link.process.destroy();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Full path query by airport name, with the same raw format as Graph_M.dijkstra.
+     * @param src        Source airport full name.
+     * @param des        Destination airport full name.
+     * @param isTimeCost True for the time metric, false for distance.
+     * @return A raw PathResult (stations set) or the usual error indicators.
+     */
+    public Graph_M.PathResult route(String src, String des, boolean isTimeCost) throws IOException
+    {
+        QueryTrace trace = QueryTrace.start();
+        Integer s = ids.get(src);
+        Integer t = ids.get(des);
+        Graph_M.PathResult result;
+        if (s == null || t == null) {
+            result = new Graph_M.PathResult("INVALID_STATIONS", -1, 0);
+        } else {
+            int[] path = path(s, t, isTimeCost);
+            if (path == null) {
+                result = new Graph_M.PathResult("NO_PATH", -1, 0);
+            } else {
+                String[] stations = new String[path.length - 1];
+                for (int i = 1; i < path.length; i++) {
+                    stations[i - 1] = names[path[i]];
+                }
+                result = new Graph_M.PathResult(String.join("###", stations), path[0], 0);
+                result.stations = stations;
+            }
+        }
+        trace.finish(QueryMetrics.metricName(isTimeCost), "sharded", src, des, result.totalCost != -1);
+        return result;
+    }
+
+    /**
+     * Cheapest path between two global vertex ids.
+     * @return { cost, global ids from s to t... }, or null if t is unreachable.
+     */
+    int[] path(int s, int t, boolean isTimeCost) throws IOException
+    {
+        int ps = layout.part[s], pt = layout.part[t];
+        int ls = layout.localId[s], lt = layout.localId[t];
+        int[] fromS = links[ps].costs(ShardServer.OP_FROM, isTimeCost, ls);
+        int[] toT = links[pt].costs(ShardServer.OP_TO, isTimeCost, lt);
+        int[] local = ps == pt ? links[ps].path(isTimeCost, ls, lt) : null;
+        long best = local != null ? local[0] : INF;
+
+        // Dijkstra over the overlay from the boundary of s's shard to the boundary of t's shard
+        Overlay overlay = isTimeCost ? timeOverlay : distanceOverlay;
+        int[] dist = new int[overlaySize];
+        int[] parentArc = new int[overlaySize];   // overlay arc used to reach a vertex, -1 at an entry
+        int[] parentNode = new int[overlaySize];
+        Arrays.fill(dist, INF);
+        IndexedMinHeap pq = new IndexedMinHeap(Math.max(1, overlaySize));
+        for (int i = 0; i < fromS.length; i++) {
+            if (fromS[i] != INF) {
+                int o = overlayBase[ps] + i;
+                dist[o] = fromS[i];
+                parentArc[o] = -1;
+                pq.pushOrDecrease(o, fromS[i]);
+            }
+        }
+        int exit = -1;
+        while (!pq.isEmpty() && pq.minKey() < best) {
+            int u = pq.pop();
+            int du = dist[u];
+            if (overlayShard[u] == pt) {
+                int toTarget = toT[u - overlayBase[pt]];
+                if (toTarget != INF && (long) du + toTarget < best) {
+                    best = (long) du + toTarget;
+                    exit = u;
+                }
+            }
+            for (int a = overlay.offsets[u]; a < overlay.offsets[u + 1]; a++) {
+                int v = overlay.heads[a];
+                long nd = (long) du + overlay.costs[a];
+                if (nd < dist[v]) {
+                    dist[v] = (int) nd;
+                    parentArc[v] = a;
+                    parentNode[v] = u;
+                    pq.pushOrDecrease(v, (int) nd);
+                }
+            }
+        }
+        if (best == INF) {
+            return null;
+        }
+        DeltaStepping.IntList path = new DeltaStepping.IntList();
+        path.add((int) best);
+        if (exit == -1) {
+            appendLocal(path, ps, local, false);
+            return Arrays.copyOf(path.data, path.size);
+        }
+        // Overlay vertices from the entry to the exit
+        DeltaStepping.IntList chain = new DeltaStepping.IntList();
+        for (int o = exit; ; o = parentNode[o]) {
+            chain.add(o);
+            if (parentArc[o] == -1) {
+                break;
+            }
+        }
+        int entry = chain.data[chain.size - 1];
+        appendLocal(path, ps, links[ps].path(isTimeCost, ls, overlayLocal[entry]), false);
+        for (int i = chain.size - 2; i >= 0; i--) {
+            int o = chain.data[i];
+            int via = overlay.via[parentArc[o]];
+            if (via == -1) {
+                path.add(layout.members[overlayShard[o]][overlayLocal[o]]); // A cut route: one hop
+            } else {
+                appendLocal(path, via, links[via].path(isTimeCost, overlayLocal[chain.data[i + 1]], overlayLocal[o]), true);
+            }
+        }
+        appendLocal(path, pt, links[pt].path(isTimeCost, overlayLocal[exit], lt), true);
+        return Arrays.copyOf(path.data, path.size);
+    }
+
+    // Appends a shard-local path reply as global ids, optionally skipping its first vertex.
+    private void appendLocal(DeltaStepping.IntList path, int shard, int[] reply, boolean skipFirst) throws IOException
+    {
+        if (reply[0] == INF) {
+            throw new IOException("Shard " + shard + " lost a route its overlay relies on");
+        }
+        for (int i = skipFirst ? 2 : 1; i < reply.length; i++) {
+            path.add(layout.members[shard][reply[i]]);
+        }
+    }
+
+    // Overlay arcs: every cut route plus the boundary-to-boundary costs inside each shard.
+    private Overlay buildOverlay(RouteGraph g, boolean isTimeCost) throws IOException
+    {
+        int[] overlayOf = new int[g.numVertices()];
+        Arrays.fill(overlayOf, -1);
+        for (int o = 0; o < overlaySize; o++) {
+            overlayOf[layout.members[overlayShard[o]][overlayLocal[o]]] = o;
+        }
+        DeltaStepping.IntList cutTail = new DeltaStepping.IntList();
+        DeltaStepping.IntList cutHead = new DeltaStepping.IntList();
+        DeltaStepping.IntList cutCost = new DeltaStepping.IntList();
+        int[] offsets = new int[overlaySize + 1];
+        for (int v = 0; v < g.numVertices(); v++) {
+            for (int a = g.arcBegin(v), end = g.arcEnd(v); a < end; a++) {
+                int w = g.arcHead(a);
+                if (layout.part[w] != layout.part[v]) {
+                    cutTail.add(overlayOf[v]);
+                    cutHead.add(overlayOf[w]);
+                    cutCost.add(g.arcCost(a, isTimeCost));
+                    offsets[overlayOf[v] + 1]++;
+                }
+            }
+        }
+        int[][] cliques = new int[layout.shards][];
+        for (int s = 0; s < layout.shards; s++) {
+            int b = layout.boundary[s].length;
+            cliques[s] = links[s].costs(ShardServer.OP_CLIQUE, isTimeCost, 0);
+            for (int i = 0; i < b; i++) {
+                for (int j = 0; j < b; j++) {
+                    if (i != j && cliques[s][i * b + j] != INF) {
+                        offsets[overlayBase[s] + i + 1]++;
+                    }
+                }
+            }
+        }
+        for (int o = 0; o < overlaySize; o++) {
+            offsets[o + 1] += offsets[o];
+        }
+        int[] fill = offsets.clone();
+        int[] heads = new int[offsets[overlaySize]];
+        int[] costs = new int[heads.length];
+        int[] via = new int[heads.length];
+        for (int i = 0; i < cutTail.size; i++) {
+            int slot = fill[cutTail.data[i]]++;
+            heads[slot] = cutHead.data[i];
+            costs[slot] = cutCost.data[i];
+            via[slot] = -1;
+        }
+        for (int s = 0; s < layout.shards; s++) {
+            int b = layout.boundary[s].length;
+            for (int i = 0; i < b; i++) {
+                for (int j = 0; j < b; j++) {
+                    int cost = cliques[s][i * b + j];
+                    if (i != j && cost != INF) {
+                        int slot = fill[overlayBase[s] + i]++;
+                        heads[slot] = overlayBase[s] + j;
+                        costs[slot] = cost;
+                        via[slot] = s;
+                    }
+                }
+            }
+        }
+        return new Overlay(offsets, heads, costs, via);
+    }
+
+    /**
+     * @return Number of boundary airports, i.e. vertices in the overlay graph.
+     */
+    public int overlayVertices()
+    {
+        return overlaySize;
+    }
+
+    /**
+     * @return Number of overlay arcs for a metric.
+     */
+    public int overlayArcs(boolean isTimeCost)
+    {
+        return (isTimeCost ? timeOverlay : distanceOverlay).heads.length;
+    }
+
+    /**
+     * Stops all shard processes.
+     */
+    @Override
+    public void close()
+    {
+        for (ShardLink link : links) {
+            link.shutdown();
+        }
+        for (ShardLink link : links) {
+            try {
+                if (!link.process.waitFor(2, TimeUnit.SECONDS)) {
+                    link.process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                link.process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Benchmark: partitions a regional synthetic network, runs random queries through the shards and
+     * checks every cost against a single-process search.
+     * Usage: java ShardCoordinator [vertices=20000] [shards=4] [queries=300]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int shards = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+        CompactGraph g = SyntheticNetwork.regional(n, shards, 6, 800, 0.01, 42);
+        Path dir = Files.createTempDirectory("flight-shards");
+
+        long t0 = System.nanoTime();
+        try (ShardCoordinator coordinator = launch(g, shards, dir)) {
+            long t1 = System.nanoTime();
+            System.out.printf("Vertices: %d, shards: %d, cut arcs: %d, overlay: %d vertices / %d arcs, launch %.0f ms%n",
+                    n, shards, coordinator.layout.cutArcs, coordinator.overlayVertices(),
+                    coordinator.overlayArcs(false), (t1 - t0) / 1e6);
+            BidirectionalDijkstra reference = new BidirectionalDijkstra(g, false);
+            Random rnd = new Random(7);
+            int mismatches = 0;
+            long nanos = 0;
+            for (int q = 0; q < queries; q++) {
+                int s = rnd.nextInt(n), t = rnd.nextInt(n);
+                long start = System.nanoTime();
+                Graph_M.PathResult result = coordinator.route(g.name(s), g.name(t), false);
+                nanos += System.nanoTime() - start;
+                if (result.totalCost != reference.cost(s, t) || !validPath(g, result, s, t)) {
+                    mismatches++;
+                }
+            }
+            System.out.printf("%d queries: %.2f ms each, %d mismatches against a single-process search%n",
+                    queries, nanos / 1e6 / queries, mismatches);
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    // True if a result's stations form a chain of arcs from s to t that adds up to its cost.
+    private static boolean validPath(RouteGraph g, Graph_M.PathResult result, int s, int t)
+    {
+        String[] stations = result.stations;
+        if (g.idOf(stations[0]) != s || g.idOf(stations[stations.length - 1]) != t) {
+            return false;
+        }
+        long total = 0;
+        for (int i = 1; i < stations.length; i++) {
+            int u = g.idOf(stations[i - 1]), v = g.idOf(stations[i]);
+            int best = INF;
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                if (g.arcHead(a) == v) {
+                    best = Math.min(best, g.arcCost(a, false));
+                }
+            }
+            if (best == INF) {
+                return false;
+            }
+            total += best;
+        }
+        return total == result.totalCost;
+    }
+}
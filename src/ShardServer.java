@@ -0,0 +1,198 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * One shard of a partitioned route graph, run as its own process by {@link ShardCoordinator}.
+ *
+ * The shard loads the file written by GraphPartitioner.writeShards, listens on an ephemeral loopback
+ * port and prints "PORT <n>" on stdout once it accepts connections. Requests are answered with
+ * searches over the shard's own routes only; all ids on the wire are shard-local. The process exits
+ * on a SHUTDOWN request or when its stdin closes, so shards never outlive the coordinator.
+ *
+ * Wire format (big-endian, one request per round trip):
+ *   request  = op:byte metric:byte a:int b:int
+ *   CLIQUE   -> count:int, then count * count costs (row = from boundary i, INF if unreachable)
+ *   FROM     -> count:int, then the cost from local vertex a to each boundary vertex
+ *   TO       -> count:int, then the cost from each boundary vertex to local vertex a
+ *   PATH     -> cost:int, length:int, then the local ids of the cheapest path from a to b
+ *   SHUTDOWN -> no reply
+ */
+public class ShardServer
+{
+    static final byte OP_CLIQUE = 1;
+    static final byte OP_FROM = 2;
+    static final byte OP_TO = 3;
+    static final byte OP_PATH = 4;
+    static final byte OP_SHUTDOWN = 5;
+    static final int INF = Integer.MAX_VALUE;
+
+    final int shard;
+    final CompactGraph graph;      // shard-local ids
+    final int[] boundary;          // local ids of the boundary vertices
+
+    ShardServer(int shard, CompactGraph graph, int[] boundary) {
+        this.shard = shard;
+        this.graph = graph;
+        this.boundary = boundary;
+    }
+
+    /**
+     * Loads a shard file written by GraphPartitioner.writeShards.
+     */
+    static ShardServer load(Path file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != GraphPartitioner.MAGIC) {
+                throw new IOException("Not a shard file: " + file);
+            }
+            int shard = in.readInt();
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+            int[] boundary = new int[in.readInt()];
+            for (int i = 0; i < boundary.length; i++) {
+                boundary[i] = in.readInt();
+            }
+            int m = in.readInt();
+            int[] offsets = new int[names.length + 1];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = in.readInt();
+            }
+            int[] targets = new int[m];
+            int[] weights = new int[m];
+            for (int a = 0; a < m; a++) {
+                targets[a] = in.readInt();
+                weights[a] = in.readInt();
+            }
+            return new ShardServer(shard, new CompactGraph(names, offsets, targets, weights, -1), boundary);
+        }
+    }
+
+    /**
+     * Serves one connection until the peer closes it.
+     * @return True if the peer asked the shard to shut down.
+     */
+    boolean serve(Socket socket) throws IOException
+    {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        BidirectionalDijkstra[] paths = {
+            new BidirectionalDijkstra(graph, false), new BidirectionalDijkstra(graph, true)
+        };
+        while (true) {
+            byte op;
+            try {
+                op = in.readByte();
+            } catch (EOFException e) {
+                return false;
+            }
+            boolean isTimeCost = in.readByte() != 0;
+            int a = in.readInt();
+            int b = in.readInt();
+            switch (op) {
+                case OP_CLIQUE:
+                    out.writeInt(boundary.length);
+                    for (int from : boundary) {
+                        int[] dist = CompactDijkstra.allCosts(graph, from, isTimeCost);
+                        for (int to : boundary) {
+                            out.writeInt(dist[to]);
+                        }
+                    }
+                    break;
+                case OP_FROM:
+                case OP_TO:
+                    RouteGraph g = op == OP_FROM ? graph : graph.reverse();
+                    int[] dist = CompactDijkstra.allCosts(g, a, isTimeCost);
+                    out.writeInt(boundary.length);
+                    for (int v : boundary) {
+                        out.writeInt(dist[v]);
+                    }
+                    break;
+                case OP_PATH:
+                    int[] path = paths[isTimeCost ? 1 : 0].path(a, b);
+                    if (path == null) {
+                        out.writeInt(INF);
+                        out.writeInt(0);
+                    } else {
+                        out.writeInt(pathCost(path, isTimeCost));
+                        out.writeInt(path.length);
+                        for (int v : path) {
+                            out.writeInt(v);
+                        }
+                    }
+                    break;
+                case OP_SHUTDOWN:
+                    return true;
+                default:
+                    throw new IOException("Unknown shard request " + op);
+            }
+            out.flush();
+        }
+    }
+
+    // Cost of a path, taking the cheapest arc between consecutive vertices.
+    private int pathCost(int[] path, boolean isTimeCost)
+    {
+        int total = 0;
+        for (int i = 1; i < path.length; i++) {
+            int best = INF;
+            for (int a = graph.arcBegin(path[i - 1]), end = graph.arcEnd(path[i - 1]); a < end; a++) {
+                if (graph.arcHead(a) == path[i]) {
+                    best = Math.min(best, graph.arcCost(a, isTimeCost));
+                }
+            }
+            total += best;
+        }
+        return total;
+    }
+
+    /**
+     * Usage: java ShardServer shard-file
+     */
+    public static void main(String[] args) throws IOException
+    {
+        ShardServer shard = load(Paths.get(args[0]));
+        ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        // Exit with the coordinator: it holds our stdin open for as long as it runs
+        Thread watchdog = new Thread(() -> {
+            try {
+                while (System.in.read() != -1) {
+                    // Ignore input
+                }
+            } catch (IOException ignored) {
+                // Treat like EOF
+            }
+            System.exit(0);
+        }, "shard-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        System.out.println("PORT " + server.getLocalPort());
+        System.out.flush();
+        while (true) {
+            Socket socket = server.accept();
+            Thread worker = new Thread(() -> {
+                try (Socket s = socket) {
+                    if (shard.serve(s)) {
+                        System.exit(0);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Shard " + shard.shard + ": " + e.getMessage());
+                }
+            }, "shard-" + shard.shard + "-conn");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.Random;
+
+/**
+ * Generates large synthetic route networks as CompactGraphs for benchmarking the search engines
+ * well beyond the size of the built-in flight map.
+ *
+ * The shape loosely mimics an airline network: a random spanning tree keeps everything connected,
+ * a share of extra routes is attached preferentially to a small set of hubs, and the rest connect
+ * random pairs. All routes are two-way with the same weight, like Graph_M.addEdge.
+ */
+public class SyntheticNetwork
+{
+    private SyntheticNetwork() {
+    }
+
+    /**
+     * Builds a connected synthetic network.
+     * @param n         Number of airports.
+     * @param avgDegree Target average number of routes per airport (at least 2).
+     * @param maxWeight Largest edge weight (weights are uniform in [10, maxWeight]).
+     * @param seed      Random seed, so benchmarks are repeatable.
+     * @return The generated graph (version -1, since it is not backed by Graph_M).
+     */
+    public static CompactGraph generate(int n, int avgDegree, int maxWeight, long seed)
+    {
+        Random rnd = new Random(seed);
+        long edgeCount = Math.max((long) n - 1, (long) n * Math.max(2, avgDegree) / 2);
+        if (edgeCount * 2 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Synthetic network too large for int arc ids");
+        }
+        int m = (int) edgeCount;
+        int hubs = Math.max(1, n / 200);
+        int[] from = new int[m];
+        int[] to = new int[m];
+        int[] weight = new int[m];
+        int e = 0;
+        for (int v = 1; v < n && e < m; v++, e++) {   // Spanning tree
+            from[e] = v;
+            to[e] = rnd.nextInt(v);
+        }
+        while (e < m) {
+            int a = rnd.nextInt(n);
+            int b = rnd.nextInt(3) == 0 ? rnd.nextInt(hubs) : rnd.nextInt(n); // One in three routes touches a hub
+            if (a == b) {
+                continue;
+            }
+            from[e] = a;
+            to[e] = b;
+            e++;
+        }
+        for (int i = 0; i < m; i++) {
+            weight[i] = 10 + rnd.nextInt(Math.max(1, maxWeight - 9));
+        }
+        return fromEdgeList(n, from, to, weight);
+    }
+
+    /**
+     * Builds a connected network with regional structure: airports are split into equal contiguous id
+     * ranges, most routes stay inside a region and only a small share crosses between regions. Used to
+     * benchmark partitioning, where the uniform network from {@link #generate} has no good cut.
+     * @param n           Number of airports.
+     * @param regions     Number of regions.
+     * @param avgDegree   Target average number of routes per airport (at least 2).
+     * @param maxWeight   Largest edge weight (weights are uniform in [10, maxWeight]).
+     * @param crossShare  Fraction of the extra routes that connect two random regions.
+     * @param seed        Random seed, so benchmarks are repeatable.
+     * @return The generated graph (version -1).
+     */
+    public static CompactGraph regional(int n, int regions, int avgDegree, int maxWeight, double crossShare, long seed)
+    {
+        Random rnd = new Random(seed);
+        regions = Math.max(1, Math.min(regions, n));
+        int m = (int) Math.max((long) n - 1, (long) n * Math.max(2, avgDegree) / 2);
+        int[] from = new int[m];
+        int[] to = new int[m];
+        int[] weight = new int[m];
+        int e = 0;
+        for (int v = 1; v < n && e < m; v++, e++) {   // Spanning tree that leaves each region only once
+            int first = regionStart(regionOf(v, n, regions), n, regions);
+            from[e] = v;
+            to[e] = v == first ? rnd.nextInt(v) : first + rnd.nextInt(v - first);
+        }
+        while (e < m) {
+            int a = rnd.nextInt(n);
+            int b;
+            if (rnd.nextDouble() < crossShare) {
+                b = rnd.nextInt(n);
+            } else {
+                int r = regionOf(a, n, regions);
+                int first = regionStart(r, n, regions);
+                b = first + rnd.nextInt(regionStart(r + 1, n, regions) - first);
+            }
+            if (a == b) {
+                continue;
+            }
+            from[e] = a;
+            to[e] = b;
+            e++;
+        }
+        for (int i = 0; i < m; i++) {
+            weight[i] = 10 + rnd.nextInt(Math.max(1, maxWeight - 9));
+        }
+        return fromEdgeList(n, from, to, weight);
+    }
+
+    private static int regionOf(int v, int n, int regions)
+    {
+        return (int) ((long) v * regions / n);
+    }
+
+    // First vertex of region r (n for r == regions): the smallest v with regionOf(v) == r.
+    private static int regionStart(int r, int n, int regions)
+    {
+        return (int) (((long) r * n + regions - 1) / regions);
+    }
+
+    /**
+     * Builds a CompactGraph from an undirected edge list (each edge becomes two arcs).
+     */
+    static CompactGraph fromEdgeList(int n, int[] from, int[] to, int[] weight)
+    {
+        int m = from.length;
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < m; i++) {
+            offsets[from[i] + 1]++;
+            offsets[to[i] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] fill = offsets.clone();
+        int[] targets = new int[2 * m];
+        int[] weights = new int[2 * m];
+        for (int i = 0; i < m; i++) {
+            int a = fill[from[i]]++;
+            targets[a] = to[i];
+            weights[a] = weight[i];
+            int b = fill[to[i]]++;
+            targets[b] = from[i];
+            weights[b] = weight[i];
+        }
+        String[] names = new String[n];
+        for (int v = 0; v < n; v++) {
+            names[v] = "S" + v + "~Synthetic Airport " + v;
+        }
+        return new CompactGraph(names, offsets, targets, weights, -1);
+    }
+}
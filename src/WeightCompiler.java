@@ -0,0 +1,281 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Bulk edge-weight compiler: recomputes the great-circle distance of every route from the airport
+ * coordinates, and the route weight a speed model derives from it, in one batch over struct-of-arrays
+ * inputs. Weights are in Graph_M distance units, not km; Graph_M.edgeCost turns a weight into its time
+ * cost, so the weight is the only value that has to be staged.
+ *
+ * The arithmetic runs in a {@link Kernel}. The SIMD kernel (vector/VectorWeightKernel.java) uses
+ * jdk.incubator.vector and is kept out of the main source set, because the incubator module has to be
+ * added explicitly to compile and run it:
+ *     javac --add-modules jdk.incubator.vector -cp out -d out src/vector/VectorWeightKernel.java
+ *     java --add-modules jdk.incubator.vector -cp out ...
+ * It is looked up by name, so without it (or without the module) the scalar kernel is used and
+ * everything else works unchanged.
+ *
+ * Both kernels use the same formula, d = 2R asin(sqrt(sin^2(dLat/2) + cos lat1 cos lat2 sin^2(dLng/2))),
+ * which equals the atan2 form of GeoIndex.haversineKm. Distances are rounded to whole km, so the
+ * kernels agree except where a distance lies within rounding error of .5 km.
+ */
+public class WeightCompiler
+{
+    static final double DEG = Math.PI / 180;
+    static final double EARTH_DIAMETER_KM = 2 * GeoIndex.EARTH_RADIUS_KM;
+
+    /**
+     * Distance arithmetic over struct-of-arrays coordinates.
+     */
+    interface Kernel
+    {
+        /**
+         * Computes km[i] = haversine distance from (lat1[i], lng1[i]) to (lat2[i], lng2[i]) for i < count.
+         * Coordinates are in degrees.
+         */
+        void haversineKm(double[] lat1, double[] lng1, double[] lat2, double[] lng2, double[] km, int count);
+
+        String name();
+    }
+
+    /**
+     * Speed model: Graph_M distance units per great-circle km. The built-in map's hand weights are
+     * roughly flight minutes, so the default is their median ratio to great-circle km (about 545 km/h
+     * block speed); edgeCost then charges 120 s + 40 s per unit.
+     */
+    static final class SpeedModel {
+        static final SpeedModel DEFAULT = new SpeedModel(0.11);
+
+        final double unitsPerKm;
+
+        SpeedModel(double unitsPerKm) {
+            this.unitsPerKm = unitsPerKm;
+        }
+    }
+
+    /**
+     * Compiled weights, indexed by arc id of the graph they were compiled for.
+     */
+    static final class Weights {
+        final int[] km;          // rounded great-circle distance, -1 if a location is unknown
+        final int[] weight;      // distance units under the speed model, or the existing weight if unlocated
+        final int unlocated;     // arcs kept at their existing weight
+
+        Weights(int[] km, int[] weight, int unlocated) {
+            this.km = km;
+            this.weight = weight;
+            this.unlocated = unlocated;
+        }
+    }
+
+    private static final Kernel SCALAR = new Kernel() {
+        @Override
+        public void haversineKm(double[] lat1, double[] lng1, double[] lat2, double[] lng2, double[] km, int count)
+        {
+            for (int i = 0; i < count; i++) {
+                km[i] = WeightCompiler.haversineKm(lat1[i], lng1[i], lat2[i], lng2[i]);
+            }
+        }
+
+        @Override
+        public String name()
+        {
+            return "scalar";
+        }
+    };
+
+    private static final Kernel BEST = loadVectorKernel();
+
+    private WeightCompiler() {
+    }
+
+    /**
+     * The scalar formula shared by both kernels (the SIMD kernel uses it for its tail).
+     */
+    static double haversineKm(double lat1, double lng1, double lat2, double lng2)
+    {
+        double sLat = Math.sin((lat2 - lat1) * DEG * 0.5);
+        double sLng = Math.sin((lng2 - lng1) * DEG * 0.5);
+        double a = sLat * sLat + Math.cos(lat1 * DEG) * Math.cos(lat2 * DEG) * sLng * sLng;
+        return EARTH_DIAMETER_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * @return The scalar kernel.
+     */
+    static Kernel scalar()
+    {
+        return SCALAR;
+    }
+
+    /**
+     * @return The SIMD kernel if it is on the class path and the vector module is available, else scalar.
+     */
+    static Kernel best()
+    {
+        return BEST;
+    }
+
+    private static Kernel loadVectorKernel()
+    {
+        try {
+            Kernel k = (Kernel) Class.forName("VectorWeightKernel").getDeclaredConstructor().newInstance();
+            k.haversineKm(new double[1], new double[1], new double[1], new double[1], new double[1], 1);
+            return k;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR; // Not compiled in, or started without --add-modules jdk.incubator.vector
+        }
+    }
+
+    /**
+     * Compiles distances and weights for every arc of a graph from the locations it stores.
+     * @param g      The graph.
+     * @param speed  The time model.
+     * @param kernel The kernel to use.
+     * @return Weights per arc id.
+     */
+    static Weights compile(RouteGraph g, SpeedModel speed, Kernel kernel)
+    {
+        double[] lat = new double[g.numVertices()];
+        double[] lng = new double[lat.length];
+        for (int v = 0; v < lat.length; v++) {
+            lat[v] = g.lat(v);
+            lng[v] = g.lng(v);
+        }
+        return compile(g, lat, lng, speed, kernel);
+    }
+
+    /**
+     * Compiles distances and weights for every arc of a graph.
+     * @param g      The graph.
+     * @param lat    Latitude per vertex id in degrees (NaN if unknown).
+     * @param lng    Longitude per vertex id in degrees (NaN if unknown).
+     * @param speed  The time model.
+     * @param kernel The kernel to use.
+     * @return Weights per arc id.
+     */
+    static Weights compile(RouteGraph g, double[] lat, double[] lng, SpeedModel speed, Kernel kernel)
+    {
+        int m = g.numArcs();
+        // Gather the endpoint coordinates of located arcs into contiguous arrays for the kernel
+        double[] lat1 = new double[m], lng1 = new double[m], lat2 = new double[m], lng2 = new double[m];
+        int[] arcOf = new int[m];
+        int located = 0;
+        int[] km = new int[m];
+        int[] weight = new int[m];
+        for (int u = 0; u < g.numVertices(); u++) {
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                int v = g.arcHead(a);
+                if (Double.isNaN(lat[u]) || Double.isNaN(lng[u]) || Double.isNaN(lat[v]) || Double.isNaN(lng[v])) {
+                    km[a] = -1;
+                    weight[a] = g.arcWeight(a);
+                    continue;
+                }
+                lat1[located] = lat[u];
+                lng1[located] = lng[u];
+                lat2[located] = lat[v];
+                lng2[located] = lng[v];
+                arcOf[located++] = a;
+            }
+        }
+        double[] dist = new double[located];
+        kernel.haversineKm(lat1, lng1, lat2, lng2, dist, located);
+        for (int i = 0; i < located; i++) {
+            km[arcOf[i]] = (int) Math.max(1, Math.round(dist[i]));
+            weight[arcOf[i]] = (int) Math.max(1, Math.round(dist[i] * speed.unitsPerKm));
+        }
+        return new Weights(km, weight, m - located);
+    }
+
+    /**
+     * Compiles the current routes and stages a weight change for every direction whose compiled weight
+     * differs from its current one.
+     * Each direction is decided and staged on its own, so the way back of an asymmetric route is not
+     * skipped when the way out already matches.
+     * @param batch The batch to stage the changes in; the caller commits it.
+     * @return The number of directions staged.
+     */
+    public static int stageChanges(GraphBatch batch)
+    {
+        RouteGraph g = RouteGraph.current();
+        Weights w = compile(g, SpeedModel.DEFAULT, best());
+        int staged = 0;
+        for (int u = 0; u < g.numVertices(); u++) {
+            for (int a = g.arcBegin(u), end = g.arcEnd(u); a < end; a++) {
+                if (w.weight[a] != g.arcWeight(a)) {
+                    batch.setDirectedWeight(g.name(u), g.name(g.arcHead(a)), w.weight[a]);
+                    staged++;
+                }
+            }
+        }
+        return staged;
+    }
+
+    /**
+     * Benchmark: scalar against SIMD kernel on a synthetic network with random airport locations, and
+     * the compiled weights of the built-in map against its hand-estimated ones.
+     * Usage: java [--add-modules jdk.incubator.vector] WeightCompiler [vertices=20000] [avgDegree=8]
+     */
+    public static void main(String[] args)
+    {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int degree = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        CompactGraph g = SyntheticNetwork.generate(n, degree, 800, 42);
+        Random rnd = new Random(9);
+        double[] lat = new double[n], lng = new double[n];
+        for (int v = 0; v < n; v++) {
+            lat[v] = Math.toDegrees(Math.asin(2 * rnd.nextDouble() - 1)); // Uniform over the sphere
+            lng[v] = 360 * rnd.nextDouble() - 180;
+        }
+        Kernel[] kernels = best() == SCALAR ? new Kernel[] {SCALAR} : new Kernel[] {SCALAR, best()};
+        long[] nanos = new long[kernels.length];
+        Weights[] results = new Weights[kernels.length];
+        int rounds = 20;
+        for (int round = 0; round < 2 * rounds; round++) { // The first half warms up
+            for (int k = 0; k < kernels.length; k++) {
+                long t0 = System.nanoTime();
+                results[k] = compile(g, lat, lng, SpeedModel.DEFAULT, kernels[k]);
+                if (round >= rounds) {
+                    nanos[k] += System.nanoTime() - t0;
+                }
+            }
+        }
+        System.out.printf(Locale.ROOT, "%d routes (arcs), %d airports%n", g.numArcs(), n);
+        for (int k = 0; k < kernels.length; k++) {
+            System.out.printf(Locale.ROOT, "%-8s %8.2f ms per compile (%.1f ns per arc)%n", kernels[k].name(),
+                    nanos[k] / 1e6 / rounds, (double) nanos[k] / rounds / g.numArcs());
+        }
+        if (kernels.length > 1) {
+            int differ = 0;
+            for (int a = 0; a < g.numArcs(); a++) {
+                differ += results[0].km[a] != results[1].km[a] ? 1 : 0;
+            }
+            System.out.printf(Locale.ROOT, "SIMD speedup %.2fx; weights differing by rounding: %d%n",
+                    (double) nanos[0] / nanos[1], differ);
+        } else {
+            System.out.println("SIMD kernel not available (compile vector/VectorWeightKernel.java and run with "
+                    + "--add-modules jdk.incubator.vector)");
+        }
+
+        // Built-in map: hand-estimated weights against compiled ones; a median near 1 means the speed model fits
+        Graph_M map = new Graph_M();
+        Graph_M.Create_Metro_Map(map);
+        RouteGraph cg = RouteGraph.current();
+        Weights w = compile(cg, SpeedModel.DEFAULT, best());
+        double[] ratio = new double[cg.numArcs() - w.unlocated];
+        int r = 0;
+        for (int u = 0; u < cg.numVertices(); u++) {
+            for (int a = cg.arcBegin(u), end = cg.arcEnd(u); a < end; a++) {
+                if (!Double.isNaN(cg.lat(u)) && !Double.isNaN(cg.lat(cg.arcHead(a)))) {
+                    ratio[r++] = (double) cg.arcWeight(a) / w.weight[a];
+                }
+            }
+        }
+        Arrays.sort(ratio, 0, r);
+        if (r > 0) {
+            System.out.printf(Locale.ROOT, "Built-in map: %d routes located; hand weight / compiled weight: median %.2f, "
+                    + "min %.2f, max %.2f%n", r, ratio[r / 2], ratio[0], ratio[r - 1]);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD haversine kernel for {@link WeightCompiler}, using the incubating Vector API (JDK 16+).
+ * Not part of the main source set; build and run it with the module added:
+ *     javac --add-modules jdk.incubator.vector -cp out -d out src/vector/VectorWeightKernel.java
+ *     java --add-modules jdk.incubator.vector -cp out WeightCompiler
+ * Lanes are as wide as the CPU prefers (8 doubles with AVX-512, 4 with AVX2); the tail that does not
+ * fill a vector goes through the scalar formula.
+ */
+public class VectorWeightKernel implements WeightCompiler.Kernel
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void haversineKm(double[] lat1, double[] lng1, double[] lat2, double[] lng2, double[] km, int count)
+    {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(count); i < bound; i += SPECIES.length()) {
+            DoubleVector la1 = DoubleVector.fromArray(SPECIES, lat1, i).mul(WeightCompiler.DEG);
+            DoubleVector la2 = DoubleVector.fromArray(SPECIES, lat2, i).mul(WeightCompiler.DEG);
+            DoubleVector dLng = DoubleVector.fromArray(SPECIES, lng2, i)
+                    .sub(DoubleVector.fromArray(SPECIES, lng1, i)).mul(WeightCompiler.DEG * 0.5);
+            DoubleVector sLat = la2.sub(la1).mul(0.5).lanewise(VectorOperators.SIN);
+            DoubleVector sLng = dLng.lanewise(VectorOperators.SIN);
+            DoubleVector a = sLat.mul(sLat).add(la1.lanewise(VectorOperators.COS)
+                    .mul(la2.lanewise(VectorOperators.COS)).mul(sLng.mul(sLng)));
+            a.sqrt().min(1.0).lanewise(VectorOperators.ASIN).mul(WeightCompiler.EARTH_DIAMETER_KM).intoArray(km, i);
+        }
+        for (; i < count; i++) {
+            km[i] = WeightCompiler.haversineKm(lat1[i], lng1[i], lat2[i], lng2[i]);
+        }
+    }
+
+    @Override
+    public String name()
+    {
+        return "simd-" + SPECIES.length();
+    }
+}